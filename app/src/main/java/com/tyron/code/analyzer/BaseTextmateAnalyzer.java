@@ -43,8 +43,12 @@ public class BaseTextmateAnalyzer extends TextMateAnalyzer {
     }
 
     public Theme getTheme() {
+        return getTheme(this);
+    }
+
+    public static Theme getTheme(TextMateAnalyzer analyzer) {
         try {
-            return (Theme) THEME_FIELD.get(this);
+            return (Theme) THEME_FIELD.get(analyzer);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
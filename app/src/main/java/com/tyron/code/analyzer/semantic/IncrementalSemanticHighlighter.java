@@ -0,0 +1,367 @@
+package com.tyron.code.analyzer.semantic;
+
+import androidx.annotation.NonNull;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the semantic tokens of a file from its attributed compilation unit, one top level
+ * class header or member at a time.
+ * <p>
+ * The tokens of each member are cached with offsets relative to the start of the member,
+ * keyed by the source of the member. Only the members whose source has changed since the
+ * last version are scanned again. The tokens of a member also depend on the declarations it
+ * refers to, so every member is scanned again when the imports, a class header or the
+ * signature of a member have changed. The tokens of the whole file are then compared with the
+ * previous ones so only the tokens that the editor does not show yet, and the tokens it should
+ * no longer show, are returned.
+ */
+public class IncrementalSemanticHighlighter {
+
+    /** The number of ints used to store a token: offset, length and type. */
+    private static final int TOKEN_SIZE = 3;
+
+    private final List<TokenType> mTypes = new ArrayList<>();
+    private final Map<TokenType, Integer> mTypeIds = new HashMap<>();
+
+    private Map<String, int[]> mMembers = new HashMap<>();
+    private String mDeclarations = "";
+    private int[] mTokens = new int[0];
+    private String mContents = "";
+
+    private volatile SemanticHighlighter mCurrent;
+
+    /**
+     * Forget the previous tokens, the next update returns every token of the file. Used when
+     * the spans of the editor have been replaced.
+     */
+    public synchronized void reset() {
+        mTokens = new int[0];
+        mContents = "";
+    }
+
+    /**
+     * @return every token of the last version, sorted by offset
+     */
+    @NonNull
+    public synchronized List<SemanticToken> getTokens() {
+        List<SemanticToken> tokens = new ArrayList<>(mTokens.length / TOKEN_SIZE);
+        for (int i = 0; i < mTokens.length; i += TOKEN_SIZE) {
+            tokens.add(new SemanticToken(mTokens[i], mTokens[i + 1], mTypes.get(mTokens[i + 2]),
+                    0));
+        }
+        return tokens;
+    }
+
+    public void cancel() {
+        SemanticHighlighter current = mCurrent;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Computes the tokens of the new version of the file.
+     *
+     * @param unit     The attributed compilation unit
+     * @param trees    The trees of the task that attributed the unit
+     * @param contents The contents the unit has been parsed from
+     * @return The tokens that are new or have changed since the last update, and the tokens to
+     * clear with {@link TokenType#NONE}, sorted by offset
+     */
+    @NonNull
+    public synchronized List<SemanticToken> update(@NonNull CompilationUnitTree unit,
+                                                   @NonNull Trees trees,
+                                                   @NonNull String contents) {
+        SemanticHighlighter highlighter = new SemanticHighlighter(trees, contents);
+        mCurrent = highlighter;
+
+        SourcePositions positions = trees.getSourcePositions();
+        TreePath unitPath = new TreePath(unit);
+
+        String declarations = getDeclarations(unit, positions, contents);
+        Map<String, int[]> cached = declarations.equals(mDeclarations)
+                ? mMembers
+                : Collections.emptyMap();
+        Map<String, int[]> members = new HashMap<>();
+        TokenBuffer buffer = new TokenBuffer();
+        for (Tree typeDecl : unit.getTypeDecls()) {
+            if (!(typeDecl instanceof ClassTree)) {
+                continue;
+            }
+            ClassTree classTree = (ClassTree) typeDecl;
+            TreePath classPath = new TreePath(unitPath, classTree);
+
+            // the annotations, modifiers, name, type parameters and supertypes of the class
+            int classStart = (int) positions.getStartPosition(unit, classTree);
+            int headerEnd = (int) getHeaderEnd(unit, positions, classTree);
+            if (classStart >= 0 && headerEnd > classStart && headerEnd <= contents.length()) {
+                String key = classTree.getSimpleName() + "\0\0"
+                        + contents.substring(classStart, headerEnd);
+                int[] tokens = members.get(key);
+                if (tokens == null) {
+                    tokens = cached.get(key);
+                }
+                if (tokens == null) {
+                    tokens = toRelativeArray(highlighter.highlightHeader(classPath), classStart);
+                }
+                members.put(key, tokens);
+                buffer.addRelative(tokens, classStart);
+            }
+
+            for (Tree member : classTree.getMembers()) {
+                if (highlighter.isCancelled()) {
+                    break;
+                }
+                int start = (int) positions.getStartPosition(unit, member);
+                int end = (int) positions.getEndPosition(unit, member);
+                if (start < 0 || end <= start || end > contents.length()) {
+                    // generated members such as default constructors
+                    continue;
+                }
+
+                String key = classTree.getSimpleName() + "\0" + contents.substring(start, end);
+                int[] tokens = members.get(key);
+                if (tokens == null) {
+                    tokens = cached.get(key);
+                }
+                if (tokens == null) {
+                    List<SemanticToken> found =
+                            highlighter.highlight(new TreePath(classPath, member));
+                    tokens = toRelativeArray(found, start);
+                }
+                members.put(key, tokens);
+                buffer.addRelative(tokens, start);
+            }
+        }
+        mCurrent = null;
+        if (highlighter.isCancelled()) {
+            // the tokens of the last scanned member are incomplete, keep the previous state
+            return Collections.emptyList();
+        }
+
+        int[] newTokens = buffer.toArray();
+        List<SemanticToken> changed = diff(contents, newTokens);
+
+        mMembers = members;
+        mDeclarations = declarations;
+        mTokens = newTokens;
+        mContents = contents;
+        return changed;
+    }
+
+    /**
+     * Returns the source of the declarations the members of the file may refer to: everything
+     * before the first class, the header of each class and the signature of each member.
+     */
+    private static String getDeclarations(CompilationUnitTree unit,
+                                          SourcePositions positions,
+                                          String contents) {
+        StringBuilder builder = new StringBuilder();
+        for (Tree typeDecl : unit.getTypeDecls()) {
+            if (builder.length() == 0) {
+                // the package and the imports
+                appendSource(builder, contents, 0, positions.getStartPosition(unit, typeDecl));
+            }
+            if (typeDecl instanceof ClassTree) {
+                appendDeclarations(builder, unit, positions, contents, (ClassTree) typeDecl);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendDeclarations(StringBuilder builder,
+                                           CompilationUnitTree unit,
+                                           SourcePositions positions,
+                                           String contents,
+                                           ClassTree classTree) {
+        long start = positions.getStartPosition(unit, classTree);
+        List<? extends Tree> members = classTree.getMembers();
+        appendSource(builder, contents, start, getHeaderEnd(unit, positions, classTree));
+
+        for (Tree member : members) {
+            long memberStart = positions.getStartPosition(unit, member);
+            if (member instanceof ClassTree) {
+                appendDeclarations(builder, unit, positions, contents, (ClassTree) member);
+            } else if (member instanceof MethodTree) {
+                MethodTree method = (MethodTree) member;
+                long end = method.getBody() != null
+                        ? positions.getStartPosition(unit, method.getBody())
+                        : positions.getEndPosition(unit, method);
+                appendSource(builder, contents, memberStart, end);
+            } else if (member instanceof VariableTree) {
+                appendSource(builder, contents, memberStart,
+                        positions.getEndPosition(unit, member));
+            }
+        }
+    }
+
+    /**
+     * Returns the end of the header of the class, which is the start of its first member in the
+     * source or the end of the class if it has none.
+     */
+    private static long getHeaderEnd(CompilationUnitTree unit,
+                                     SourcePositions positions,
+                                     ClassTree classTree) {
+        long start = positions.getStartPosition(unit, classTree);
+        long headerEnd = positions.getEndPosition(unit, classTree);
+        for (Tree member : classTree.getMembers()) {
+            long memberStart = positions.getStartPosition(unit, member);
+            if (memberStart > start) {
+                headerEnd = Math.min(headerEnd, memberStart);
+            }
+        }
+        return headerEnd;
+    }
+
+    private static void appendSource(StringBuilder builder, String contents, long start, long end) {
+        if (start < 0 || end < start || end > contents.length()) {
+            // generated trees such as default constructors
+            return;
+        }
+        builder.append(contents, (int) start, (int) end).append('\0');
+    }
+
+    /**
+     * Returns the tokens which are not in the previous version at the same place, along with
+     * every token on the lines that have been edited, since the editor highlights those again.
+     * The tokens of the previous version that are no longer found outside of the edited lines
+     * are returned with {@link TokenType#NONE} so the editor clears them.
+     */
+    private List<SemanticToken> diff(String contents, int[] newTokens) {
+        String previous = mContents;
+        int prefix = 0;
+        int max = Math.min(previous.length(), contents.length());
+        while (prefix < max && previous.charAt(prefix) == contents.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        max -= prefix;
+        while (suffix < max && previous.charAt(previous.length() - suffix - 1) ==
+                               contents.charAt(contents.length() - suffix - 1)) {
+            suffix++;
+        }
+        int shift = contents.length() - previous.length();
+        int editStart = contents.lastIndexOf('\n', prefix - 1) + 1;
+        int editEnd = contents.indexOf('\n', contents.length() - suffix);
+        if (editEnd == -1) {
+            editEnd = contents.length();
+        }
+
+        Set<Long> old = new HashSet<>();
+        List<Long> oldUnedited = new ArrayList<>();
+        for (int i = 0; i < mTokens.length; i += TOKEN_SIZE) {
+            int offset = mTokens[i];
+            int length = mTokens[i + 1];
+            if (offset >= previous.length() - suffix) {
+                offset += shift;
+            } else if (offset + length > prefix) {
+                // the token was in the replaced text
+                continue;
+            }
+            long token = pack(offset, length, mTokens[i + 2]);
+            old.add(token);
+            if (offset + length < editStart || offset > editEnd) {
+                oldUnedited.add(token);
+            }
+        }
+
+        List<SemanticToken> changed = new ArrayList<>();
+        Set<Long> current = new HashSet<>();
+        for (int i = 0; i < newTokens.length; i += TOKEN_SIZE) {
+            int offset = newTokens[i];
+            int length = newTokens[i + 1];
+            long token = pack(offset, length, newTokens[i + 2]);
+            current.add(token);
+            boolean edited = offset + length >= editStart && offset <= editEnd;
+            if (edited || !old.contains(token)) {
+                changed.add(new SemanticToken(offset, length, mTypes.get(newTokens[i + 2]), 0));
+            }
+        }
+
+        boolean removed = false;
+        for (long token : oldUnedited) {
+            if (!current.contains(token)) {
+                changed.add(new SemanticToken((int) (token >>> 32), (int) (token >>> 8) & 0xFFFFFF,
+                        TokenType.NONE, 0));
+                removed = true;
+            }
+        }
+        if (removed) {
+            // a cleared token is replaced by the new token at the same place
+            changed.sort(Comparator.comparingInt(SemanticToken::getOffset)
+                    .thenComparing(token -> token.getTokenType() != TokenType.NONE));
+        }
+        return changed;
+    }
+
+    private int[] toRelativeArray(List<SemanticToken> tokens, int start) {
+        int[] array = new int[tokens.size() * TOKEN_SIZE];
+        int i = 0;
+        for (SemanticToken token : tokens) {
+            array[i++] = token.getOffset() - start;
+            array[i++] = token.getLength();
+            array[i++] = getTypeId(token.getTokenType());
+        }
+        return array;
+    }
+
+    private int getTypeId(TokenType type) {
+        Integer id = mTypeIds.get(type);
+        if (id == null) {
+            id = mTypes.size();
+            mTypes.add(type);
+            mTypeIds.put(type, id);
+        }
+        return id;
+    }
+
+    private static long pack(int offset, int length, int type) {
+        return ((long) offset << 32) | ((long) (length & 0xFFFFFF) << 8) | (type & 0xFF);
+    }
+
+    private static class TokenBuffer {
+
+        private int[] mData = new int[256 * TOKEN_SIZE];
+        private int mSize;
+
+        void addRelative(int[] tokens, int start) {
+            ensureCapacity(mSize + tokens.length);
+            for (int i = 0; i < tokens.length; i += TOKEN_SIZE) {
+                mData[mSize++] = tokens[i] + start;
+                mData[mSize++] = tokens[i + 1];
+                mData[mSize++] = tokens[i + 2];
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mData.length) {
+                int[] newData = new int[Math.max(capacity, mData.length * 2)];
+                System.arraycopy(mData, 0, newData, 0, mSize);
+                mData = newData;
+            }
+        }
+
+        int[] toArray() {
+            int[] array = new int[mSize];
+            System.arraycopy(mData, 0, array, 0, mSize);
+            return array;
+        }
+    }
+}
@@ -1,19 +1,184 @@
 package com.tyron.code.analyzer.semantic;
 
+import androidx.annotation.NonNull;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.SourcePositions;
 import com.sun.source.util.TreePath;
 import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.tyron.code.language.java.JavaTokenTypes;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.lang.model.element.Element;
+
+/**
+ * Collects the semantic tokens of a tree from the attributed compilation unit.
+ */
 public class SemanticHighlighter extends TreePathScanner<Void, Void> {
 
     private final AtomicBoolean mCancelFlag = new AtomicBoolean(false);
 
+    private final Trees mTrees;
+    private final SourcePositions mPositions;
+    private final CharSequence mContents;
+
+    private final List<SemanticToken> mTokens = new ArrayList<>();
+    private CompilationUnitTree mRoot;
+    /** The class of which only the header is scanned, if any. */
+    private ClassTree mHeader;
+
+    public SemanticHighlighter(@NonNull Trees trees, @NonNull CharSequence contents) {
+        mTrees = trees;
+        mPositions = trees.getSourcePositions();
+        mContents = contents;
+    }
+
     public void cancel() {
         mCancelFlag.set(true);
     }
 
+    public boolean isCancelled() {
+        return mCancelFlag.get();
+    }
+
+    /**
+     * Scans the tree at the given path.
+     *
+     * @return the tokens found, sorted by their offset
+     */
+    public List<SemanticToken> highlight(@NonNull TreePath path) {
+        mTokens.clear();
+        mRoot = path.getCompilationUnit();
+        scan(path, null);
+
+        List<SemanticToken> tokens = new ArrayList<>(mTokens);
+        tokens.sort((t1, t2) -> Integer.compare(t1.getOffset(), t2.getOffset()));
+        return tokens;
+    }
+
+    /**
+     * Scans the header of the class at the given path: its annotations, modifiers, name, type
+     * parameters and supertypes, but not its members.
+     *
+     * @return the tokens found, sorted by their offset
+     */
+    public List<SemanticToken> highlightHeader(@NonNull TreePath classPath) {
+        mHeader = (ClassTree) classPath.getLeaf();
+        try {
+            return highlight(classPath);
+        } finally {
+            mHeader = null;
+        }
+    }
+
+    @Override
+    public Void visitIdentifier(IdentifierTree tree, Void unused) {
+        int start = (int) mPositions.getStartPosition(mRoot, tree);
+        addToken(start, tree.getName().length());
+        return super.visitIdentifier(tree, unused);
+    }
+
+    @Override
+    public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+        int end = (int) mPositions.getEndPosition(mRoot, tree);
+        addToken(end - tree.getIdentifier().length(), tree.getIdentifier().length());
+        return super.visitMemberSelect(tree, unused);
+    }
+
+    @Override
+    public Void visitMethod(MethodTree tree, Void unused) {
+        String name = tree.getName().toString();
+        if ("<init>".equals(name)) {
+            Tree parent = getCurrentPath().getParentPath().getLeaf();
+            if (parent instanceof ClassTree) {
+                name = ((ClassTree) parent).getSimpleName().toString();
+            }
+        }
+        Tree before = tree.getReturnType() != null ? tree.getReturnType() : tree.getModifiers();
+        addToken(findName(tree, before, name), name.length());
+        return super.visitMethod(tree, unused);
+    }
+
+    @Override
+    public Void visitVariable(VariableTree tree, Void unused) {
+        String name = tree.getName().toString();
+        Tree before = tree.getType() != null ? tree.getType() : tree.getModifiers();
+        addToken(findName(tree, before, name), name.length());
+        return super.visitVariable(tree, unused);
+    }
+
+    @Override
+    public Void visitClass(ClassTree tree, Void unused) {
+        String name = tree.getSimpleName().toString();
+        if (!name.isEmpty()) {
+            addToken(findName(tree, tree.getModifiers(), name), name.length());
+        }
+        if (tree == mHeader) {
+            scan(tree.getModifiers(), unused);
+            scan(tree.getTypeParameters(), unused);
+            scan(tree.getExtendsClause(), unused);
+            scan(tree.getImplementsClause(), unused);
+            return null;
+        }
+        return super.visitClass(tree, unused);
+    }
+
+    private void addToken(int offset, int length) {
+        if (offset < 0 || length <= 0) {
+            return;
+        }
+        Element element = mTrees.getElement(getCurrentPath());
+        TokenType type = JavaTokenTypes.getApplicableType(element);
+        if (type != null) {
+            mTokens.add(new SemanticToken(offset, length, type, 0));
+        }
+    }
+
+    /**
+     * Finds the offset of the name of a declaration, the name is the first occurrence of it
+     * after the given tree.
+     */
+    private int findName(Tree tree, Tree before, String name) {
+        int start = (int) mPositions.getStartPosition(mRoot, tree);
+        int end = (int) mPositions.getEndPosition(mRoot, tree);
+        if (start < 0 || end < 0 || end > mContents.length()) {
+            return -1;
+        }
+        int from = before == null ? -1 : (int) mPositions.getEndPosition(mRoot, before);
+        if (from < start) {
+            from = start;
+        }
+
+        for (int i = from; i + name.length() <= end; i++) {
+            if (regionMatches(i, name) &&
+                (i == 0 || !Character.isJavaIdentifierPart(mContents.charAt(i - 1))) &&
+                (i + name.length() == mContents.length() ||
+                 !Character.isJavaIdentifierPart(mContents.charAt(i + name.length())))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (mContents.charAt(offset + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public Void scan(Tree tree, Void unused) {
         if (mCancelFlag.get()) {
@@ -6,6 +6,12 @@ public class TokenType {
 
     public static final TokenType UNKNOWN = create("token.error-token");
 
+    /**
+     * The style of text without a semantic token, used to clear the tokens that have been
+     * removed since the last update.
+     */
+    public static final TokenType NONE = create("source");
+
     public static TokenType create(String scope, String... fallbackScopes) {
         return new TokenType(scope, fallbackScopes);
     }
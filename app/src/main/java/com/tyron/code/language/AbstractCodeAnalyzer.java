@@ -12,16 +12,20 @@ import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.IntegerList;
 import org.apache.commons.io.input.CharSequenceReader;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import io.github.rosemoe.sora.lang.analysis.StyleReceiver;
 import io.github.rosemoe.sora.lang.styling.MappedSpans;
+import io.github.rosemoe.sora.lang.styling.Span;
 import io.github.rosemoe.sora.lang.styling.Styles;
 import io.github.rosemoe.sora.text.CharPosition;
 import io.github.rosemoe.sora.text.ContentReference;
@@ -36,6 +40,11 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
     private Styles mLastStyles;
     protected List<DiagnosticWrapper> mDiagnostics = new ArrayList<>();
 
+    /**
+     * The tokens of each line from the last incremental analysis
+     */
+    private List<LineTokens> mLines = Collections.emptyList();
+
     public AbstractCodeAnalyzer() {
         setup();
     }
@@ -110,6 +119,34 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
 
     }
 
+    /**
+     * Whether the tokens of this language never span multiple lines, so each line can be
+     * lexed separately. Lines are then only lexed again when they or the lexer state at their
+     * start change, and the colors of the tokens are decided by
+     * {@link #getTokenColor(Token, int)} instead of {@link #onNextToken}.
+     */
+    protected boolean isLineBased() {
+        return false;
+    }
+
+    /**
+     * @param previousTokenType the type of the previous token, which may be on a previous
+     *                          line, or {@link Token#INVALID_TYPE} at the start of the file
+     * @return the color id of the token
+     */
+    protected int getTokenColor(Token token, int previousTokenType) {
+        Integer id = getColor(token.getType());
+        return id != null ? id : EditorColorScheme.TEXT_NORMAL;
+    }
+
+    /**
+     * Called after a line based analysis to compute the code blocks from the tokens of
+     * each line
+     */
+    protected void computeBlocks(List<LineTokens> lines, Styles styles) {
+
+    }
+
     @Override
     protected Styles analyze(StringBuilder text, Delegate<T> delegate) {
         Styles styles = new Styles();
@@ -117,6 +154,9 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
         if (!loaded) {
             return styles;
         }
+        if (isLineBased()) {
+            return analyzeLines(text, delegate);
+        }
         beforeAnalyze();
 
         MappedSpans.Builder result = new MappedSpans.Builder(1024);
@@ -166,6 +206,213 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
         return styles;
     }
 
+    private Styles analyzeLines(StringBuilder text, Delegate<T> delegate) {
+        List<LineTokens> oldLines = mLines;
+        int[] lineStarts = getLineStarts(text);
+        int lineCount = lineStarts.length;
+
+        // lines at the start and the end of the file that did not change
+        int maxUnchanged = Math.min(lineCount, oldLines.size());
+        int prefix = 0;
+        while (prefix < maxUnchanged &&
+               oldLines.get(prefix).contentEquals(text, lineStarts, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxUnchanged - prefix &&
+               oldLines.get(oldLines.size() - 1 - suffix)
+                       .contentEquals(text, lineStarts, lineCount - 1 - suffix)) {
+            suffix++;
+        }
+
+        List<LineTokens> lines = new ArrayList<>(lineCount);
+        lines.addAll(oldLines.subList(0, prefix));
+
+        LexerState state = prefix == 0 ? LexerState.INITIAL : oldLines.get(prefix - 1).mEndState;
+        Lexer lexer = null;
+        for (int line = prefix; line < lineCount; line++) {
+            if (delegate.isCancelled()) {
+                return new Styles();
+            }
+            int oldLine = line - lineCount + oldLines.size();
+            if (line >= lineCount - suffix && oldLines.get(oldLine).mStartState.equals(state)) {
+                // the lexer state converged, the remaining lines are unchanged
+                lines.addAll(oldLines.subList(oldLine, oldLines.size()));
+                break;
+            }
+
+            String lineText = text.substring(lineStarts[line], getLineEnd(text, lineStarts, line));
+            CharStream input = CharStreams.fromString(lineText);
+            if (lexer == null) {
+                lexer = getLexer(input);
+            } else {
+                lexer.setInputStream(input);
+            }
+            LineTokens tokens = tokenizeLine(lexer, lineText, state);
+            lines.add(tokens);
+            state = tokens.mEndState;
+        }
+        mLines = lines;
+
+        List<List<Span>> spans = new ArrayList<>(lines.size());
+        for (LineTokens line : lines) {
+            spans.add(line.mSpans);
+        }
+        Styles styles = new Styles(new LineSpans(spans));
+        computeBlocks(lines, styles);
+        styles.finishBuilding();
+
+        if (mShouldAnalyzeInBg) {
+            analyzeInBackground(text);
+        }
+        mLastStyles = styles;
+        return styles;
+    }
+
+    private LineTokens tokenizeLine(Lexer lexer, String lineText, LexerState state) {
+        lexer._mode = state.mMode;
+        lexer._modeStack.clear();
+        lexer._modeStack.addAll(state.mModeStack);
+
+        int previousTokenType = state.mPreviousTokenType;
+        IntegerList tokens = new IntegerList();
+        List<Span> spans = new ArrayList<>();
+        int lastColor = -1;
+        while (true) {
+            Token token = lexer.nextToken();
+            if (token == null || token.getType() == Token.EOF) {
+                break;
+            }
+            int column = token.getCharPositionInLine();
+            tokens.add(token.getType());
+            tokens.add(column);
+
+            int color = getTokenColor(token, previousTokenType);
+            if (color != lastColor) {
+                if (spans.isEmpty() && column != 0) {
+                    spans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+                }
+                spans.add(Span.obtain(column, color));
+                lastColor = color;
+            }
+            previousTokenType = token.getType();
+        }
+        if (spans.isEmpty()) {
+            spans.add(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+        }
+
+        LexerState endState = new LexerState(lexer._mode, lexer._modeStack.toArray(),
+                previousTokenType);
+        return new LineTokens(lineText, state, endState, tokens.toArray(), spans);
+    }
+
+    private static int[] getLineStarts(CharSequence text) {
+        IntegerList starts = new IntegerList();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        return starts.toArray();
+    }
+
+    private static int getLineEnd(CharSequence text, int[] lineStarts, int line) {
+        int end = line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : text.length();
+        if (end > lineStarts[line] && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * The state of the lexer at a line boundary
+     */
+    private static class LexerState {
+
+        static final LexerState INITIAL =
+                new LexerState(Lexer.DEFAULT_MODE, new int[0], Token.INVALID_TYPE);
+
+        private final int mMode;
+        private final int[] mModeStack;
+        private final int mPreviousTokenType;
+
+        LexerState(int mode, int[] modeStack, int previousTokenType) {
+            mMode = mode;
+            mModeStack = modeStack;
+            mPreviousTokenType = previousTokenType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LexerState that = (LexerState) o;
+            return mMode == that.mMode &&
+                   mPreviousTokenType == that.mPreviousTokenType &&
+                   Arrays.equals(mModeStack, that.mModeStack);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mMode + mPreviousTokenType) + Arrays.hashCode(mModeStack);
+        }
+    }
+
+    /**
+     * The tokens and spans of a single line
+     */
+    protected static final class LineTokens {
+
+        private final String mText;
+        private final LexerState mStartState;
+        private final LexerState mEndState;
+        /**
+         * The type and column of each token
+         */
+        private final int[] mTokens;
+        private final List<Span> mSpans;
+
+        LineTokens(String text, LexerState startState, LexerState endState, int[] tokens,
+                   List<Span> spans) {
+            mText = text;
+            mStartState = startState;
+            mEndState = endState;
+            mTokens = tokens;
+            mSpans = spans;
+        }
+
+        public int getTokenCount() {
+            return mTokens.length / 2;
+        }
+
+        public int getTokenType(int index) {
+            return mTokens[index * 2];
+        }
+
+        public int getTokenColumn(int index) {
+            return mTokens[index * 2 + 1];
+        }
+
+        boolean contentEquals(CharSequence text, int[] lineStarts, int line) {
+            int start = lineStarts[line];
+            int end = getLineEnd(text, lineStarts, line);
+            if (end - start != mText.length()) {
+                return false;
+            }
+            for (int i = 0; i < mText.length(); i++) {
+                if (mText.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     @Nullable
     protected Styles getLastStyles() {
         return mLastStyles;
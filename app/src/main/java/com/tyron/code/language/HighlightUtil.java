@@ -3,6 +3,8 @@ package com.tyron.code.language;
 import android.util.Log;
 
 import com.tyron.builder.model.DiagnosticWrapper;
+import com.tyron.code.analyzer.semantic.SemanticToken;
+import com.tyron.code.analyzer.semantic.TokenType;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.editor.CharPosition;
 import com.tyron.editor.Editor;
@@ -11,6 +13,7 @@ import javax.tools.Diagnostic;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 import io.github.rosemoe.sora.lang.styling.Span;
 import io.github.rosemoe.sora.lang.styling.Spans;
@@ -26,56 +29,127 @@ public class HighlightUtil {
             int end = (line == endLine ? endColumn : Integer.MAX_VALUE);
             Spans.Reader read = styles.getSpans().read();
             List<io.github.rosemoe.sora.lang.styling.Span> spans = new ArrayList<>(read.getSpansOnLine(line));
-            int increment;
-            for (int i = 0; i < spans.size(); i += increment) {
-                ProgressManager.checkCanceled();
-                io.github.rosemoe.sora.lang.styling.Span span = spans.get(i);
-                increment = 1;
-                if (span.column >= end) {
-                    break;
-                }
-                int spanEnd = (i + 1 >= spans.size() ? Integer.MAX_VALUE : spans.get(i + 1).column);
-                if (spanEnd >= start) {
-                    int regionStartInSpan = Math.max(span.column, start);
-                    int regionEndInSpan = Math.min(end, spanEnd);
-                    if (regionStartInSpan == span.column) {
-                        if (regionEndInSpan != spanEnd) {
-                            increment = 2;
-                            io.github.rosemoe.sora.lang.styling.Span nSpan = span.copy();
-                            nSpan.column = regionEndInSpan;
-                            spans.add(i + 1, nSpan);
-                        }
-                        span.underlineColor = newSpan.underlineColor;
-                        span.style = newSpan.style;
-                        span.renderer = newSpan.renderer;
+            replaceSpan(spans, newSpan, start, end);
+
+            Spans.Modifier modify = styles.getSpans().modify();
+            modify.setSpansOnLine(line, spans);
+        }
+    }
+
+    /**
+     * Applies the style of the given span to the columns from start to end of a line.
+     */
+    private static void replaceSpan(List<Span> spans, Span newSpan, int start, int end) {
+        int increment;
+        for (int i = findSpanIndex(spans, start); i < spans.size(); i += increment) {
+            ProgressManager.checkCanceled();
+            io.github.rosemoe.sora.lang.styling.Span span = spans.get(i);
+            increment = 1;
+            if (span.column >= end) {
+                break;
+            }
+            int spanEnd = (i + 1 >= spans.size() ? Integer.MAX_VALUE : spans.get(i + 1).column);
+            if (spanEnd >= start) {
+                int regionStartInSpan = Math.max(span.column, start);
+                int regionEndInSpan = Math.min(end, spanEnd);
+                if (regionStartInSpan == span.column) {
+                    if (regionEndInSpan != spanEnd) {
+                        increment = 2;
+                        io.github.rosemoe.sora.lang.styling.Span nSpan = span.copy();
+                        nSpan.column = regionEndInSpan;
+                        spans.add(i + 1, nSpan);
+                    }
+                    span.underlineColor = newSpan.underlineColor;
+                    span.style = newSpan.style;
+                    span.renderer = newSpan.renderer;
+                } else {
+                    //regionStartInSpan > span.column
+                    if (regionEndInSpan == spanEnd) {
+                        increment = 2;
+                        io.github.rosemoe.sora.lang.styling.Span nSpan = span.copy();
+                        nSpan.column = regionStartInSpan;
+                        nSpan.underlineColor = newSpan.underlineColor;
+                        nSpan.style = newSpan.style;
+                        nSpan.renderer = newSpan.renderer;
+                        spans.add(i + 1, nSpan);
                     } else {
-                        //regionStartInSpan > span.column
-                        if (regionEndInSpan == spanEnd - 1) {
-                            increment = 2;
-                            io.github.rosemoe.sora.lang.styling.Span nSpan = span.copy();
-                            nSpan.column = regionStartInSpan;
-                            spans.add(i + 1, nSpan);
-                            span.underlineColor = newSpan.underlineColor;
-                            span.style = newSpan.style;
-                            span.renderer = newSpan.renderer;
-                        } else {
-                            increment = 3;
-                            io.github.rosemoe.sora.lang.styling.Span span1 = span.copy();
-                            span1.column = regionStartInSpan;
-                            span1.underlineColor = newSpan.underlineColor;
-                            span1.style = newSpan.style;
-                            span1.renderer = newSpan.renderer;
-                            io.github.rosemoe.sora.lang.styling.Span span2 = span.copy();
-                            span2.column = regionEndInSpan;
-                            spans.add(i + 1, span1);
-                            spans.add(i + 2, span2);
-                        }
+                        increment = 3;
+                        io.github.rosemoe.sora.lang.styling.Span span1 = span.copy();
+                        span1.column = regionStartInSpan;
+                        span1.underlineColor = newSpan.underlineColor;
+                        span1.style = newSpan.style;
+                        span1.renderer = newSpan.renderer;
+                        io.github.rosemoe.sora.lang.styling.Span span2 = span.copy();
+                        span2.column = regionEndInSpan;
+                        spans.add(i + 1, span1);
+                        spans.add(i + 2, span2);
                     }
                 }
             }
+        }
+    }
 
-            Spans.Modifier modify = styles.getSpans().modify();
-            modify.setSpansOnLine(line, spans);
+    /**
+     * Returns the index of the last span that starts at or before the given column.
+     */
+    private static int findSpanIndex(List<Span> spans, int column) {
+        int low = 0;
+        int high = spans.size() - 1;
+        int index = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (spans.get(mid).column <= column) {
+                index = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Applies the styles of the given semantic tokens. The spans of each line are read and
+     * written once, no matter how many tokens are on it.
+     *
+     * @param tokens The tokens, sorted by their offset
+     * @param styleResolver Returns the style of a token type, or 0 if it should not be styled
+     */
+    public static void applySemanticTokens(Editor editor,
+                                           Styles styles,
+                                           List<SemanticToken> tokens,
+                                           ToLongFunction<TokenType> styleResolver) {
+        int currentLine = -1;
+        List<Span> spans = null;
+        for (SemanticToken token : tokens) {
+            ProgressManager.checkCanceled();
+            long style = styleResolver.applyAsLong(token.getTokenType());
+            if (style == 0) {
+                continue;
+            }
+            CharPosition start;
+            CharPosition end;
+            try {
+                start = editor.getCharPosition(token.getOffset());
+                end = editor.getCharPosition(token.getOffset() + token.getLength());
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                break;
+            }
+            if (start.getLine() != end.getLine()) {
+                continue;
+            }
+
+            if (start.getLine() != currentLine) {
+                if (spans != null) {
+                    styles.getSpans().modify().setSpansOnLine(currentLine, spans);
+                }
+                currentLine = start.getLine();
+                spans = new ArrayList<>(styles.getSpans().read().getSpansOnLine(currentLine));
+            }
+            replaceSpan(spans, Span.obtain(0, style), start.getColumn(), end.getColumn());
+        }
+        if (spans != null) {
+            styles.getSpans().modify().setSpansOnLine(currentLine, spans);
         }
     }
 
@@ -87,7 +161,7 @@ public class HighlightUtil {
             Spans.Reader read = styles.getSpans().read();
             List<io.github.rosemoe.sora.lang.styling.Span> spans = new ArrayList<>(read.getSpansOnLine(line));
             int increment;
-            for (int i = 0; i < spans.size(); i += increment) {
+            for (int i = findSpanIndex(spans, start); i < spans.size(); i += increment) {
                 ProgressManager.checkCanceled();
                 io.github.rosemoe.sora.lang.styling.Span span = spans.get(i);
                 increment = 1;
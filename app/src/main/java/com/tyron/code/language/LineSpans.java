@@ -0,0 +1,120 @@
+package com.tyron.code.language;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.rosemoe.sora.lang.styling.Span;
+import io.github.rosemoe.sora.lang.styling.Spans;
+import io.github.rosemoe.sora.text.CharPosition;
+import io.github.rosemoe.sora.widget.schemes.EditorColorScheme;
+
+/**
+ * {@link Spans} backed by a list of span lists, one for each line. The lists of the lines are
+ * never modified, so they can be shared with the results of a later analysis.
+ */
+class LineSpans implements Spans {
+
+    private final List<List<Span>> mLines;
+
+    LineSpans(List<List<Span>> lines) {
+        mLines = new ArrayList<>(lines);
+    }
+
+    @Override
+    public void adjustOnInsert(CharPosition start, CharPosition end) {
+        if (start.line >= mLines.size()) {
+            return;
+        }
+        // keep the lines after the insertion in place until the next analysis
+        List<Span> spans = mLines.get(start.line);
+        for (int line = start.line + 1; line <= end.line; line++) {
+            mLines.add(line, spans);
+        }
+    }
+
+    @Override
+    public void adjustOnDelete(CharPosition start, CharPosition end) {
+        int to = Math.min(end.line + 1, mLines.size());
+        if (start.line + 1 < to) {
+            mLines.subList(start.line + 1, to).clear();
+        }
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLines.size();
+    }
+
+    @Override
+    public Reader read() {
+        return new ReaderImpl();
+    }
+
+    @Override
+    public Modifier modify() {
+        return new ModifierImpl();
+    }
+
+    @Override
+    public boolean supportsModify() {
+        return true;
+    }
+
+    private static List<Span> emptyLine() {
+        return Collections.singletonList(Span.obtain(0, EditorColorScheme.TEXT_NORMAL));
+    }
+
+    private class ReaderImpl implements Spans.Reader {
+
+        private List<Span> mLine = emptyLine();
+
+        @Override
+        public void moveToLine(int line) {
+            if (line < 0 || line >= mLines.size()) {
+                mLine = emptyLine();
+            } else {
+                mLine = mLines.get(line);
+            }
+        }
+
+        @Override
+        public int getSpanCount() {
+            return mLine.size();
+        }
+
+        @Override
+        public Span getSpanAt(int index) {
+            return mLine.get(index);
+        }
+
+        @Override
+        public List<Span> getSpansOnLine(int line) {
+            if (line < 0 || line >= mLines.size()) {
+                return emptyLine();
+            }
+            return Collections.unmodifiableList(mLines.get(line));
+        }
+    }
+
+    private class ModifierImpl implements Spans.Modifier {
+
+        @Override
+        public void setSpansOnLine(int line, List<Span> spans) {
+            while (mLines.size() <= line) {
+                mLines.add(emptyLine());
+            }
+            mLines.set(line, spans);
+        }
+
+        @Override
+        public void addLineAt(int line, List<Span> spans) {
+            mLines.add(line, spans);
+        }
+
+        @Override
+        public void deleteLineAt(int line) {
+            mLines.remove(line);
+        }
+    }
+}
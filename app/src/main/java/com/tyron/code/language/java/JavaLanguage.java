@@ -8,22 +8,36 @@ import androidx.annotation.Nullable;
 
 import com.sun.tools.javac.util.JCDiagnostic;
 import com.tyron.builder.project.Project;
+import com.tyron.code.analyzer.BaseTextmateAnalyzer;
+import com.tyron.code.analyzer.semantic.IncrementalSemanticHighlighter;
+import com.tyron.code.analyzer.semantic.SemanticToken;
+import com.tyron.code.analyzer.semantic.TokenType;
 import com.tyron.code.language.CompletionItemWrapper;
 import com.tyron.code.language.EditorFormatter;
+import com.tyron.code.language.HighlightUtil;
 import com.tyron.code.language.LanguageManager;
 import com.tyron.completion.CompletionParameters;
 import com.tyron.completion.java.JavaCompletionProvider;
 import com.tyron.completion.java.compiler.services.NBLog;
 import com.tyron.completion.java.parse.CompilationInfo;
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProgressManager;
 import com.tyron.editor.Editor;
+import com.tyron.eclipse.formatter.FormatEdit;
+import com.tyron.eclipse.formatter.FormatterService;
 import com.tyron.language.api.CodeAssistLanguage;
 
+import org.eclipse.tm4e.core.theme.Theme;
+import org.eclipse.tm4e.core.theme.ThemeTrieElementRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -45,6 +59,9 @@ import io.github.rosemoe.sora.lang.format.AsyncFormatter;
 import io.github.rosemoe.sora.lang.format.Formatter;
 import io.github.rosemoe.sora.lang.smartEnter.NewlineHandleResult;
 import io.github.rosemoe.sora.lang.smartEnter.NewlineHandler;
+import io.github.rosemoe.sora.lang.styling.Styles;
+import io.github.rosemoe.sora.lang.styling.TextStyle;
+import io.github.rosemoe.sora.langs.textmate.TextMateAnalyzer;
 import io.github.rosemoe.sora.langs.textmate.TextMateLanguage;
 import io.github.rosemoe.sora.text.CharPosition;
 import io.github.rosemoe.sora.text.Content;
@@ -52,6 +69,7 @@ import io.github.rosemoe.sora.text.ContentReference;
 import io.github.rosemoe.sora.text.TextRange;
 import io.github.rosemoe.sora.text.TextUtils;
 import io.github.rosemoe.sora.util.MyCharacter;
+import io.github.rosemoe.sora.widget.CodeEditor;
 import io.github.rosemoe.sora.widget.SymbolPairMatch;
 
 public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLanguage {
@@ -64,18 +82,18 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
 
     private final Editor editor;
     private final TextMateLanguage delegate;
+    private final IncrementalSemanticHighlighter semanticHighlighter =
+            new IncrementalSemanticHighlighter();
+    private final Map<TokenType, Long> tokenStyles = new HashMap<>();
+    private Theme tokenStylesTheme;
+    private Styles semanticStyles;
     private final Formatter formatter = new AsyncFormatter() {
         @Nullable
         @Override
         public TextRange formatAsync(@NonNull Content text, @NonNull TextRange cursorRange) {
-            String format = com.tyron.eclipse.formatter.Formatter.format(text.toString(),
-                    cursorRange.getStartIndex(),
-                    cursorRange.getEndIndex() - cursorRange.getStartIndex());
-            if (!text.toString().equals(format)) {
-                text.delete(0, text.getLineCount() - 1);
-                text.insert(0, 0, format);
-            }
-            return cursorRange;
+            List<FormatEdit> edits = FormatterService.getInstance()
+                    .format(text.toString(), 0, 0, text.length());
+            return applyEdits(text, edits, cursorRange);
         }
 
         @Nullable
@@ -83,7 +101,33 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
         public TextRange formatRegionAsync(@NonNull Content text,
                                            @NonNull TextRange rangeToFormat,
                                            @NonNull TextRange cursorRange) {
-            return null;
+            List<FormatEdit> edits = FormatterService.getInstance()
+                    .formatRegion(text.toString(), rangeToFormat.getStartIndex(),
+                            rangeToFormat.getEndIndex());
+            return applyEdits(text, edits, cursorRange);
+        }
+
+        /**
+         * Applies the edits from the last to the first so the offsets of the remaining ones
+         * stay valid, and moves the cursor along with the text around it.
+         */
+        private TextRange applyEdits(Content text, List<FormatEdit> edits,
+                                     TextRange cursorRange) {
+            if (edits.isEmpty()) {
+                return cursorRange;
+            }
+            int start = FormatEdit.mapOffset(cursorRange.getStartIndex(), edits);
+            int end = FormatEdit.mapOffset(cursorRange.getEndIndex(), edits);
+
+            text.beginBatchEdit();
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                FormatEdit edit = edits.get(i);
+                text.replace(edit.getOffset(), edit.getEnd(), edit.getText());
+            }
+            text.endBatchEdit();
+
+            return new TextRange(text.getIndexer().getCharPosition(start),
+                    text.getIndexer().getCharPosition(end));
         }
     };
 
@@ -192,8 +236,12 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
     @NonNull
     @Override
     public CharSequence format(@NonNull CharSequence contents, int start, int end) {
-        return com.tyron.eclipse.formatter.Formatter.format(contents.toString(), start,
-                end - start);
+        String source = contents.toString();
+        List<FormatEdit> edits = FormatterService.getInstance().formatRegion(source, start, end);
+        if (edits.isEmpty()) {
+            return contents;
+        }
+        return FormatEdit.apply(source, edits);
     }
 
     @Override
@@ -212,6 +260,7 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
 
     @Override
     public void destroy() {
+        semanticHighlighter.cancel();
         delegate.destroy();
     }
 
@@ -225,20 +274,89 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
         if (compilationInfo == null) {
             return;
         }
+        String snapshot = content.toString();
         JavaFileObject fileObject = new SimpleJavaFileObject(editor.getCurrentFile().toURI(),
                 JavaFileObject.Kind.SOURCE) {
             @Override
             public CharSequence getCharContent(boolean ignoreEncodingErrors) {
-                return content;
+                return snapshot;
             }
         };
+        semanticHighlighter.cancel();
         try {
-            compilationInfo.update(fileObject);
+            compilationInfo.update(fileObject, 300, unit -> {
+                if (unit == null) {
+                    return;
+                }
+                List<SemanticToken> tokens = semanticHighlighter.update(unit,
+                        compilationInfo.getTrees(), snapshot);
+                ProgressManager.getInstance().runLater(() ->
+                        applySemanticTokens(snapshot, tokens));
+            });
         } catch (Throwable t) {
             LOGGER.error("Failed to update compilation unit", t);
         }
     }
 
+    /**
+     * Applies the changed semantic tokens on top of the spans of the text mate analyzer.
+     * Must be called on the main thread.
+     */
+    private void applySemanticTokens(String snapshot, List<SemanticToken> tokens) {
+        if (!(editor instanceof CodeEditor)) {
+            return;
+        }
+        CodeEditor codeEditor = (CodeEditor) editor;
+        if (!snapshot.contentEquals(editor.getContent())) {
+            // the text has been edited since, the positions of these tokens are outdated
+            semanticHighlighter.reset();
+            return;
+        }
+        Styles styles = codeEditor.getStyles();
+        if (styles == null) {
+            return;
+        }
+        if (styles != semanticStyles) {
+            // the analyzer has highlighted the whole file again
+            semanticStyles = styles;
+            tokens = semanticHighlighter.getTokens();
+        }
+        if (tokens.isEmpty()) {
+            return;
+        }
+        HighlightUtil.applySemanticTokens(editor, styles, tokens, this::getTokenStyle);
+        codeEditor.invalidate();
+    }
+
+    private long getTokenStyle(TokenType type) {
+        AnalyzeManager analyzeManager = delegate.getAnalyzeManager();
+        if (!(analyzeManager instanceof TextMateAnalyzer)) {
+            return 0;
+        }
+        Theme theme = BaseTextmateAnalyzer.getTheme((TextMateAnalyzer) analyzeManager);
+        if (theme != tokenStylesTheme) {
+            tokenStylesTheme = theme;
+            tokenStyles.clear();
+        }
+        Long style = tokenStyles.get(type);
+        if (style == null) {
+            style = 0L;
+            List<String> scopes = new ArrayList<>();
+            scopes.add(type.getScope());
+            scopes.addAll(Arrays.asList(type.getFallbackScopes()));
+            for (String scope : scopes) {
+                List<ThemeTrieElementRule> rules = theme.match(scope);
+                if (!rules.isEmpty() && rules.get(0).foreground > 0) {
+                    // text mate colors are registered after the colors of the editor
+                    style = TextStyle.makeStyle(rules.get(0).foreground + 255);
+                    break;
+                }
+            }
+            tokenStyles.put(type, style);
+        }
+        return style;
+    }
+
     class TwoIndentHandler implements NewlineHandler {
 
         @Override
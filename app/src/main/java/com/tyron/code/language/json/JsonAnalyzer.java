@@ -6,6 +6,7 @@ import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
 
+import java.util.List;
 import java.util.Stack;
 
 import io.github.rosemoe.sora.lang.styling.CodeBlock;
@@ -41,6 +42,61 @@ public class JsonAnalyzer extends AbstractCodeAnalyzer<Object> {
 
     }
 
+    @Override
+    protected boolean isLineBased() {
+        return true;
+    }
+
+    @Override
+    protected int getTokenColor(Token token, int previousTokenType) {
+        if (token.getType() == JSONLexer.STRING && previousTokenType == JSONLexer.COLON) {
+            return EditorColorScheme.LITERAL;
+        }
+        return super.getTokenColor(token, previousTokenType);
+    }
+
+    @Override
+    protected void computeBlocks(List<LineTokens> lines, Styles styles) {
+        beforeAnalyze();
+        for (int line = 0; line < lines.size(); line++) {
+            LineTokens tokens = lines.get(line);
+            for (int i = 0; i < tokens.getTokenCount(); i++) {
+                int type = tokens.getTokenType(i);
+                if (type == JSONLexer.LBRACE) {
+                    onBlockStart(styles, line, tokens.getTokenColumn(i));
+                } else if (type == JSONLexer.RBRACE) {
+                    onBlockEnd(styles, line, tokens.getTokenColumn(i));
+                }
+            }
+        }
+        afterAnalyze(null, styles, null);
+    }
+
+    private void onBlockStart(Styles styles, int line, int column) {
+        if (mBlockLines.isEmpty()) {
+            if (mCurrSwitch > mMaxSwitch) {
+                mMaxSwitch = mCurrSwitch;
+            }
+            mCurrSwitch = 0;
+        }
+        mCurrSwitch++;
+        CodeBlock block = styles.obtainNewBlock();
+        block.startLine = line;
+        block.startColumn = column;
+        mBlockLines.push(block);
+    }
+
+    private void onBlockEnd(Styles styles, int line, int column) {
+        if (!mBlockLines.isEmpty()) {
+            CodeBlock b = mBlockLines.pop();
+            b.endLine = line;
+            b.endColumn = column;
+            if (b.startLine != b.endLine) {
+                styles.addCodeBlock(b);
+            }
+        }
+    }
+
     @Override
     protected void beforeAnalyze() {
         mBlockLines.clear();
@@ -64,27 +120,10 @@ public class JsonAnalyzer extends AbstractCodeAnalyzer<Object> {
                 }
                 break;
             case JSONLexer.RBRACE:
-                if (!mBlockLines.isEmpty()) {
-                    CodeBlock b = mBlockLines.pop();
-                    b.endLine = line;
-                    b.endColumn = column;
-                    if (b.startLine != b.endLine) {
-                        styles.addCodeBlock(b);
-                    }
-                }
+                onBlockEnd(styles, line, column);
                 return false;
             case JSONLexer.LBRACE:
-                if (mBlockLines.isEmpty()) {
-                    if (mCurrSwitch > mMaxSwitch) {
-                        mMaxSwitch = mCurrSwitch;
-                    }
-                    mCurrSwitch = 0;
-                }
-                mCurrSwitch++;
-                CodeBlock block = styles.obtainNewBlock();
-                block.startLine = line;
-                block.startColumn = column;
-                mBlockLines.push(block);
+                onBlockStart(styles, line, column);
                 return false;
         }
         return false;
@@ -13,6 +13,7 @@ import androidx.core.app.NotificationManagerCompat;
 import com.google.common.base.Throwables;
 import com.tyron.code.R;
 import com.tyron.common.util.FileUtilsEx;
+import com.tyron.groovy.DexCache;
 
 import org.apache.commons.io.FileUtils;
 import org.gradle.launcher.daemon.bootstrap.DaemonMain;
@@ -82,6 +83,10 @@ public class GradleDaemonService extends Service {
         }
 
         if (!daemonStarted) {
+            // dex the build script classpath of the previous session while the daemon starts
+            // so that configuration does not stall on D8
+            DexCache.getInstance().warmUpRecentClasspathAsync();
+
             new Thread(() -> {
                 daemonStarted = true;
 
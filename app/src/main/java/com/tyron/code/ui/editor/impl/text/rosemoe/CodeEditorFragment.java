@@ -36,6 +36,7 @@ import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.api.SnapshotDelta;
 import com.tyron.builder.project.listener.FileListener;
 import com.tyron.code.ApplicationLoader;
 import com.tyron.code.R;
@@ -145,6 +146,11 @@ public class CodeEditorFragment extends Fragment implements Savable,
     private Bundle mSavedInstanceState;
 
     private boolean mCanSave = false;
+    /**
+     * The version of the file manager contents that the editor text corresponds to
+     */
+    private long mSnapshotVersion = -1;
+    private boolean mApplyingSnapshot;
     private boolean mReading = false;
 
     private View.OnTouchListener mDragToOpenListener;
@@ -326,7 +332,6 @@ public class CodeEditorFragment extends Fragment implements Savable,
         mEditor.subscribeEvent(LongPressEvent.class, (event, unsubscribe) -> {
             event.intercept();
 
-            updateFile(mEditor.getText());
             Cursor cursor = mEditor.getCursor();
             if (cursor.isSelected()) {
                 int index = mEditor.getCharIndex(event.getLine(), event.getColumn());
@@ -366,10 +371,10 @@ public class CodeEditorFragment extends Fragment implements Savable,
             }
         });
         mEditor.subscribeEvent(ContentChangeEvent.class, (event, unsubscribe) -> {
-            if (event.getAction() == ContentChangeEvent.ACTION_SET_NEW_TEXT) {
+            if (event.getAction() == ContentChangeEvent.ACTION_SET_NEW_TEXT || mApplyingSnapshot) {
                 return;
             }
-            updateFile(event.getEditor().getText());
+            updateFile(event);
         });
 
         LogViewModel logViewModel =
@@ -494,20 +499,49 @@ public class CodeEditorFragment extends Fragment implements Savable,
 
     @Override
     public void onSnapshotChanged(File file, CharSequence contents) {
-        if (mCurrentFile.equals(file)) {
-            if (mEditor != null) {
-                if (!mEditor.getText().toString().contentEquals(contents)) {
-                    Cursor cursor = mEditor.getCursor();
-                    int left = cursor.getLeft();
-                    mEditor.setText(contents);
-
-                    if (left > contents.length()) {
-                        left = contents.length();
-                    }
-                    CharPosition position = mEditor.getCharPosition(left);
-                    mEditor.setSelection(position.getLine(), position.getColumn());
-                }
+        onSnapshotChanged(file, contents, -1, null);
+    }
+
+    @Override
+    public void onSnapshotChanged(File file,
+                                  CharSequence contents,
+                                  long version,
+                                  @Nullable SnapshotDelta delta) {
+        if (!mCurrentFile.equals(file) || mEditor == null) {
+            return;
+        }
+        if (version != -1 && version == mSnapshotVersion) {
+            return;
+        }
+        long previousVersion = mSnapshotVersion;
+        mSnapshotVersion = version;
+
+        Content text = mEditor.getText();
+        if (delta != null && previousVersion != -1 && delta.getBaseVersion() == previousVersion) {
+            // the editor is at the version the edit was made to, apply only the edit
+            CharPosition start = mEditor.getCharPosition(delta.getStart());
+            CharPosition end = mEditor.getCharPosition(delta.getEnd());
+            mApplyingSnapshot = true;
+            try {
+                text.replace(start.getLine(), start.getColumn(), end.getLine(), end.getColumn(),
+                        delta.getText());
+            } finally {
+                mApplyingSnapshot = false;
             }
+            return;
+        }
+
+        // an earlier edit was missed, replace the whole text
+        if (text.length() != contents.length() || !text.toString().contentEquals(contents)) {
+            Cursor cursor = mEditor.getCursor();
+            int left = cursor.getLeft();
+            mEditor.setText(contents);
+
+            if (left > contents.length()) {
+                left = contents.length();
+            }
+            CharPosition position = mEditor.getCharPosition(left);
+            mEditor.setSelection(position.getLine(), position.getColumn());
         }
     }
 
@@ -584,6 +618,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
         if (fileManager.isOpened(mCurrentFile)) {
             Optional<CharSequence> contents = fileManager.getFileContent(mCurrentFile);
             if (contents.isPresent()) {
+                mSnapshotVersion = fileManager.getSnapshotVersion(mCurrentFile);
                 mEditor.setText(contents.get());
                 return;
             }
@@ -607,6 +642,7 @@ public class CodeEditorFragment extends Fragment implements Savable,
                 mEditor.setBackgroundAnalysisEnabled(true);
                 mEditor.setEditable(true);
                 fileManager.openFileForSnapshot(mCurrentFile, result);
+                mSnapshotVersion = fileManager.getSnapshotVersion(mCurrentFile);
 
                 Bundle bundle = new Bundle();
                 bundle.putBoolean("loaded", true);
@@ -672,18 +708,31 @@ public class CodeEditorFragment extends Fragment implements Savable,
         }
     }
 
-    private void updateFile(CharSequence contents) {
+    /**
+     * Passes only the changed region of the editor to the file manager, so the whole
+     * text is not copied on every keystroke.
+     */
+    private void updateFile(ContentChangeEvent event) {
         Project project = ProjectManager.getInstance().getCurrentProject();
         if (project == null) {
             return;
         }
         Module module = project.getModule(mCurrentFile);
-        if (module != null) {
-            if (!module.getFileManager().isOpened(mCurrentFile)) {
-                return;
-            }
-            module.getFileManager().setSnapshotContent(mCurrentFile, contents.toString(), this);
+        if (module == null || !module.getFileManager().isOpened(mCurrentFile)) {
+            return;
+        }
+        int start = event.getChangeStart().index;
+        int end;
+        CharSequence text;
+        if (event.getAction() == ContentChangeEvent.ACTION_DELETE) {
+            end = event.getChangeEnd().index;
+            text = "";
+        } else {
+            end = start;
+            text = event.getChangedText();
         }
+        mSnapshotVersion = module.getFileManager()
+                .applySnapshotEdit(mCurrentFile, start, end, text, this);
     }
 
     public CodeEditorView getEditor() {
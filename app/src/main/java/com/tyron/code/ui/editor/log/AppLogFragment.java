@@ -12,6 +12,7 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.common.io.ByteStreams;
 import com.tyron.builder.log.LogViewModel;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
@@ -24,10 +25,10 @@ import com.tyron.common.util.ShareUtils;
 import com.tyron.fileeditor.api.FileEditorManager;
 import com.tyron.terminal.TerminalSession;
 import com.tyron.terminal.TerminalSessionClientAdapter;
+import com.tyron.terminal.view.TerminalOutputStream;
 import com.tyron.terminal.view.TerminalView;
 import com.tyron.terminal.view.TerminalViewClientAdapter;
 
-import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.logging.Handler;
@@ -52,8 +53,9 @@ public class AppLogFragment extends Fragment
     private LogAdapter mAdapter;
     private RecyclerView mRecyclerView;
     private TerminalView mTerminalView;
+    private TerminalOutputStream mOutputStream;
 
-    public static OutputStream outputStream;
+    public static OutputStream outputStream = ByteStreams.nullOutputStream();
     public static OutputStream errorOutputStream;
 
     public AppLogFragment() {
@@ -92,18 +94,9 @@ public class AppLogFragment extends Fragment
             mTerminalView.setTerminalViewClient(new TerminalViewClientAdapter(mTerminalView));
             mTerminalView.attachSession(session);
 
-            outputStream = new OutputStream() {
-                @Override
-                public void write(int b) throws IOException {
-                    write(new byte[]{(byte) b}, 0, 1);
-                }
-
-                @Override
-                public void write(byte[] b, int off, int len) throws IOException {
-                    mTerminalView.mEmulator.append(b, off + len);
-                    mTerminalView.postInvalidate();
-                }
-            };
+            // build output is buffered and shown at most once per frame
+            mOutputStream = new TerminalOutputStream(mTerminalView);
+            outputStream = mOutputStream;
 
             mRoot.addView(mTerminalView, new ViewGroup.LayoutParams(-1, -1));
             return mRoot;
@@ -142,6 +135,9 @@ public class AppLogFragment extends Fragment
         if (id == LogViewModel.BUILD_LOG) {
             mModel.getLogs(id).observe(getViewLifecycleOwner(), diagnosticWrappers -> {
                 if (diagnosticWrappers.isEmpty()) {
+                    if (mOutputStream != null) {
+                        mOutputStream.clear();
+                    }
                     if (mTerminalView.mEmulator != null && mTerminalView.mEmulator.getScreen() != null) {
                         mTerminalView.mEmulator.clearTranscript();
                         mTerminalView.invalidate();
@@ -161,6 +157,15 @@ public class AppLogFragment extends Fragment
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+
+        if (mOutputStream != null) {
+            // builds that are still running may keep writing to the stream of this view
+            mOutputStream.close();
+            if (outputStream == mOutputStream) {
+                outputStream = ByteStreams.nullOutputStream();
+            }
+            mOutputStream = null;
+        }
     }
 
     private void process(List<DiagnosticWrapper> texts) {
@@ -30,7 +30,10 @@ import com.tyron.code.R;
 import com.tyron.code.event.EventManager;
 import com.tyron.code.event.EventReceiver;
 import com.tyron.code.event.SubscriptionReceipt;
+import com.tyron.code.event.FileCreatedEvent;
+import com.tyron.code.event.FileDeletedEvent;
 import com.tyron.code.event.Unsubscribe;
+import com.tyron.builder.project.Project;
 import com.tyron.code.ui.file.event.RefreshRootEvent;
 import com.tyron.code.util.ApkInstaller;
 import com.tyron.code.util.EventManagerUtilsKt;
@@ -44,11 +47,14 @@ import com.tyron.code.ui.file.FileViewModel;
 import com.tyron.code.ui.file.tree.binder.TreeFileNodeViewBinder.TreeFileNodeListener;
 import com.tyron.code.ui.file.tree.binder.TreeFileNodeViewFactory;
 import com.tyron.code.ui.file.tree.model.TreeFile;
+import com.tyron.code.ui.file.tree.model.TreeFolder;
 import com.tyron.code.ui.main.MainViewModel;
 import com.tyron.code.ui.project.ProjectManager;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 public class TreeFileManagerFragment extends Fragment {
@@ -70,6 +76,16 @@ public class TreeFileManagerFragment extends Fragment {
     private FileViewModel mFileViewModel;
     private TreeView<TreeFile> treeView;
 
+    private Project mSubscribedProject;
+    private final List<SubscriptionReceipt<?>> mFileEventReceipts = new ArrayList<>();
+
+    private final ProjectManager.OnProjectOpenListener mProjectOpenListener =
+            project -> ProgressManager.getInstance().runLater(() -> {
+                if (getView() != null) {
+                    subscribeFileEvents(project);
+                }
+            });
+
     public TreeFileManagerFragment() {
         super(R.layout.tree_file_manager_fragment);
     }
@@ -129,6 +145,10 @@ public class TreeFileManagerFragment extends Fragment {
         treeView.setAdapter(new TreeFileNodeViewFactory(new TreeFileNodeListener() {
             @Override
             public void onNodeToggled(TreeNode<TreeFile> treeNode, boolean expanded) {
+                if (expanded && treeNode.getValue() instanceof TreeFolder) {
+                    loadChildren(treeNode);
+                    return;
+                }
                 if (treeNode.isLeaf()) {
                     File file = treeNode.getValue().getFile();
                     if (file.isFile()) {
@@ -153,21 +173,101 @@ public class TreeFileManagerFragment extends Fragment {
         mFileViewModel.getNodes().observe(getViewLifecycleOwner(), node -> {
             treeView.refreshTreeView(node);
         });
+
+        ProjectManager projectManager = ProjectManager.getInstance();
+        projectManager.addOnProjectOpenListener(mProjectOpenListener);
+        // the project may have been opened before this view was created
+        Project currentProject = projectManager.getCurrentProject();
+        if (currentProject != null) {
+            subscribeFileEvents(currentProject);
+        }
     }
 
+    /**
+     * Refreshes the tree when files of the given project are created or deleted, instead of the
+     * project that was previously subscribed to. Must be called on the main thread.
+     */
+    private void subscribeFileEvents(@NonNull Project project) {
+        if (project == mSubscribedProject) {
+            return;
+        }
+        unsubscribeFileEvents();
+        mSubscribedProject = project;
 
-    private void partialRefresh(Runnable callback) {
+        EventManager eventManager = project.getEventManager();
+        mFileEventReceipts.add(eventManager.subscribeEvent(FileCreatedEvent.class,
+                (event, unsubscribe) -> onFileChanged(event.getFile())));
+        mFileEventReceipts.add(eventManager.subscribeEvent(FileDeletedEvent.class,
+                (event, unsubscribe) -> onFileChanged(event.getDeletedFile())));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        ProjectManager.getInstance().removeOnProjectOpenListener(mProjectOpenListener);
+        unsubscribeFileEvents();
+    }
+
+    /**
+     * Lists the children of the directory in the background and shows them if it is still
+     * expanded
+     */
+    private void loadChildren(TreeNode<TreeFile> treeNode) {
         ProgressManager.getInstance().runNonCancelableAsync(() -> {
-            if (!treeView.getAllNodes().isEmpty()) {
-                TreeNode<TreeFile> node = treeView.getAllNodes().get(0);
-                TreeUtil.updateNode(node);
-                ProgressManager.getInstance().runLater(() -> {
-                    if (getActivity() == null) {
-                        return;
-                    }
-                    callback.run();
-                });
+            List<TreeNode<TreeFile>> children = TreeUtil.loadChildren(treeNode);
+            ProgressManager.getInstance().runLater(() -> {
+                if (getActivity() == null || !treeNode.isExpanded()) {
+                    return;
+                }
+                treeView.replaceChildren(treeNode, children);
+            });
+        });
+    }
+
+    private void unsubscribeFileEvents() {
+        for (SubscriptionReceipt<?> receipt : mFileEventReceipts) {
+            receipt.unsubscribe();
+        }
+        mFileEventReceipts.clear();
+        mSubscribedProject = null;
+    }
+
+    /**
+     * Updates only the directory containing the file, if it is shown in the tree
+     */
+    private void onFileChanged(File file) {
+        File parent = file.getParentFile();
+        TreeUtil.invalidate(parent);
+
+        ProgressManager.getInstance().runLater(() -> {
+            TreeNode<TreeFile> root = treeView.getRoot();
+            if (getView() == null || root == null || parent == null) {
+                return;
             }
+            TreeNode<TreeFile> node = TreeUtil.findNode(root, parent);
+            if (node != null && node.isExpanded()) {
+                loadChildren(node);
+            }
+        });
+    }
+
+
+    private void partialRefresh(Runnable callback) {
+        TreeNode<TreeFile> node = treeView.getRoot();
+        if (node == null) {
+            return;
+        }
+        ProgressManager.getInstance().runNonCancelableAsync(() -> {
+            TreeUtil.invalidate(node.getValue().getFile());
+            List<TreeNode<TreeFile>> children = TreeUtil.loadChildren(node);
+            ProgressManager.getInstance().runLater(() -> {
+                if (getActivity() == null) {
+                    return;
+                }
+                node.setChildren(children);
+                callback.run();
+            });
         });
     }
 
@@ -1,5 +1,8 @@
 package com.tyron.code.ui.file.tree;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.tyron.ui.treeview.TreeNode;
 import com.tyron.code.ui.file.tree.model.TreeFile;
 
@@ -7,12 +10,25 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Builds the nodes of the file tree. Only the children of expanded directories are listed,
+ * the listing of each directory is cached until the modification time of the directory changes.
+ */
 public class TreeUtil {
 
+    /**
+     * Listings taken within this time of the last modification of the directory are not
+     * trusted, since the file system may not update the time for a change made right after.
+     */
+    private static final long TIMESTAMP_RESOLUTION_MILLIS = 2000;
+
+    private static final Map<File, Listing> sListings = new ConcurrentHashMap<>();
+
     public static final Comparator<File> FILE_FIRST_ORDER = (file1, file2) -> {
         if (file1.isFile() && file2.isDirectory()) {
             return 1;
@@ -33,35 +49,83 @@ public class TreeUtil {
         return root;
     }
 
+    /**
+     * Lists the directory of the node again and replaces its children. The state of the
+     * children that still exist is kept.
+     */
     public static void updateNode(TreeNode<TreeFile> node) {
-        Set<File> expandedNodes = TreeUtil.getExpandedNodes(node);
-        List<TreeNode<TreeFile>> newChildren = getNodes(node.getValue().getFile(), node.getLevel())
-                .get(0).getChildren();
-        setExpandedNodes(newChildren, expandedNodes);
-        node.setChildren(newChildren);
+        invalidate(node.getValue().getFile());
+        node.setChildren(loadChildren(node));
     }
 
-    private static void setExpandedNodes(List<TreeNode<TreeFile>> nodeList, Set<File> expandedNodes) {
-        for (TreeNode<TreeFile> treeFileTreeNode : nodeList) {
-            if (expandedNodes.contains(treeFileTreeNode.getValue().getFile())) {
-                treeFileTreeNode.setExpanded(true);
-            }
+    /**
+     * Creates the children of the given directory node without modifying it, so this can be
+     * called from a background thread. Children that are expanded are loaded as well, other
+     * directories are left empty until they are expanded.
+     */
+    @NonNull
+    public static List<TreeNode<TreeFile>> loadChildren(@NonNull TreeNode<TreeFile> node) {
+        Map<File, TreeNode<TreeFile>> existing = new HashMap<>();
+        for (TreeNode<TreeFile> child : node.getChildren()) {
+            existing.put(child.getValue().getFile(), child);
+        }
+
+        List<TreeNode<TreeFile>> children = new ArrayList<>();
+        for (File file : listChildren(node.getValue().getFile())) {
+            TreeNode<TreeFile> childNode = new TreeNode<>(TreeFile.fromFile(file),
+                    node.getLevel() + 1);
 
-            setExpandedNodes(treeFileTreeNode.getChildren(), expandedNodes);
+            TreeNode<TreeFile> previous = existing.get(file);
+            if (previous != null && previous.isExpanded() && file.isDirectory()) {
+                childNode.setExpanded(true);
+                childNode.setChildren(loadChildren(previous));
+            }
+            children.add(childNode);
         }
+        return children;
     }
 
-    private static Set<File> getExpandedNodes(TreeNode<TreeFile> node) {
-        Set<File> expandedNodes = new HashSet<>();
-        if (node.isExpanded()) {
-            expandedNodes.add(node.getValue().getFile());
+    /**
+     * Finds the node of the given file among the loaded nodes under the given root.
+     */
+    @Nullable
+    public static TreeNode<TreeFile> findNode(@NonNull TreeNode<TreeFile> root, @NonNull File file) {
+        File rootFile = root.getValue().getFile();
+        if (rootFile.equals(file)) {
+            return root;
         }
-        for (TreeNode<TreeFile> child : node.getChildren()) {
-            if (child.getValue().getFile().isDirectory()) {
-                expandedNodes.addAll(getExpandedNodes(child));
+        String rootPath = rootFile.getAbsolutePath() + File.separator;
+        if (!file.getAbsolutePath().startsWith(rootPath)) {
+            return null;
+        }
+        String[] segments = file.getAbsolutePath().substring(rootPath.length())
+                .split(File.separator);
+
+        TreeNode<TreeFile> current = root;
+        for (String segment : segments) {
+            TreeNode<TreeFile> next = null;
+            for (TreeNode<TreeFile> child : current.getChildren()) {
+                if (segment.equals(child.getValue().getFile().getName())) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null) {
+                return null;
             }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Forget the cached listing of the given directory, e.g. after a file has been created
+     * or deleted in it.
+     */
+    public static void invalidate(@Nullable File directory) {
+        if (directory != null) {
+            sListings.remove(directory);
         }
-        return expandedNodes;
     }
 
     public static List<TreeNode<TreeFile>> getNodes(File rootFile) {
@@ -69,7 +133,7 @@ public class TreeUtil {
     }
 
     /**
-     * Get all the tree note at the given root
+     * Get the tree node at the given root along with its direct children
      */
     public static List<TreeNode<TreeFile>> getNodes(File rootFile, int initialLevel) {
         List<TreeNode<TreeFile>> nodes = new ArrayList<>();
@@ -81,33 +145,69 @@ public class TreeUtil {
                 TreeFile.fromFile(rootFile), initialLevel
         );
         root.setExpanded(true);
+        root.setChildren(loadChildren(root));
 
-        File[] children = rootFile.listFiles();
-        if (children != null) {
-            Arrays.sort(children, FILE_FIRST_ORDER);
-            for (File file : children) {
-                addNode(root, file, initialLevel + 1);
-            }
-        }
         nodes.add(root);
         return nodes;
     }
 
-    private static void addNode(TreeNode<TreeFile> node, File file, int level) {
-        TreeNode<TreeFile> childNode = new TreeNode<>(
-                TreeFile.fromFile(file), level
-        );
+    @NonNull
+    private static File[] listChildren(File directory) {
+        long lastModified = directory.lastModified();
+        Listing listing = sListings.get(directory);
+        if (listing != null && listing.isValid(lastModified)) {
+            return listing.children;
+        }
 
-        if (file.isDirectory()) {
-            File[] children = file.listFiles();
-            if (children != null) {
-                Arrays.sort(children, FILE_FIRST_ORDER);
-                for (File child : children) {
-                    addNode(childNode, child, level + 1);
-                }
+        File[] children = directory.listFiles();
+        if (children == null) {
+            sListings.remove(directory);
+            return new File[0];
+        }
+
+        // query the type of each file once instead of on every comparison
+        Entry[] entries = new Entry[children.length];
+        for (int i = 0; i < children.length; i++) {
+            entries[i] = new Entry(children[i], children[i].isDirectory());
+        }
+        Arrays.sort(entries, (e1, e2) -> {
+            if (e1.directory != e2.directory) {
+                return e1.directory ? -1 : 1;
             }
+            return String.CASE_INSENSITIVE_ORDER.compare(e1.file.getName(), e2.file.getName());
+        });
+        for (int i = 0; i < entries.length; i++) {
+            children[i] = entries[i].file;
         }
 
-        node.addChild(childNode);
+        sListings.put(directory, new Listing(lastModified, System.currentTimeMillis(), children));
+        return children;
+    }
+
+    private static class Entry {
+        private final File file;
+        private final boolean directory;
+
+        Entry(File file, boolean directory) {
+            this.file = file;
+            this.directory = directory;
+        }
+    }
+
+    private static class Listing {
+        private final long lastModified;
+        private final long listedAt;
+        private final File[] children;
+
+        Listing(long lastModified, long listedAt, File[] children) {
+            this.lastModified = lastModified;
+            this.listedAt = listedAt;
+            this.children = children;
+        }
+
+        boolean isValid(long currentLastModified) {
+            return lastModified == currentLastModified
+                   && listedAt - lastModified > TIMESTAMP_RESOLUTION_MILLIS;
+        }
     }
 }
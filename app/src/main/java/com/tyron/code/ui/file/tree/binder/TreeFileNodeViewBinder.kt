@@ -7,6 +7,7 @@ import com.tyron.code.R
 import com.tyron.ui.treeview.TreeNode
 import com.tyron.ui.treeview.base.BaseNodeViewBinder
 import com.tyron.code.ui.file.tree.model.TreeFile
+import com.tyron.code.ui.file.tree.model.TreeFolder
 import com.tyron.code.util.dp
 import com.tyron.code.util.setMargins
 
@@ -28,7 +29,8 @@ class TreeFileNodeViewBinder(
         with(viewHolder.arrow) {
             setImageResource(R.drawable.ic_baseline_keyboard_arrow_right_24)
             rotation = if (treeNode.isExpanded) 90F else 0F
-            visibility = if (treeNode.isLeaf) View.INVISIBLE else View.VISIBLE
+            // the children of a directory are only loaded once it is expanded
+            visibility = if (treeNode.isLeaf && treeNode.content !is TreeFolder) View.INVISIBLE else View.VISIBLE
         }
 
         val file = treeNode.content.file
@@ -1,5 +1,6 @@
 package com.tyron.code.ui.project;
 
+import android.content.SharedPreferences;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
@@ -11,6 +12,7 @@ import com.tyron.builder.BuildModule;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.CodeAssistAndroidLibrary;
 import com.tyron.builder.model.CodeAssistLibrary;
+import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.model.v2.ide.AaptOptions;
 import com.tyron.builder.model.v2.ide.AndroidLibraryData;
 import com.tyron.builder.model.v2.ide.ArtifactDependencies;
@@ -19,6 +21,7 @@ import com.tyron.builder.model.v2.ide.Library;
 import com.tyron.builder.model.v2.ide.LibraryType;
 import com.tyron.builder.model.v2.ide.SourceProvider;
 import com.tyron.builder.model.v2.ide.SourceSetContainer;
+import com.tyron.builder.model.v2.dsl.ProductFlavor;
 import com.tyron.builder.model.v2.models.AndroidProject;
 import com.tyron.builder.model.v2.models.BasicAndroidProject;
 import com.tyron.builder.model.v2.models.VariantDependencies;
@@ -59,6 +62,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -188,18 +192,108 @@ public class ProjectManager {
         BuildModule.getAndroidJar();
         BuildModule.getLambdaStubs();
 
+        SyncModelCache modelCache = new SyncModelCache(mCurrentProject.getRootFile());
+        SyncModelCache.Model cachedModel = modelCache.load();
+        if (cachedModel != null) {
+            String fingerprint = modelCache.computeFingerprint(
+                    Collections.singletonList(cachedModel.getProjectDir()));
+            try {
+                mListener.onTaskStarted("Load cached model");
+                applyModel(cachedModel, project, mListener);
+            } catch (Throwable t) {
+                logger.warning("Failed to load the cached model: " + t.getMessage());
+                modelCache.delete();
+                cachedModel = null;
+            }
+
+            if (cachedModel != null) {
+                mProjectOpenListeners.forEach(it -> it.onProjectOpen(mCurrentProject));
+                mCurrentProject.setIndexing(false);
+                mListener.onComplete(project, true, "Index successful");
+
+                if (!fingerprint.equals(cachedModel.fingerprint)) {
+                    // the build files changed since the model was saved, keep using it until
+                    // the sync completes
+                    ProgressManager.getInstance().runNonCancelableAsync(
+                            () -> resync(project, modelCache, logger));
+                }
+                return;
+            }
+        }
+
+        try {
+            SyncModelCache.Model model = syncModel(project, mListener);
+            applyModel(model, project, mListener);
+            modelCache.save(model);
+        } catch (Throwable t) {
+            Throwable throwable = t;
+            if (throwable instanceof BuildException) {
+                BuildException buildException = (BuildException) throwable;
+                if (buildException.getCause() != null) {
+                    throwable = buildException.getCause();
+                }
+            }
+            mListener.onComplete(mCurrentProject,
+                    false,
+                    Throwables.getStackTraceAsString(throwable) + "\n");
+            return;
+        }
+
+        mProjectOpenListeners.forEach(it -> it.onProjectOpen(mCurrentProject));
+
+        mCurrentProject.setIndexing(false);
+        mListener.onComplete(project, true, "Index successful");
+    }
+
+    /**
+     * Syncs the project in the background and replaces the model that was loaded from the cache
+     */
+    private void resync(Project project, SyncModelCache modelCache, ILogger logger) {
+        TaskListener listener = new TaskListener() {
+            @Override
+            public void onTaskStarted(String message) {
+                logger.debug(message);
+            }
+
+            @Override
+            public void onComplete(Project project, boolean success, String message) {
+
+            }
+        };
+        try {
+            SyncModelCache.Model model = syncModel(project, listener);
+            if (project != mCurrentProject) {
+                return;
+            }
+
+            project.setIndexing(true);
+            applyModel(model, project, listener);
+            modelCache.save(model);
+
+            mProjectOpenListeners.forEach(it -> it.onProjectOpen(project));
+        } catch (Throwable t) {
+            logger.warning("Failed to sync the project: " + t.getMessage());
+        } finally {
+            project.setIndexing(false);
+        }
+    }
+
+    /**
+     * Runs the gradle sync and resolves the model of the app module
+     */
+    private SyncModelCache.Model syncModel(Project project, TaskListener listener) throws IOException {
         GradleConnector gradleConnector = GradleConnector.newConnector();
-        gradleConnector.forProjectDirectory(mCurrentProject.getRootFile());
+        gradleConnector.forProjectDirectory(project.getRootFile());
         gradleConnector.useDistribution(URI.create("codeAssist"));
 
         try (ProjectConnection projectConnection = gradleConnector.connect()) {
-            mListener.onTaskStarted("Build model");
+            listener.onTaskStarted("Build model");
 
             // clears the logs
             AppLogFragment.outputStream.write("\033[H\033[2J".getBytes());
 
             ProgressListener progressListener =
-                    event -> mListener.onTaskStarted(event.getDisplayName());
+                    event -> listener.onTaskStarted(event.getDisplayName());
 
             BuildActionExecuter<ModelContainerV2> executer =
                     projectConnection.action(new GetAndroidModelV2Action("debug"));
@@ -214,39 +308,50 @@ public class ProjectManager {
             ModelContainerV2 modelContainer = executer.run();
             ModelContainerV2.ModelInfo appProject = modelContainer.getProject(":app", ":");
 
-            // remove the previous models
-            mCurrentProject.clear();
-            buildModel(appProject, project);
+            SyncModelCache.Model model = buildModel(appProject);
+            model.fingerprint = new SyncModelCache(project.getRootFile())
+                    .computeFingerprint(Collections.singletonList(appProject.getProjectDir()));
+            return model;
+        }
+    }
 
-            project.getModuleByName("app");
-            mListener.onTaskStarted("Indexing resources");
-            ResourceRepositoryManager.getProjectResources(project.getModuleByName(":app"));
+    /**
+     * Creates and indexes the module of the given model, then replaces the modules of the
+     * project with it and indexes its resources. The previous modules stay in use until the
+     * new module is indexed.
+     */
+    private void applyModel(SyncModelCache.Model model,
+                            Project project,
+                            TaskListener listener) throws IOException {
+        AndroidModuleImpl impl = new AndroidModuleImpl(model.getProjectDir());
+        model.applyTo(impl);
 
-            mListener.onTaskStarted("Inject resource classes");
-            mCurrentProject.getEventManager().dispatchEvent(new XmlReparsedEvent(null));
+        impl.setProject(project);
+        indexModule(impl);
 
-        } catch (Throwable t) {
-            Throwable throwable = t;
-            if (throwable instanceof BuildException) {
-                BuildException buildException = (BuildException) throwable;
-                if (buildException.getCause() != null) {
-                    throwable = buildException.getCause();
-                }
+        if (model.minSdk > 0 || model.targetSdk > 0) {
+            SharedPreferences.Editor editor = impl.getSettings().edit();
+            if (model.minSdk > 0) {
+                editor.putInt(ModuleSettings.MIN_SDK_VERSION, model.minSdk);
             }
-            mListener.onComplete(mCurrentProject,
-                    false,
-                    Throwables.getStackTraceAsString(throwable) + "\n");
-            return;
+            if (model.targetSdk > 0) {
+                editor.putInt(ModuleSettings.TARGET_SDK_VERSION, model.targetSdk);
+            }
+            editor.apply();
         }
 
-        mProjectOpenListeners.forEach(it -> it.onProjectOpen(mCurrentProject));
+        project.setModules(Collections.singletonList(impl));
 
-        mCurrentProject.setIndexing(false);
-        mListener.onComplete(project, true, "Index successful");
+        listener.onTaskStarted("Indexing resources");
+        ResourceRepositoryManager.getProjectResources(project.getModuleByName(":app"));
+
+        listener.onTaskStarted("Inject resource classes");
+        project.getEventManager().dispatchEvent(new XmlReparsedEvent(null));
     }
 
-    private void buildModel(ModelContainerV2.ModelInfo modelInfo, Project currentProject) throws IOException {
-        AndroidModuleImpl impl = new AndroidModuleImpl(modelInfo.getProjectDir());
+    private SyncModelCache.Model buildModel(ModelContainerV2.ModelInfo modelInfo) {
+        SyncModelCache.Model model = new SyncModelCache.Model();
+        model.projectDir = modelInfo.getProjectDir().getAbsolutePath();
 
         // de-structure model info fields
         AndroidProject androidProject = modelInfo.getAndroidProject();
@@ -258,30 +363,38 @@ public class ProjectManager {
         assert variantDependencies != null;
 
         // basic info
-        impl.setName(basicAndroidProject.getPath());
+        model.name = basicAndroidProject.getPath();
 
         AaptOptions.Namespacing namespacing =
                 modelInfo.getAndroidDsl().getAaptOptions().getNamespacing();
         if (namespacing == AaptOptions.Namespacing.REQUIRED) {
-            impl.setNamespace(androidProject.getNamespace());
+            model.namespace = androidProject.getNamespace();
         }
-        String applicationId = modelInfo.getAndroidDsl().getDefaultConfig().getApplicationId();
+        ProductFlavor defaultConfig = modelInfo.getAndroidDsl().getDefaultConfig();
+        String applicationId = defaultConfig.getApplicationId();
         String namespace = androidProject.getNamespace();
         if (TextUtils.isEmpty(namespace)) {
             namespace = applicationId;
         }
-        impl.setPackageName(namespace);
+        model.packageName = namespace;
+
+        if (defaultConfig.getMinSdkVersion() != null) {
+            model.minSdk = defaultConfig.getMinSdkVersion().getApiLevel();
+        }
+        if (defaultConfig.getTargetSdkVersion() != null) {
+            model.targetSdk = defaultConfig.getTargetSdkVersion().getApiLevel();
+        }
 
         // add main source set
         SourceSetContainer mainSourceSet = basicAndroidProject.getMainSourceSet();
         if (mainSourceSet != null) {
             SourceProvider sourceProvider = mainSourceSet.getSourceProvider();
 
-            File contentRootDirectory = new File(impl.getRootFile(), "src/" + sourceProvider.getName());
+            File contentRootDirectory = new File(modelInfo.getProjectDir(), "src/" + sourceProvider.getName());
             AndroidContentRoot contentRoot = new AndroidContentRoot(contentRootDirectory);
             contentRoot.setJavaDirectories(sourceProvider.getJavaDirectories());
             contentRoot.setResourceDirectories(sourceProvider.getResDirectories());
-            impl.addContentRoot(contentRoot);
+            model.addContentRoot(contentRoot);
         }
 
         Map<String, Library> libraries = variantDependencies.getLibraries();
@@ -309,7 +422,7 @@ public class ProjectManager {
                     break;
                 case JAVA_LIBRARY:
                     if (artifact != null && artifact.exists()) {
-                        impl.addLibrary(CodeAssistLibrary.forJar(artifact));
+                        model.addLibrary(CodeAssistLibrary.forJar(artifact));
                     }
                     break;
                 case ANDROID_LIBRARY:
@@ -324,7 +437,7 @@ public class ProjectManager {
                     codeAssistAndroidLibrary.setSymbolFile(androidLibraryData.getSymbolFile());
                     codeAssistAndroidLibrary.setResStaticLibrary(androidLibraryData.getResStaticLibrary());
                     codeAssistAndroidLibrary.setResFolder(androidLibraryData.getResFolder());
-                    impl.addLibrary(codeAssistAndroidLibrary);
+                    model.addLibrary(codeAssistAndroidLibrary);
 
                     // TODO: add res index support
                     break;
@@ -341,8 +454,7 @@ public class ProjectManager {
             }
         }
 
-        currentProject.addModule(impl);
-        indexModule(impl);
+        return model;
     }
 
     /**
@@ -358,7 +470,7 @@ public class ProjectManager {
 
         JavaModule javaModule = (JavaModule) module;
         for (File value : javaModule.getJavaFiles().values()) {
-            CompilationInfo info = CompilationInfo.get(module.getProject(), value);
+            CompilationInfo info = CompilationInfo.get(module);
             if (info == null) {
                 continue;
             }
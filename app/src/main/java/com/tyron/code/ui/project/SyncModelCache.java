@@ -0,0 +1,298 @@
+package com.tyron.code.ui.project;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.tyron.builder.model.CodeAssistAndroidLibrary;
+import com.tyron.builder.model.CodeAssistLibrary;
+import com.tyron.builder.project.api.AndroidContentRoot;
+import com.tyron.builder.project.impl.AndroidModuleImpl;
+import com.tyron.common.logging.IdeLog;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Persists the module model resolved by a gradle sync so that reopening a project whose build
+ * inputs did not change does not need to run the sync again.
+ *
+ * <p>The saved model is keyed by a fingerprint of the build scripts, settings files, gradle
+ * properties and version catalogs of the project.
+ */
+public class SyncModelCache {
+
+    private static final Logger sLogger = IdeLog.getCurrentLogger(SyncModelCache.class);
+
+    /**
+     * Increment when the saved model or the way it is built changes
+     */
+    private static final int VERSION = 1;
+
+    private static final List<String> BUILD_FILE_NAMES = Arrays.asList(
+            "settings.gradle", "settings.gradle.kts",
+            "build.gradle", "build.gradle.kts",
+            "gradle.properties");
+
+    private final File mRootDir;
+    private final File mCacheFile;
+
+    public SyncModelCache(@NonNull File rootDir) {
+        mRootDir = rootDir;
+        mCacheFile = new File(rootDir, ".gradle/codeassist/sync-model.json");
+    }
+
+    /**
+     * Computes the fingerprint of the current build inputs of the project. The build files of
+     * the given module directories are included along with those of the root project.
+     */
+    @NonNull
+    public String computeFingerprint(@NonNull List<File> moduleDirs) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(VERSION);
+        hashBuildFiles(hasher, mRootDir);
+
+        File[] catalogs = new File(mRootDir, "gradle").listFiles(
+                (dir, name) -> name.endsWith(".versions.toml"));
+        if (catalogs != null) {
+            Arrays.sort(catalogs);
+            for (File catalog : catalogs) {
+                hashFile(hasher, catalog);
+            }
+        }
+
+        for (File moduleDir : moduleDirs) {
+            if (!moduleDir.equals(mRootDir)) {
+                hashBuildFiles(hasher, moduleDir);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void hashBuildFiles(Hasher hasher, File dir) {
+        for (String name : BUILD_FILE_NAMES) {
+            hashFile(hasher, new File(dir, name));
+        }
+    }
+
+    private static void hashFile(Hasher hasher, File file) {
+        hasher.putString(file.getAbsolutePath(), StandardCharsets.UTF_8);
+        if (!file.isFile()) {
+            hasher.putBoolean(false);
+            return;
+        }
+        hasher.putBoolean(true);
+        try {
+            hasher.putBytes(FileUtils.readFileToByteArray(file));
+        } catch (IOException e) {
+            // an unreadable file should not match any saved model
+            hasher.putLong(System.nanoTime());
+        }
+    }
+
+    /**
+     * @return the saved model, or null if there is none or if the files it refers to no longer
+     * exist, e.g. because the dependency cache was cleared
+     */
+    @Nullable
+    public Model load() {
+        if (!mCacheFile.isFile()) {
+            return null;
+        }
+        Model model;
+        try {
+            String contents = FileUtils.readFileToString(mCacheFile, StandardCharsets.UTF_8);
+            model = new Gson().fromJson(contents, Model.class);
+        } catch (IOException | JsonParseException e) {
+            sLogger.warning("Unable to read the saved sync model: " + e.getMessage());
+            return null;
+        }
+        if (model == null || model.version != VERSION || !model.isValid()) {
+            return null;
+        }
+        return model;
+    }
+
+    public void save(@NonNull Model model) {
+        model.version = VERSION;
+        try {
+            FileUtils.writeStringToFile(mCacheFile, new Gson().toJson(model),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            sLogger.warning("Unable to save the sync model: " + e.getMessage());
+        }
+    }
+
+    public void delete() {
+        FileUtils.deleteQuietly(mCacheFile);
+    }
+
+    /**
+     * The parts of a synced android module which are needed to open it
+     */
+    public static class Model {
+        int version;
+
+        public String fingerprint;
+        public String projectDir;
+        public String name;
+        public String namespace;
+        public String packageName;
+        public int minSdk = -1;
+        public int targetSdk = -1;
+        public List<ContentRootModel> contentRoots = new ArrayList<>();
+        public List<LibraryModel> libraries = new ArrayList<>();
+
+        public File getProjectDir() {
+            return new File(projectDir);
+        }
+
+        boolean isValid() {
+            if (projectDir == null || name == null || !getProjectDir().isDirectory()) {
+                return false;
+            }
+            for (LibraryModel library : libraries) {
+                if (!library.exists()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void addContentRoot(@NonNull AndroidContentRoot contentRoot) {
+            ContentRootModel model = new ContentRootModel();
+            model.rootDirectory = contentRoot.getRootDirectory().getAbsolutePath();
+            model.javaDirectories = toPaths(contentRoot.getJavaDirectories());
+            model.resourceDirectories = toPaths(contentRoot.getResourceDirectories());
+            contentRoots.add(model);
+        }
+
+        public void addLibrary(@NonNull CodeAssistLibrary library) {
+            LibraryModel model = new LibraryModel();
+            model.declaration = library.getDeclaration();
+            if (library instanceof CodeAssistAndroidLibrary) {
+                CodeAssistAndroidLibrary androidLibrary = (CodeAssistAndroidLibrary) library;
+                model.android = true;
+                model.compileJarFiles = toPaths(androidLibrary.getCompileJarFiles());
+                model.publicResources = toPath(androidLibrary.getPublicResources());
+                model.symbolFile = toPath(androidLibrary.getSymbolFile());
+                model.resStaticLibrary = toPath(androidLibrary.getResStaticLibrary());
+                model.resFolder = toPath(androidLibrary.getResFolder());
+            } else {
+                model.sourceFile = library.getSourceFile().getAbsolutePath();
+            }
+            libraries.add(model);
+        }
+
+        /**
+         * Adds the content roots and libraries of this model to the given module
+         */
+        public void applyTo(@NonNull AndroidModuleImpl impl) {
+            impl.setName(name);
+            if (namespace != null) {
+                impl.setNamespace(namespace);
+            }
+            impl.setPackageName(packageName);
+
+            for (ContentRootModel model : contentRoots) {
+                AndroidContentRoot contentRoot =
+                        new AndroidContentRoot(new File(model.rootDirectory));
+                contentRoot.setJavaDirectories(toFiles(model.javaDirectories));
+                contentRoot.setResourceDirectories(toFiles(model.resourceDirectories));
+                impl.addContentRoot(contentRoot);
+            }
+
+            for (LibraryModel model : libraries) {
+                impl.addLibrary(model.toLibrary());
+            }
+        }
+    }
+
+    public static class ContentRootModel {
+        public String rootDirectory;
+        public List<String> javaDirectories;
+        public List<String> resourceDirectories;
+    }
+
+    public static class LibraryModel {
+        public boolean android;
+        public String declaration;
+        public String sourceFile;
+        public List<String> compileJarFiles;
+        public String publicResources;
+        public String symbolFile;
+        public String resStaticLibrary;
+        public String resFolder;
+
+        boolean exists() {
+            if (!android) {
+                return sourceFile != null && new File(sourceFile).exists();
+            }
+            if (compileJarFiles != null) {
+                for (String jar : compileJarFiles) {
+                    if (!new File(jar).exists()) {
+                        return false;
+                    }
+                }
+            }
+            return resFolder == null || new File(resFolder).exists();
+        }
+
+        CodeAssistLibrary toLibrary() {
+            if (!android) {
+                return CodeAssistLibrary.forJar(new File(sourceFile));
+            }
+            CodeAssistAndroidLibrary library = new CodeAssistAndroidLibrary();
+            library.setDeclaration(declaration);
+            library.setSourceFile(null);
+            library.setCompileJarFiles(toFiles(compileJarFiles));
+            library.setPublicResources(toFile(publicResources));
+            library.setSymbolFile(toFile(symbolFile));
+            library.setResStaticLibrary(toFile(resStaticLibrary));
+            library.setResFolder(toFile(resFolder));
+            return library;
+        }
+    }
+
+    @Nullable
+    private static String toPath(@Nullable File file) {
+        return file != null ? file.getAbsolutePath() : null;
+    }
+
+    @Nullable
+    private static File toFile(@Nullable String path) {
+        return path != null ? new File(path) : null;
+    }
+
+    @NonNull
+    private static List<String> toPaths(@Nullable Iterable<File> files) {
+        List<String> paths = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                paths.add(file.getAbsolutePath());
+            }
+        }
+        return paths;
+    }
+
+    @NonNull
+    private static List<File> toFiles(@Nullable List<String> paths) {
+        List<File> files = new ArrayList<>();
+        if (paths != null) {
+            for (String path : paths) {
+                files.add(new File(path));
+            }
+        }
+        return files;
+    }
+}
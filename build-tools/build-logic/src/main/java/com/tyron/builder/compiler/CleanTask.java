@@ -2,6 +2,7 @@ package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
+import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
 import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -70,6 +71,9 @@ public class CleanTask extends Task<AndroidModule> {
                 .clear();
         getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
                 .clear();
+        getModule().getCache(MergeSymbolsTask.PACKAGE_CACHE_KEY, new Cache<>())
+                .clear();
+        IncrementalKotlinCompiler.invalidatePluginCache();
     }
     private void cleanClasses() {
 
@@ -5,6 +5,8 @@ import static com.android.sdklib.build.ApkBuilder.checkFolderForPackaging;
 
 import com.android.sdklib.build.DuplicateFileException;
 import com.android.sdklib.internal.build.SignedJarBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.SdkConstants;
@@ -13,30 +15,27 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.util.BinaryExecutor;
-import com.tyron.common.util.Decompress;
 
 import net.lingala.zip4j.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
 import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.model.enums.CompressionLevel;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -52,9 +51,15 @@ public class AabTask extends Task<AndroidModule> {
 
     private static final String TAG = "AabTask";
 
+    private static final String INDEX_FILE_NAME = "Base-Module.zip.index";
+
+    /**
+     * Rewriting the whole module is faster than updating it in place when most of its
+     * entries have changed.
+     */
+    private static final float MAX_UPDATED_RATIO = 0.5f;
+
     private File mBinDir;
-    private File base;
-    private File manifest;
 
     private final JavaAndNativeResourceFilter mFilter = new JavaAndNativeResourceFilter();
     private final HashMap<String, File> mAddedFiles = new HashMap<>();
@@ -66,44 +71,31 @@ public class AabTask extends Task<AndroidModule> {
 	private File mInputApk;
     private File mOutputApk;
 	private File mOutputApks;
-	
+    private File mIndexFile;
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBinDir = new File(getModule().getBuildDirectory(), "/bin");
-        base = new File(mBinDir.getAbsolutePath(), "/base");
-
-        if (!base.exists() && !base.mkdirs()) {
-            throw new IOException("Failed to create resource output directory");
-        }
-
-        manifest = new File(mBinDir.getAbsolutePath(), "/base/manifest");
-        if (!manifest.exists() && !manifest.mkdirs()) {
-            throw new IOException("Failed to create resource output directory");
-        }
-
-        File dex = new File(mBinDir.getAbsolutePath(), "/base/dex");
-        if (!dex.exists() && !dex.mkdirs()) {
-            throw new IOException("Failed to create resource output directory");
-        }
 		mInputApk = new File(mBinDir.getAbsolutePath() + "/Base-Module.zip");
         mOutputApk = new File(mBinDir.getAbsolutePath() + "/module.aab");
 		mOutputApks = new File(mBinDir.getAbsolutePath() + "/App.apks");
-		
-        
-		
+        mIndexFile = new File(mBinDir, INDEX_FILE_NAME);
+
         mAddedFiles.clear();
     }
 
     public void run() throws IOException, CompilationFailedException {
+        List<java.util.zip.ZipFile> openedZips = new ArrayList<>();
         try {
-            unZip();
-            copyResources();
-            copyManifest();
-            copyJni();
-            copyDexFiles();
-            baseZip();
-            copyLibraries();
-       
+            Map<String, ModuleEntry> entries = new LinkedHashMap<>();
+            addProtoEntries(entries, openedZips);
+            addResources(entries);
+            addJni(entries);
+            addDexFiles(entries);
+            addLibraries(entries, openedZips);
+
+            writeModule(entries);
+
             aab();
            // buildApks();
           //  extractApks();
@@ -117,13 +109,23 @@ public class AabTask extends Task<AndroidModule> {
                         "path: " + duplicateFileException.getArchivePath();
             }
             throw new CompilationFailedException(message);
+        } finally {
+            for (java.util.zip.ZipFile zip : openedZips) {
+                try {
+                    zip.close();
+                } catch (IOException ignore) {
+
+                }
+            }
         }
     }
 
     @Override
     protected void clean() {
         try {
-            FileUtils.deleteDirectory(base);
+            // the module zip and its index are kept for the next build, only the staging
+            // directory used by older versions is deleted
+            FileUtils.deleteDirectory(new File(mBinDir, "base"));
         } catch (IOException ignore) {
 
         }
@@ -240,60 +242,139 @@ public class AabTask extends Task<AndroidModule> {
     }
 
 
-    private void baseZip() throws IOException {
+    /**
+     * Writes the module zip from the given entries. If the module of the previous build
+     * exists, only the entries whose stamp has changed are removed and added again, the
+     * other entries are kept as they are without being compressed again.
+     */
+    private void writeModule(Map<String, ModuleEntry> entries) throws IOException {
+        Map<String, String> index = readIndex();
+        Map<String, String> newIndex = new HashMap<>();
+        for (Map.Entry<String, ModuleEntry> entry : entries.entrySet()) {
+            newIndex.put(entry.getKey(), entry.getValue().stamp);
+        }
+
+        if (mInputApk.exists() && index != null) {
+            List<String> removed = new ArrayList<>();
+            List<String> added = new ArrayList<>();
+            for (String name : index.keySet()) {
+                if (!newIndex.containsKey(name)) {
+                    removed.add(name);
+                }
+            }
+            for (Map.Entry<String, String> entry : newIndex.entrySet()) {
+                String previous = index.get(entry.getKey());
+                if (previous == null) {
+                    added.add(entry.getKey());
+                } else if (!previous.equals(entry.getValue())) {
+                    removed.add(entry.getKey());
+                    added.add(entry.getKey());
+                }
+            }
+
+            if (removed.isEmpty() && added.isEmpty()) {
+                getLogger().debug("Module archive is up to date");
+                return;
+            }
+            if (added.size() <= entries.size() * MAX_UPDATED_RATIO) {
+                getLogger().debug("Updating " + added.size() + " entries of the module archive");
+                FileUtils.delete(mIndexFile);
+                updateModule(entries, removed, added);
+                writeIndex(newIndex);
+                return;
+            }
+        }
+
         getLogger().debug("Creating Module Archive");
-        String folderToZip = base.getAbsolutePath();
-        String zipName = mBinDir.getAbsolutePath() + "/Base-Module.zip";
-        zipFolder(Paths.get(folderToZip), Paths.get(zipName));
+        if (mIndexFile.exists()) {
+            FileUtils.delete(mIndexFile);
+        }
+        try (ZipOutputStream zos = new ZipOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mInputApk)))) {
+            for (Map.Entry<String, ModuleEntry> entry : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(entry.getKey()));
+                try (InputStream inputStream = entry.getValue().source.open()) {
+                    IOUtils.copy(inputStream, zos);
+                }
+                zos.closeEntry();
+            }
+        }
+        writeIndex(newIndex);
     }
 
-    // Uses java.util.zip to create zip file
-    private void zipFolder(final Path sourceFolderPath, Path zipPath) throws IOException {
-        final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipPath.toFile()));
-        Files.walkFileTree(sourceFolderPath, new SimpleFileVisitor<Path>() {
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                zos.putNextEntry(new ZipEntry(sourceFolderPath.relativize(file).toString()));
-                Files.copy(file, zos);
-                zos.closeEntry();
-                return FileVisitResult.CONTINUE;
+    private void updateModule(Map<String, ModuleEntry> entries,
+                              List<String> removed,
+                              List<String> added) throws IOException {
+        try (ZipFile zipFile = new ZipFile(mInputApk)) {
+            if (!removed.isEmpty()) {
+                zipFile.removeFiles(removed);
+            }
+            for (String name : added) {
+                try (InputStream inputStream = entries.get(name).source.open()) {
+                    ZipParameters zipParameters = new ZipParameters();
+                    zipParameters.setFileNameInZip(name);
+                    zipParameters.setCompressionLevel(CompressionLevel.FASTEST);
+                    zipFile.addStream(inputStream, zipParameters);
+                }
             }
-        });
-        zos.close();
+        }
     }
 
+    private Map<String, String> readIndex() {
+        if (!mIndexFile.exists()) {
+            return null;
+        }
+        try {
+            String contents = FileUtils.readFileToString(mIndexFile, StandardCharsets.UTF_8);
+            return new Gson().fromJson(contents, new TypeToken<Map<String, String>>() {}.getType());
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
-    private void copyManifest() throws CompilationFailedException {
-        getLogger().debug("Copying Manifest.");
+    private void writeIndex(Map<String, String> index) throws IOException {
+        FileUtils.writeStringToFile(mIndexFile, new Gson().toJson(index),
+                StandardCharsets.UTF_8);
+    }
 
-        List<String> args = new ArrayList<>();
-        args.add("mv");
-        args.add(base.getAbsolutePath() + "/AndroidManifest.xml");
-        args.add(manifest.getAbsolutePath() + "");
-        BinaryExecutor executor = new BinaryExecutor();
-        executor.setCommands(args);
-        if (!executor.execute().isEmpty()) {
-            throw new CompilationFailedException(executor.getLog());
+    /**
+     * Adds the entries of the proto format resources generated by aapt2, the manifest is moved
+     * to the manifest directory as required by bundletool.
+     */
+    private void addProtoEntries(Map<String, ModuleEntry> entries,
+                                 List<java.util.zip.ZipFile> openedZips) throws IOException {
+        File protoFormat = new File(mBinDir, "proto-format.zip");
+        java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(protoFormat);
+        openedZips.add(zipFile);
+
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry zipEntry = zipEntries.nextElement();
+            if (zipEntry.isDirectory()) {
+                continue;
+            }
+            String name = zipEntry.getName();
+            if ("AndroidManifest.xml".equals(name)) {
+                name = "manifest/AndroidManifest.xml";
+            }
+            entries.put(name, ModuleEntry.of(zipFile, zipEntry));
         }
     }
 
-    private void copyDexFiles() throws IOException {
+    private void addDexFiles(Map<String, ModuleEntry> entries) {
         File[] dexFiles = mBinDir.listFiles(c ->
                 c.isFile() && c.getName().endsWith(".dex")
         );
 
-        File dexOutput = new File(mBinDir, "base/dex");
         if (dexFiles != null) {
             for (File dexFile : dexFiles) {
-                FileUtils.copyFileToDirectory(dexFile, dexOutput);
+                entries.put("dex/" + dexFile.getName(), ModuleEntry.of(dexFile));
             }
         }
     }
 
-    private void copyJni() throws IOException {
-        getLogger().debug("Coping JniLibs.");
-        String fromDirectory = getModule().getNativeLibrariesDirectory().getAbsolutePath();
-        String toToDirectory = base.getAbsolutePath() + "/lib";
-        copyDirectoryFileVisitor(fromDirectory, toToDirectory);
+    private void addJni(Map<String, ModuleEntry> entries) {
+        addDirectory(entries, getModule().getNativeLibrariesDirectory(), "lib");
 
         List<File> libraries = getModule().getLibraries();
         for (File library : libraries) {
@@ -304,100 +385,103 @@ public class AabTask extends Task<AndroidModule> {
 
             File jniDir = new File(parent, "jni");
             if (jniDir.exists()) {
-                fromDirectory = jniDir.getAbsolutePath();
-                copyDirectoryFileVisitor(fromDirectory, toToDirectory);
+                addDirectory(entries, jniDir, "lib");
             }
         }
     }
 
-    private void copyResources() throws IOException, SignedJarBuilder.IZipEntryFilter.ZipAbortException {
-        File resourcesDir = getModule().getResourcesDir();
-        File[] files = resourcesDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                copyResources(file, "root");
-            }
-        }
+    private void addResources(Map<String, ModuleEntry> entries) {
+        addDirectory(entries, getModule().getResourcesDir(), "root");
     }
 
-    private void copyResources(File file, String path) throws IOException {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File child : files) {
-                    copyResources(child, path + "/" + file.getName());
-                }
-            }
-        } else {
-            File directory = new File(base, path);
-            if (!directory.exists() && !directory.mkdirs()) {
-                throw new IOException("Failed to create directory " + directory);
+    private void addDirectory(Map<String, ModuleEntry> entries, File directory, String path) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = path + "/" + file.getName();
+            if (file.isDirectory()) {
+                addDirectory(entries, file, name);
+            } else {
+                entries.put(name, ModuleEntry.of(file));
             }
-
-            FileUtils.copyFileToDirectory(file, directory);
         }
     }
 
-    private void copyLibraries() throws IOException, SignedJarBuilder.IZipEntryFilter.ZipAbortException {
+    /**
+     * Adds the java resources of the library jars, they are read from the jars directly when
+     * the module is written.
+     */
+    private void addLibraries(Map<String, ModuleEntry> entries,
+                              List<java.util.zip.ZipFile> openedZips) throws IOException, SignedJarBuilder.IZipEntryFilter.ZipAbortException {
         List<File> libraryJars = getModule().getLibraries();
-        File originalFile = new File(mBinDir, "Base-Module.zip");
-        try (ZipFile zipFile = new ZipFile(originalFile)) {
-            for (File libraryJar : libraryJars) {
-                if (!libraryJar.exists()) {
-                    continue;
-                }
-
-                mFilter.reset(libraryJar);
-                try (JarFile jarFile = new JarFile(libraryJar)) {
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    jar : while (entries.hasMoreElements()) {
-                        JarEntry jarEntry = entries.nextElement();
+        for (File libraryJar : libraryJars) {
+            if (!libraryJar.exists()) {
+                continue;
+            }
 
-                        String name = "root/" + jarEntry.getName();
-                        String[] names = name.split("/");
-                        if (names.length == 0) {
-                            continue;
-                        }
-                        for (String s : names) {
-                            boolean checkFolder = checkFolderForPackaging(s);
-                            if (!checkFolder) {
-                                continue jar;
-                            }
-                        }
+            mFilter.reset(libraryJar);
+            JarFile jarFile = new JarFile(libraryJar);
+            openedZips.add(jarFile);
 
-                        if (jarEntry.isDirectory() || jarEntry.getName().startsWith("META-INF")) {
-                            continue;
-                        }
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            jar : while (jarEntries.hasMoreElements()) {
+                JarEntry jarEntry = jarEntries.nextElement();
 
-                        boolean b = mFilter.checkEntry(name);
-                        if (!b) {
-                            continue;
-                        }
-                        InputStream inputStream = jarFile.getInputStream(jarEntry);
-                        ZipParameters zipParameters = new ZipParameters();
-                        zipParameters.setFileNameInZip(name);
-                        zipParameters.setCompressionLevel(CompressionLevel.FASTEST);
-                        zipFile.addStream(inputStream, zipParameters);
+                String name = "root/" + jarEntry.getName();
+                String[] names = name.split("/");
+                if (names.length == 0) {
+                    continue;
+                }
+                for (String s : names) {
+                    boolean checkFolder = checkFolderForPackaging(s);
+                    if (!checkFolder) {
+                        continue jar;
                     }
-                } catch (ZipException e) {
-                    e.printStackTrace();
                 }
+
+                if (jarEntry.isDirectory() || jarEntry.getName().startsWith("META-INF")) {
+                    continue;
+                }
+
+                boolean b = mFilter.checkEntry(name);
+                if (!b) {
+                    continue;
+                }
+                entries.put(name, ModuleEntry.of(jarFile, jarEntry));
             }
         }
     }
 
-    public static void copyDirectoryFileVisitor(String source, String target)
-            throws IOException {
-        TreeCopyFileVisitor fileVisitor = new TreeCopyFileVisitor(source, target);
-        Files.walkFileTree(Paths.get(source), fileVisitor);
+    private interface EntrySource {
+        InputStream open() throws IOException;
     }
 
+    /**
+     * An entry of the module zip, the stamp identifies the contents of the entry without
+     * reading them: the length and last modified time of a file, or the size and crc of an
+     * entry of another zip file.
+     */
+    private static class ModuleEntry {
+
+        private final String stamp;
+        private final EntrySource source;
 
-    private void unZip() {
-        getLogger().debug("Unzipping proto format.");
-        String zipFilePath = mBinDir.getAbsolutePath() + "/proto-format.zip";
-        String destDir = base.getAbsolutePath() + "";
-        Decompress.unzip(zipFilePath, destDir);
+        private ModuleEntry(String stamp, EntrySource source) {
+            this.stamp = stamp;
+            this.source = source;
+        }
+
+        static ModuleEntry of(File file) {
+            String stamp = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+            return new ModuleEntry(stamp, () -> new FileInputStream(file));
+        }
+
+        static ModuleEntry of(java.util.zip.ZipFile zipFile, ZipEntry zipEntry) {
+            String stamp = zipEntry.getSize() + ":" + zipEntry.getCrc();
+            return new ModuleEntry(stamp, () -> zipFile.getInputStream(zipEntry));
+        }
     }
 
     /**
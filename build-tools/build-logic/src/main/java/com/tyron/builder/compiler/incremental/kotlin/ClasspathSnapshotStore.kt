@@ -0,0 +1,149 @@
+package com.tyron.builder.compiler.incremental.kotlin
+
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
+import com.tyron.builder.internal.concurrent.ParallelTasks
+import com.tyron.builder.internal.hash.FileHashIndex
+import org.jetbrains.kotlin.build.report.BuildReporter
+import org.jetbrains.kotlin.build.report.ICReporter
+import org.jetbrains.kotlin.build.report.metrics.DoNothingBuildMetricsReporter
+import org.jetbrains.kotlin.cli.common.ExitCode
+import org.jetbrains.kotlin.cli.common.arguments.K2JVMCompilerArguments
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector
+import org.jetbrains.kotlin.incremental.ClasspathChanges
+import org.jetbrains.kotlin.incremental.ClasspathSnapshotFiles
+import org.jetbrains.kotlin.incremental.DEFAULT_KOTLIN_SOURCE_FILES_EXTENSIONS
+import org.jetbrains.kotlin.incremental.IncrementalJvmCompilerRunner
+import org.jetbrains.kotlin.incremental.classpathDiff.ClassSnapshotGranularity
+import org.jetbrains.kotlin.incremental.classpathDiff.ClasspathEntrySnapshotExternalizer
+import org.jetbrains.kotlin.incremental.classpathDiff.ClasspathEntrySnapshotter
+import org.jetbrains.kotlin.incremental.multiproject.EmptyModulesApiHistory
+import org.jetbrains.kotlin.incremental.storage.saveToFile
+import org.jetbrains.kotlin.incremental.withIC
+import java.io.File
+import java.util.concurrent.Callable
+
+/**
+ * Stores the ABI snapshots of the classpath entries given to the incremental kotlin compiler,
+ * keyed by the hash of the entry so a jar is only snapshotted once, even when it is moved or
+ * used by another module.
+ *
+ * The compiler is given the snapshot files instead of scanning the classpath on each build, if
+ * the snapshots are the same as the ones of the previous build the classpath is not analysed at
+ * all, otherwise only the difference between the snapshots is used to find the affected sources.
+ *
+ * The hashes of the entries are stored next to the snapshots together with the size and the
+ * last modified time of each entry, so an unchanged jar is not read again by later builds.
+ */
+class ClasspathSnapshotStore(private val directory: File) {
+
+    private val hashes = FileHashIndex(File(directory, HASHES_FILE_NAME)) { hash(it) }
+
+    /**
+     * Returns the snapshot files of the given classpath entries, snapshotting the entries that
+     * are not in the store yet in parallel. The snapshots of entries which are no longer on the
+     * classpath are deleted.
+     */
+    fun getSnapshotFiles(classpath: List<File>): List<File> {
+        val snapshotFiles = classpath.map { File(directory, "${hashes.getHash(it)}.bin") }
+        hashes.retainAll(classpath)
+        hashes.save()
+
+        val usedNames = snapshotFiles.mapTo(HashSet()) { it.name } + HASHES_FILE_NAME
+        directory.listFiles { file -> file.name !in usedNames }?.forEach { it.delete() }
+
+        val missing = classpath.indices.filter { !snapshotFiles[it].exists() }
+        if (missing.isEmpty()) {
+            return snapshotFiles
+        }
+
+        directory.mkdirs()
+        ParallelTasks.invokeAll(missing.map { index ->
+            Callable { snapshot(classpath[index], snapshotFiles[index]) }
+        })
+        return snapshotFiles
+    }
+
+    private fun snapshot(entry: File, snapshotFile: File) {
+        // libraries rarely change, a class level snapshot is smaller and faster to compare
+        val snapshot = ClasspathEntrySnapshotter.snapshot(entry, ClassSnapshotGranularity.CLASS_LEVEL)
+        val tempFile = File(snapshotFile.parentFile, snapshotFile.name + ".tmp")
+        ClasspathEntrySnapshotExternalizer.saveToFile(tempFile, snapshot)
+        if (!tempFile.renameTo(snapshotFile)) {
+            tempFile.delete()
+        }
+    }
+
+    companion object {
+
+        private const val ENTRIES_FILE_NAME = "classpath-snapshot-entries.txt"
+
+        private const val HASHES_FILE_NAME = "classpath-hashes.json"
+
+        private fun hash(entry: File): String = if (entry.isFile) {
+            Files.asByteSource(entry).hash(Hashing.sha256()).toString()
+        } else {
+            // the classes of a directory are snapshotted again when it is modified
+            Hashing.sha256().hashUnencodedChars(
+                "${entry.absolutePath}:${entry.length()}:${entry.lastModified()}"
+            ).toString()
+        }
+
+        /**
+         * Compiles the kotlin sources of the source roots incrementally, like
+         * [org.jetbrains.kotlin.incremental.makeIncrementally] but with the classpath changes
+         * computed from the given classpath snapshots instead of scanning the classpath.
+         */
+        @JvmStatic
+        fun compileIncrementally(
+            cachesDir: File,
+            sourceRoots: List<File>,
+            snapshotFiles: List<File>,
+            args: K2JVMCompilerArguments,
+            messageCollector: MessageCollector,
+            reporter: ICReporter
+        ): ExitCode {
+            val kotlinExtensions = DEFAULT_KOTLIN_SOURCE_FILES_EXTENSIONS
+            val allExtensions = kotlinExtensions + "java"
+            val sourceFiles = sourceRoots.asSequence()
+                .flatMap { it.walk() }
+                .filter { it.isFile && it.extension.lowercase() in allExtensions }
+                .toList()
+            args.javaSourceRoots = sourceRoots.map { it.absolutePath }.toTypedArray()
+
+            val classpathSnapshotFiles =
+                ClasspathSnapshotFiles(snapshotFiles, File(cachesDir, "classpath-snapshot"))
+            val entriesFile = File(cachesDir, ENTRIES_FILE_NAME)
+            val entries = snapshotFiles.joinToString("\n") { it.name }
+            val previousEntries = if (entriesFile.exists()) entriesFile.readText() else null
+            val classpathChanges = when (previousEntries) {
+                null -> ClasspathChanges.ClasspathSnapshotEnabled
+                    .NotAvailableForNonIncrementalRun(classpathSnapshotFiles)
+                entries -> ClasspathChanges.ClasspathSnapshotEnabled.IncrementalRun
+                    .NoChanges(classpathSnapshotFiles)
+                else -> ClasspathChanges.ClasspathSnapshotEnabled.IncrementalRun
+                    .ToBeComputedByIncrementalCompiler(classpathSnapshotFiles)
+            }
+            val exitCode = withIC(args) {
+                IncrementalJvmCompilerRunner(
+                    cachesDir,
+                    BuildReporter(
+                        icReporter = reporter,
+                        buildMetricsReporter = DoNothingBuildMetricsReporter
+                    ),
+                    usePreciseJavaTracking = true,
+                    outputFiles = emptyList(),
+                    buildHistoryFile = File(cachesDir, "build-history.bin"),
+                    modulesApiHistory = EmptyModulesApiHistory,
+                    kotlinSourceFilesExtensions = kotlinExtensions,
+                    classpathChanges = classpathChanges
+                ).compile(sourceFiles, args, messageCollector, providedChangedFiles = null)
+            }
+            if (exitCode == ExitCode.OK) {
+                cachesDir.mkdirs()
+                entriesFile.writeText(entries)
+            }
+            return exitCode
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package com.tyron.builder.compiler.incremental.kotlin;
 
 import android.text.TextUtils;
+import android.util.Log;
+import android.util.Pair;
 
 import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.internal.hash.FileHashIndex;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
@@ -22,17 +26,22 @@ import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSourceLocation;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
 import org.jetbrains.kotlin.cli.jvm.K2JVMCompiler;
-import org.jetbrains.kotlin.incremental.IncrementalJvmCompilerRunnerKt;
+import org.jetbrains.kotlin.cli.jvm.plugins.ServiceLoaderLite;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import kotlin.jvm.functions.Function0;
@@ -41,6 +50,31 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
 
     private static final String TAG = IncrementalKotlinCompiler.class.getSimpleName();
 
+    /**
+     * The options of the compiler plugins keyed by the path of their args.txt, together with
+     * the length and last modified time of the file they were read from.
+     */
+    private static final Map<String, Pair<String, String[]>> sPluginOptions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The class loaders of the compiler plugins keyed by the paths of their jars, together with
+     * the hashes of the jars. They are kept for the whole process so the classes of a plugin
+     * are only loaded once, a class loader is replaced when one of its jars changes.
+     */
+    private static final Map<List<String>, Pair<List<String>, ClassLoader>> sPluginClassLoaders =
+            new ConcurrentHashMap<>();
+
+    private static final FileHashIndex sPluginHashes =
+            new FileHashIndex(FileHashIndex.of(Hashing.sha256()));
+
+    static {
+        // the compiler looks up the plugins with a new class loader on every compilation
+        ServiceLoaderLite.DexClassLoaderFactory factory =
+                ServiceLoaderLite.getDexClassLoaderFactory();
+        ServiceLoaderLite.setDexClassLoaderFactory(files -> getPluginClassLoader(files, factory));
+    }
+
     private File mKotlinHome;
     private File mClassOutput;
     private List<File> mFilesToCompile;
@@ -120,11 +154,14 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
             args.setPluginOptions(getPluginOptions());
 
             File cacheDir = new File(getModule().getBuildDirectory(), "intermediate/kotlin");
+            ClasspathSnapshotStore snapshotStore = new ClasspathSnapshotStore(
+                    new File(getModule().getBuildDirectory(), "intermediate/kotlin-classpath-snapshots"));
+            List<File> snapshotFiles = snapshotStore.getSnapshotFiles(classpath);
 
-            IncrementalJvmCompilerRunnerKt.makeIncrementally(cacheDir,
+            ClasspathSnapshotStore.compileIncrementally(cacheDir,
                     Arrays.asList(getModule().getJavaDirectory(),
                             new File(getModule().getBuildDirectory(), "gen")),
-                    args, mCollector, new ICReporterBase() {
+                    snapshotFiles, args, mCollector, new ICReporterBase() {
                         @Override
                         public void reportCompileIteration(boolean b,
                                                            @NotNull Collection<? extends File> collection,
@@ -166,6 +203,54 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         return files;
     }
 
+    /**
+     * Drops the compiler plugins loaded by previous compilations, they are loaded again on the
+     * next compilation. Plugins are otherwise kept for the whole process and only loaded again
+     * when their jars change.
+     */
+    public static void invalidatePluginCache() {
+        sPluginOptions.clear();
+        sPluginHashes.retainAll(Collections.emptyList());
+        sPluginClassLoaders.values().removeIf(cached -> {
+            close(cached.second);
+            return true;
+        });
+    }
+
+    private static ClassLoader getPluginClassLoader(List<? extends File> files,
+                                                    ServiceLoaderLite.DexClassLoaderFactory factory) {
+        List<String> key = new ArrayList<>(files.size());
+        List<String> hashes = new ArrayList<>(files.size());
+        for (File file : files) {
+            key.add(file.getAbsolutePath());
+            try {
+                hashes.add(sPluginHashes.getHash(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sPluginClassLoaders.compute(key, (k, cached) -> {
+            if (cached != null && cached.first.equals(hashes)) {
+                return cached;
+            }
+            if (cached != null) {
+                close(cached.second);
+            }
+            return Pair.create(hashes, factory.create(new ArrayList<>(files)));
+        }).second;
+    }
+
+    private static void close(ClassLoader classLoader) {
+        if (!(classLoader instanceof Closeable)) {
+            return;
+        }
+        try {
+            ((Closeable) classLoader).close();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to close the class loader of a compiler plugin", e);
+        }
+    }
+
     private List<File> getPlugins() {
         File pluginDir = new File(getModule().getBuildDirectory(), "plugins");
         File[] children = pluginDir.listFiles(c -> c.getName().endsWith(".jar"));
@@ -174,7 +259,9 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
             return Collections.emptyList();
         }
 
+        // the order of the plugins is part of the key of their cached class loader
         return Arrays.stream(children)
+                .sorted(Comparator.comparing(File::getName))
                 .collect(Collectors.toList());
     }
 
@@ -185,8 +272,16 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
             return new String[0];
         }
 
+        String stamp = args.length() + ":" + args.lastModified();
+        Pair<String, String[]> cached = sPluginOptions.get(args.getAbsolutePath());
+        if (cached != null && cached.first.equals(stamp)) {
+            return cached.second;
+        }
+
         String string = FileUtils.readFileToString(args, StandardCharsets.UTF_8);
-        return string.split(" ");
+        String[] options = string.split(" ");
+        sPluginOptions.put(args.getAbsolutePath(), Pair.create(stamp, options));
+        return options;
     }
 
     private static class Diagnostic extends DiagnosticWrapper {
@@ -2,17 +2,19 @@ package com.tyron.builder.compiler.java;
 
 import android.util.Log;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.internal.concurrent.ParallelTasks;
+import com.tyron.builder.internal.hash.FileHashIndex;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
-import com.tyron.common.util.Decompress;
 
 import org.apache.commons.io.FileUtils;
 
@@ -24,12 +26,16 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
@@ -37,6 +43,23 @@ import java.util.zip.ZipFile;
  */
 public class CheckLibrariesTask extends Task<JavaModule> {
 
+    /**
+     * The entries of an aar that are used by the other tasks, the rest of the aar is not
+     * extracted.
+     */
+    private static final Set<String> AAR_FILES = ImmutableSet.of(
+            "classes.jar", "AndroidManifest.xml", "R.txt", "proguard.txt");
+    private static final Set<String> AAR_DIRECTORIES = ImmutableSet.of(
+            "res/", "assets/", "jni/");
+
+    private static final String INDEX_FILE_NAME = "libraries-index.json";
+
+    /**
+     * The hashes of the libraries from the last build, keyed by their path. A library is
+     * only hashed again if its size or its last modified time has changed.
+     */
+    private FileHashIndex mIndex;
+
     public CheckLibrariesTask(Project project, JavaModule module, ILogger logger) {
         super(project, module, logger);
     }
@@ -59,21 +82,27 @@ public class CheckLibrariesTask extends Task<JavaModule> {
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
         Set<CodeAssistLibrary> libraries = new HashSet<>();
 
+        File buildLibs = new File(project.getBuildDirectory(), "libs");
+        File indexFile = new File(buildLibs, INDEX_FILE_NAME);
+        mIndex = new FileHashIndex(indexFile, CheckLibrariesTask::hashLibrary);
+        List<File> indexedFiles = new ArrayList<>();
+
         Map<String, CodeAssistLibrary> fileLibsHashes = new HashMap<>();
         File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
                 c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
         if (fileLibraries != null) {
             for (File fileLibrary : fileLibraries) {
-                try {
-                    ZipFile zipFile = new ZipFile(fileLibrary);
-                    CodeAssistLibrary library = new CodeAssistLibrary();
-                    library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(calculateMD5(fileLibrary), library);
-                } catch (IOException e) {
+                String hash = mIndex.getHash(fileLibrary);
+                indexedFiles.add(fileLibrary);
+                if (hash == null) {
                     String message = "File " + fileLibrary +
                             " is corrupt! Ignoring.";
                     logger.warning(message);
+                    continue;
                 }
+                CodeAssistLibrary library = new CodeAssistLibrary();
+                library.setSourceFile(fileLibrary);
+                fileLibsHashes.put(hash, library);
             }
         }
 
@@ -95,9 +124,16 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         }
 
         Map<String, CodeAssistLibrary> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(calculateMD5(it.getSourceFile()), it));
-        File buildLibs = new File(project.getBuildDirectory(), "libs");
+        for (CodeAssistLibrary library : libraries) {
+            File sourceFile = library.getSourceFile();
+            indexedFiles.add(sourceFile);
+            String hash = mIndex.getHash(sourceFile);
+            if (hash == null) {
+                logger.warning("Library " + sourceFile + " is corrupt! Ignoring.");
+                continue;
+            }
+            md5Map.put(hash, library);
+        }
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
             for (File libraryDir : buildLibraryDirs) {
@@ -110,6 +146,9 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         }
 
         saveLibraryToProject(project, md5Map, fileLibsHashes);
+
+        mIndex.retainAll(indexedFiles);
+        mIndex.save();
     }
 
     private void saveLibraryToProject(Module module, Map<String, CodeAssistLibrary> libraries, Map<String, CodeAssistLibrary> fileLibraries) throws IOException {
@@ -119,27 +158,21 @@ public class CheckLibrariesTask extends Task<JavaModule> {
 
         getModule().putLibraryHashes(combined);
 
+        List<Callable<Void>> extractions = new ArrayList<>();
         for (Map.Entry<String, CodeAssistLibrary> entry : combined.entrySet()) {
             String hash = entry.getKey();
             CodeAssistLibrary library = entry.getValue();
 
             File libraryDir = new File(module.getBuildDirectory(), "libs/" + hash);
-            if (!libraryDir.exists()) {
-                libraryDir.mkdir();
-            } else {
+            if (libraryDir.exists()) {
                 continue;
             }
-
-            if (library.getSourceFile().getName().endsWith(".jar")) {
-                FileUtils.copyFileToDirectory(library.getSourceFile(), libraryDir);
-
-                File file = new File(libraryDir, library.getSourceFile().getName());
-                file.renameTo(new File(libraryDir, "classes.jar"));
-            } else if (library.getSourceFile().getName().endsWith(".aar")) {
-                Decompress.unzip(library.getSourceFile().getAbsolutePath(),
-                        libraryDir.getAbsolutePath());
-            }
+            extractions.add(() -> {
+                extractLibrary(library.getSourceFile(), libraryDir);
+                return null;
+            });
         }
+        ParallelTasks.invokeAll(extractions);
 
         String librariesString = new Gson().toJson(libraries.values());
         module.getSettings().edit()
@@ -147,6 +180,82 @@ public class CheckLibrariesTask extends Task<JavaModule> {
                 .apply();
     }
 
+    /**
+     * Copies a jar or extracts the used entries of an aar to a temporary directory which is
+     * then renamed to the library directory, so a library interrupted while being extracted
+     * is extracted again on the next build.
+     */
+    private void extractLibrary(File source, File libraryDir) throws IOException {
+        File tempDir = new File(libraryDir.getParentFile(), libraryDir.getName() + ".tmp");
+        FileUtils.deleteDirectory(tempDir);
+        if (!tempDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + tempDir);
+        }
+
+        if (source.getName().endsWith(".jar")) {
+            FileUtils.copyFile(source, new File(tempDir, "classes.jar"));
+        } else if (source.getName().endsWith(".aar")) {
+            extractAar(source, tempDir);
+        }
+
+        if (!tempDir.renameTo(libraryDir)) {
+            FileUtils.deleteDirectory(tempDir);
+            throw new IOException("Unable to move extracted library to " + libraryDir);
+        }
+    }
+
+    private void extractAar(File aar, File outputDir) throws IOException {
+        String outputPath = outputDir.getCanonicalPath() + File.separator;
+        try (ZipFile zipFile = new ZipFile(aar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isUsedAarEntry(entry.getName())) {
+                    continue;
+                }
+
+                File file = new File(outputDir, entry.getName());
+                if (!file.getCanonicalPath().startsWith(outputPath)) {
+                    throw new IOException("Entry " + entry.getName() + " of " + aar +
+                                          " is outside of the target directory");
+                }
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    FileUtils.copyInputStreamToFile(inputStream, file);
+                }
+            }
+        }
+    }
+
+    private static boolean isUsedAarEntry(String name) {
+        if (AAR_FILES.contains(name)) {
+            return true;
+        }
+        for (String directory : AAR_DIRECTORIES) {
+            if (name.startsWith(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the md5 hash of the library, or null if the library is not a valid zip file.
+     */
+    private static String hashLibrary(File library) {
+        if (!isValidZip(library)) {
+            return null;
+        }
+        return calculateMD5(library);
+    }
+
+    private static boolean isValidZip(File file) {
+        try (ZipFile ignored = new ZipFile(file)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     public static String calculateMD5(File updateFile) {
         InputStream is;
         try {
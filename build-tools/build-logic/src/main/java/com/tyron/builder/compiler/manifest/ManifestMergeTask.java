@@ -1,5 +1,8 @@
 package com.tyron.builder.compiler.manifest;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
@@ -18,12 +21,14 @@ import org.w3c.dom.Document;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
     private File mOutputFile;
+    private File mInputsFile;
     private File mMainManifest;
     private File[] mLibraryManifestFiles;
     private String mPackageName;
@@ -47,6 +52,7 @@ public class ManifestMergeTask extends Task<AndroidModule> {
                 throw new IOException("Unable to create build directory");
             }
         }
+        mInputsFile = new File(mOutputFile, "AndroidManifest.xml.inputs");
         mOutputFile = new File(mOutputFile, "AndroidManifest.xml");
         if (!mOutputFile.exists()) {
             if (!mOutputFile.createNewFile()) {
@@ -85,18 +91,27 @@ public class ManifestMergeTask extends Task<AndroidModule> {
     @Override
     public void run() throws IOException, CompilationFailedException {
         ModuleSettings settings = getModule().getSettings();
+        String minSdk = String.valueOf(settings.getInt(ModuleSettings.MIN_SDK_VERSION, 21));
+        String targetSdk = String.valueOf(settings.getInt(ModuleSettings.TARGET_SDK_VERSION, 30));
+        String versionCode = String.valueOf(settings.getInt(ModuleSettings.VERSION_CODE, 1));
+        String versionName = settings.getString(ModuleSettings.VERSION_NAME, "1.0");
+
+        String inputsHash = hashInputs(mPackageName, minSdk, targetSdk, versionCode, versionName);
+        if (mOutputFile.length() != 0 && mInputsFile.exists() &&
+            inputsHash.equals(Files.toString(mInputsFile, StandardCharsets.UTF_8))) {
+            getLogger().debug("Manifest inputs have not changed, skipping merge.");
+            return;
+        }
+        // the previous inputs no longer describe the output if the merge below fails
+        FileUtils.deleteQuietly(mInputsFile);
 
         ManifestMerger2.Invoker<?> invoker = ManifestMerger2.newMerger(mMainManifest,
                 getLogger(), ManifestMerger2.MergeType.APPLICATION);
         invoker.setOverride(SystemProperty.PACKAGE, mPackageName);
-        invoker.setOverride(SystemProperty.MIN_SDK_VERSION,
-                String.valueOf(settings.getInt(ModuleSettings.MIN_SDK_VERSION, 21)));
-        invoker.setOverride(SystemProperty.TARGET_SDK_VERSION,
-                String.valueOf(settings.getInt(ModuleSettings.TARGET_SDK_VERSION, 30)));
-        invoker.setOverride(SystemProperty.VERSION_CODE,
-                String.valueOf(settings.getInt(ModuleSettings.VERSION_CODE, 1)));
-        invoker.setOverride(SystemProperty.VERSION_NAME,
-                settings.getString(ModuleSettings.VERSION_NAME, "1.0"));
+        invoker.setOverride(SystemProperty.MIN_SDK_VERSION, minSdk);
+        invoker.setOverride(SystemProperty.TARGET_SDK_VERSION, targetSdk);
+        invoker.setOverride(SystemProperty.VERSION_CODE, versionCode);
+        invoker.setOverride(SystemProperty.VERSION_NAME, versionName);
         if (mLibraryManifestFiles != null) {
             invoker.addLibraryManifests(mLibraryManifestFiles);
         }
@@ -123,12 +138,33 @@ public class ManifestMergeTask extends Task<AndroidModule> {
                 FileUtils.writeStringToFile(mOutputFile,
                         contents,
                         Charset.defaultCharset());
+                FileUtils.writeStringToFile(mInputsFile, inputsHash, StandardCharsets.UTF_8);
             }
         } catch (ManifestMerger2.MergeFailureException e) {
             throw new CompilationFailedException(e);
         }
     }
 
+    /**
+     * Hashes everything that affects the merged manifest: the system property overrides and
+     * the contents of the main and library manifests, in merge order.
+     */
+    private String hashInputs(String... overrides) throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (String override : overrides) {
+            hasher.putString(override, StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        hasher.putBytes(Files.toByteArray(mMainManifest));
+        if (mLibraryManifestFiles != null) {
+            for (File manifest : mLibraryManifestFiles) {
+                hasher.putString(manifest.getAbsolutePath(), StandardCharsets.UTF_8);
+                hasher.putBytes(Files.toByteArray(manifest));
+            }
+        }
+        return hasher.hash().toString();
+    }
+
     private String getApplicationId() throws IOException {
         String packageName = getModule().getPackageName();
         if (packageName == null) {
@@ -4,10 +4,12 @@ import android.util.Log;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
 import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.internal.concurrent.ParallelTasks;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
@@ -19,9 +21,10 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
@@ -29,9 +32,18 @@ import java.util.List;
  */
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
-    public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
+    /**
+     * The loaded R.txt files of the app and its libraries, reloaded when the file changes.
+     */
+    public static final CacheHolder.CacheKey<Void, SymbolLoader> CACHE_KEY =
             new CacheHolder.CacheKey<>("mergeSymbolsCache");
 
+    /**
+     * The hash of the symbols written to each R.java file, keyed by its package name.
+     */
+    public static final CacheHolder.CacheKey<String, HashCode> PACKAGE_CACHE_KEY =
+            new CacheHolder.CacheKey<>("mergeSymbolsPackageCache");
+
     private File mSymbolOutputDir;
     private File mFullResourceFile;
 
@@ -52,11 +64,11 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
-        Cache<Void, Void> cache = getModule().getCache(CACHE_KEY, new Cache<>());
-        SymbolLoader fullSymbolValues = null;
-        Multimap<String, SymbolLoader> libMap = ArrayListMultimap.create();
+        Cache<Void, SymbolLoader> cache = getModule().getCache(CACHE_KEY, new Cache<>());
+        Cache<String, HashCode> packageCache =
+                getModule().getCache(PACKAGE_CACHE_KEY, new Cache<>());
 
-        List<File> RFiles = new ArrayList<>();
+        Multimap<String, File> packageFiles = ArrayListMultimap.create();
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -64,6 +76,11 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
                 continue;
             }
 
+            File rFile = new File(parent, "R.txt");
+            if (!rFile.exists()) {
+                continue;
+            }
+
             String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
             if (packageName == null) {
                 continue;
@@ -74,63 +91,73 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
                 continue;
             }
 
-            File rFile = new File(parent, "R.txt");
-            if (!rFile.exists()) {
-                continue;
-            }
-
-            RFiles.add(rFile);
+            packageFiles.put(packageName, rFile);
         }
 
+        Set<File> rFiles = new HashSet<>(packageFiles.values());
         for (Cache.Key<Void> key : new HashSet<>(cache.getKeys())) {
-            if (!RFiles.contains(key.file.toFile())) {
-                Log.d("MergeSymbolsTask", "Found deleted resource file, removing " + key.file.toFile().getName() + " on the cache.");
+            File file = key.file.toFile();
+            if (!rFiles.contains(file) && !file.equals(mFullResourceFile)) {
+                Log.d("MergeSymbolsTask", "Found deleted resource file, removing " + file.getName() + " on the cache.");
                 cache.remove(key.file, (Void) null);
-                FileUtils.delete(key.file.toFile());
+                FileUtils.delete(file);
             }
         }
+        if (packageFiles.isEmpty()) {
+            return;
+        }
 
-        for (File rFile : RFiles) {
-
-            if (!cache.needs(rFile.toPath(), null)) {
-                continue;
+        List<File> filesToLoad = new ArrayList<>();
+        for (File file : rFiles) {
+            if (cache.needs(file.toPath(), null)) {
+                filesToLoad.add(file);
             }
+        }
+        if (cache.needs(mFullResourceFile.toPath(), null)) {
+            filesToLoad.add(mFullResourceFile);
+        }
+        loadSymbols(cache, filesToLoad);
 
-            File parent = rFile.getParentFile();
-            if (parent == null) {
-                getLogger().error("Unable to access parent directory for " + rFile);
-                continue;
+        // the values of every library symbol are taken from the app symbols, so a package only
+        // needs to be written again if its symbols or their values have changed
+        SymbolLoader fullSymbolValues = cache.get(mFullResourceFile.toPath(), null);
+        for (String packageName : packageFiles.keySet()) {
+            SymbolWriter writer = new SymbolWriter(mSymbolOutputDir.getAbsolutePath(), packageName,
+                    fullSymbolValues, getModule());
+            for (File rFile : packageFiles.get(packageName)) {
+                writer.addSymbolsToWrite(cache.get(rFile.toPath(), null));
             }
 
-            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
-            if (packageName == null) {
+            HashCode hash = writer.getSymbolsHash();
+            File outputFile = writer.getOutputFile();
+            if (outputFile.exists() && packageCache.has(outputFile.toPath(), packageName) &&
+                hash.equals(packageCache.get(outputFile.toPath(), packageName))) {
+                getModule().addResourceClass(outputFile);
                 continue;
             }
 
-            if (fullSymbolValues == null) {
-                fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
-                fullSymbolValues.load();
-            }
-            SymbolLoader libSymbols = new SymbolLoader(rFile, getLogger());
-            libSymbols.load();
-
-            libMap.put(packageName, libSymbols);
+            writer.write();
+            packageCache.load(outputFile.toPath(), packageName, hash);
         }
+    }
 
-        // now loop on all the package name, merge all the symbols to write, and write them
-        for (String packageName : libMap.keySet()) {
-            Collection<SymbolLoader> symbols = libMap.get(packageName);
-
-            SymbolWriter writer = new SymbolWriter(mSymbolOutputDir.getAbsolutePath(), packageName,
-                    fullSymbolValues, getModule());
-            for (SymbolLoader loader : symbols) {
-                writer.addSymbolsToWrite(loader);
-            }
-            writer.write();
+    /**
+     * Loads the given R.txt files in parallel and stores them in the cache.
+     */
+    private void loadSymbols(Cache<Void, SymbolLoader> cache, List<File> files)
+            throws IOException {
+        List<Callable<SymbolLoader>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            tasks.add(() -> {
+                SymbolLoader loader = new SymbolLoader(file, getLogger());
+                loader.load();
+                return loader;
+            });
         }
 
-        for (File file : RFiles) {
-            cache.load(file.toPath(), null, null);
+        List<SymbolLoader> loaders = ParallelTasks.invokeAll(tasks);
+        for (int i = 0; i < files.size(); i++) {
+            cache.load(files.get(i).toPath(), null, loaders.get(i));
         }
     }
 }
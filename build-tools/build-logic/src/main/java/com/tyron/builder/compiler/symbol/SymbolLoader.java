@@ -80,7 +80,9 @@ public class SymbolLoader {
                 String name = line.substring(pos2 + 1, pos3);
                 String value = line.substring(pos3 + 1);
 
-                mSymbols.put(className, name, new SymbolEntry(name, type, value));
+                // the types and classes are shared by thousands of entries
+                mSymbols.put(className.intern(), name,
+                        new SymbolEntry(name, type.intern(), value));
             }
         } catch (IndexOutOfBoundsException e) {
             if (mLogger != null) {
@@ -5,6 +5,9 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Table;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.project.api.AndroidModule;
 
 import org.apache.commons.io.FileUtils;
@@ -13,6 +16,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -103,13 +107,59 @@ public class SymbolWriter {
         }
     }
 
-    public void write() throws IOException {
+    /**
+     * Hashes the symbols that will be written along with their values, writers with the same
+     * hash generate the same R.java file.
+     */
+    public HashCode getSymbolsHash() {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(mPackageName, StandardCharsets.UTF_8);
+
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = getAllSymbols();
+        Table<String, String, SymbolLoader.SymbolEntry> values = mValues.getSymbols();
+
+        List<String> rowList = Lists.newArrayList(symbols.rowKeySet());
+        Collections.sort(rowList);
+        for (String row : rowList) {
+            hasher.putChar('\n');
+            hasher.putString(row, StandardCharsets.UTF_8);
+
+            List<String> symbolList = Lists.newArrayList(symbols.row(row).keySet());
+            Collections.sort(symbolList);
+            for (String symbolName : symbolList) {
+                SymbolLoader.SymbolEntry value = values.get(row, symbolName);
+                if (value != null) {
+                    hasher.putChar(' ');
+                    hasher.putString(value.getType(), StandardCharsets.UTF_8);
+                    hasher.putChar(' ');
+                    hasher.putString(value.getName(), StandardCharsets.UTF_8);
+                    hasher.putChar('=');
+                    hasher.putString(value.getValue(), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * @return the R.java file of the package inside the output folder
+     */
+    public File getOutputFile() {
+        return new File(getPackageDirectory(), "R.java");
+    }
+
+    private File getPackageDirectory() {
         Splitter splitter = Splitter.on('.');
         Iterable<String> folders = splitter.split(mPackageName);
         File file = new File(mOutFolder);
         for (String folder : folders) {
             file = new File(file, folder);
         }
+        return file;
+    }
+
+    public void write() throws IOException {
+        File file = getPackageDirectory();
         boolean newFile = false;
         if (!file.exists()) {
             newFile = true;
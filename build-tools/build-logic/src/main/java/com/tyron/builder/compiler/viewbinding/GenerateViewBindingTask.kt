@@ -1,18 +1,22 @@
 package com.tyron.builder.compiler.viewbinding
 
 import android.util.Log
+import com.google.common.hash.Hashing
 import com.tyron.builder.compiler.BuildType
 import com.tyron.builder.compiler.Task
 import com.tyron.builder.exception.CompilationFailedException
+import com.tyron.builder.internal.concurrent.ParallelTasks
 import com.tyron.builder.log.ILogger
 import com.tyron.builder.model.ModuleSettings
 import com.tyron.builder.project.Project
 import com.tyron.builder.project.api.AndroidModule
-import com.tyron.viewbinding.tool.DataBindingBuilder.GradleFileWriter
+import com.tyron.builder.project.cache.CacheHolder
+import com.tyron.common.util.Cache
 import com.tyron.viewbinding.tool.processing.Scope
 import com.tyron.viewbinding.tool.processing.ScopedException
 import com.tyron.viewbinding.tool.store.LayoutFileParser
 import com.tyron.viewbinding.tool.store.ResourceBundle
+import com.tyron.viewbinding.tool.store.ResourceBundle.LayoutFileBundle
 import com.tyron.viewbinding.tool.util.LoggedErrorException
 import com.tyron.viewbinding.tool.util.RelativizableFile
 import com.tyron.viewbinding.tool.writer.BaseLayoutModel
@@ -22,8 +26,15 @@ import org.apache.commons.io.FileUtils
 import java.io.File
 import java.io.IOException
 import java.nio.charset.StandardCharsets
+import java.util.concurrent.Callable
 
 /**
+ * Generates the view binding classes of the layouts in the module.
+ *
+ * Layouts are only parsed again when their contents change, and only the binding classes of
+ * the changed layouts (together with their configuration variants) are written, unchanged
+ * binding classes keep their timestamps so that the java compilation stays incremental.
+ *
  * @param addToClasspath true if the generated binding classes
  * should be added to the module classpath for compilation
  */
@@ -49,7 +60,6 @@ class GenerateViewBindingTask(
     }
 
     private fun doPrepare() {
-        outputDirectory.deleteRecursively() // todo: incremental?
         outputDirectory.mkdirs()
     }
 
@@ -59,9 +69,18 @@ class GenerateViewBindingTask(
             return
         }
 
+        val cache = module.getCache(CACHE_KEY, Cache())
         try {
-            doRun()
+            synchronized(cache) {
+                doRun(cache)
+            }
         } catch (e: Exception) {
+            // the outputs may not match the cached layouts anymore, start over on the next build
+            synchronized(cache) {
+                cache.getKeys().filter { it.key == outputDirectory.absolutePath }
+                    .forEach { cache.remove(it.file, it.key) }
+            }
+
             when (e) {
                 is ScopedException, is LoggedErrorException, is IllegalStateException ->
                     throw CompilationFailedException(Log.getStackTraceString(e))
@@ -70,54 +89,169 @@ class GenerateViewBindingTask(
         }
     }
 
-    private fun doRun() {
+    private fun doRun(cache: Cache<String, ParsedLayout>) {
+        val outputKey = outputDirectory.absolutePath
+        val previous = cache.getKeys().filter { it.key == outputKey }
+            .associate { it.file.toFile() to cache.get(it.file, outputKey) }
+
+        val layoutFiles = findLayoutFiles()
+        val fingerprints = layoutFiles.associateWith { getFingerprint(cache, it, previous[it]) }
+
+        // a layout needs to be generated again if any of its configuration variants changed
+        val dirtyNames = HashSet<String>()
+        layoutFiles.filter { previous[it]?.fingerprint != fingerprints[it] }
+            .mapTo(dirtyNames) { it.nameWithoutExtension }
+        previous.keys.filter { it !in fingerprints }.mapTo(dirtyNames) { it.nameWithoutExtension }
+
+        // the binding class of a layout depends on the layouts it includes, e.g. whether they
+        // exist, generate a binding class and its name, so the layouts including a changed,
+        // added or removed layout are generated again, up to the outermost including layout
+        do {
+            val includers = previous.filter { (file, layout) ->
+                file.nameWithoutExtension !in dirtyNames && layout.includes.any { it in dirtyNames }
+            }.keys.map { it.nameWithoutExtension }
+        } while (dirtyNames.addAll(includers))
+
+        val toParse = layoutFiles.filter { it.nameWithoutExtension in dirtyNames }
+        logger.debug("Parsing ${toParse.size} of ${layoutFiles.size} layouts for view binding")
+        val parsed = parseLayouts(toParse, fingerprints)
+
         // generate binding classes from layouts
-        val resourceBundle = generateClassesToBundle()
+        val resourceBundle = generateClassesToBundle(layoutFiles, previous, parsed)
 
         // write classes to output dir
-        writeClassesToDisk(resourceBundle)
+        val written = writeClassesToDisk(resourceBundle, parsed)
 
         // data binding will eat some errors to be able to report them later on. This is a good
         // time to report them after the processing is done.
         Scope.assertNoError()
 
+        // remove the classes of deleted layouts and of layouts that no longer generate one
+        previous.forEach { (file, layout) ->
+            if (file !in fingerprints) {
+                cache.remove(file.toPath(), outputKey)
+            }
+            val className = layout.className
+            if (className != null && file.nameWithoutExtension in dirtyNames &&
+                className !in written.values) {
+                FileUtils.deleteQuietly(toOutputFile(className))
+            }
+        }
+        if (previous.isEmpty()) {
+            deleteStaleOutputs(written.values.toSet())
+        }
+
+        layoutFiles.forEach { file ->
+            val name = file.nameWithoutExtension
+            val layout = parsed[file] ?: previous[file]?.takeIf { name !in dirtyNames }
+            if (layout != null) {
+                val className = if (name in dirtyNames) written[name] else layout.className
+                cache.load(file.toPath(), outputKey, layout.copy(className = className))
+            } else {
+                // not a view binding layout, remember it so it is not parsed again
+                cache.load(file.toPath(), outputKey,
+                    ParsedLayout(fingerprints.getValue(file), null, emptySet(), null))
+            }
+        }
+
         // add classes to module classpath
         addToClasspath()
     }
 
-    private fun generateClassesToBundle(): ResourceBundle {
-        // it doesn't matter what we pass to the 2nd argument, we won't be using data binding anyways
-        val resourceBundle = ResourceBundle(module.packageName, true)
-        val resDir = module.androidResourcesDirectory
-
-        resDir.walkTopDown().filter {
+    private fun findLayoutFiles(): List<File> {
+        return module.androidResourcesDirectory.walkTopDown().filter {
             val isXmlFile = it.isFile && it.name.endsWith(".xml")
             val isLayoutFile = it.parentFile.name == "layout" || it.parentFile.name.startsWith("layout-")
-            val applicable = isXmlFile && isLayoutFile
-
-            applicable
-        }.forEach { file ->
-            val bundle = LayoutFileParser.parseXml(
-                RelativizableFile.fromAbsoluteFile(file),
-                module.packageName,
-                getUpToDateFileContent(module, file),
-                true
-            )
+            isXmlFile && isLayoutFile
+        }.toList()
+    }
+
+    /**
+     * Files that are not opened in the editor and have not been modified since they were parsed
+     * keep their previous fingerprint without being read.
+     */
+    private fun getFingerprint(
+        cache: Cache<String, ParsedLayout>,
+        file: File,
+        previous: ParsedLayout?
+    ): String {
+        if (previous != null && !module.fileManager.isOpened(file) &&
+            !cache.needs(file.toPath(), outputDirectory.absolutePath)) {
+            return previous.fingerprint
+        }
+        val content = getUpToDateFileContent(module, file) ?: return ""
+        return Hashing.murmur3_128().newHasher()
+            .putString(module.packageName, StandardCharsets.UTF_8)
+            .putString(content, StandardCharsets.UTF_8)
+            .hash()
+            .toString()
+    }
+
+    /**
+     * Parses the given layouts in parallel.
+     */
+    private fun parseLayouts(files: List<File>, fingerprints: Map<File, String>): Map<File, ParsedLayout> {
+        val bundles = ParallelTasks.invokeAll(files.map { file ->
+            Callable<LayoutFileBundle?> {
+                LayoutFileParser.parseXml(
+                    RelativizableFile.fromAbsoluteFile(file),
+                    module.packageName,
+                    getUpToDateFileContent(module, file),
+                    true
+                )
+            }
+        })
+        val result = HashMap<File, ParsedLayout>()
+        files.forEachIndexed { index, file ->
+            val bundle = bundles[index]
             if (bundle != null) {
-                resourceBundle.addLayoutBundle(bundle, true)
+                val includes = bundle.bindingTargetBundles.mapNotNullTo(HashSet()) {
+                    it.includedLayout
+                }
+                result[file] = ParsedLayout(fingerprints.getValue(file), bundle, includes, null)
+            }
+        }
+        return result
+    }
+
+    private fun generateClassesToBundle(
+        layoutFiles: List<File>,
+        previous: Map<File, ParsedLayout>,
+        parsed: Map<File, ParsedLayout>
+    ): ResourceBundle {
+        // it doesn't matter what we pass to the 2nd argument, we won't be using data binding anyways
+        val resourceBundle = ResourceBundle(module.packageName, true)
+
+        // validation resolves the included layouts and merges the configuration variants by
+        // modifying the bundles, so it works on copies and the cached bundles stay as parsed
+        layoutFiles.forEach { file ->
+            val changed = parsed[file]
+            if (changed != null) {
+                resourceBundle.addLayoutBundle(changed.bundle!!.copy(), true)
+            } else {
+                // unchanged layouts are only needed to resolve the layouts that include them
+                val bundle = previous[file]?.bundle
+                if (bundle != null) {
+                    resourceBundle.addLayoutBundle(bundle.copy(), false)
+                }
             }
         }
         resourceBundle.validateAndRegisterErrors()
         return resourceBundle
     }
 
-    private fun writeClassesToDisk(resourceBundle: ResourceBundle) {
-        val writer = GradleFileWriter(outputDirectory.absolutePath)
-
+    /**
+     * @return the name of the binding class written for each layout name
+     */
+    private fun writeClassesToDisk(
+        resourceBundle: ResourceBundle,
+        parsed: Map<File, ParsedLayout>
+    ): Map<String, String> {
         val layoutBindings = resourceBundle.allLayoutFileBundlesInSource
-            .groupBy(ResourceBundle.LayoutFileBundle::getFileName)
+            .groupBy(LayoutFileBundle::getFileName)
 
-        layoutBindings.forEach { (_, variations) ->
+        val written = HashMap<String, String>()
+        layoutBindings.forEach { (name, variations) ->
             val layoutModel = BaseLayoutModel(variations)
             val viewBinder = layoutModel.toViewBinder()
             val javaFile = viewBinder.toJavaFile(
@@ -126,8 +260,33 @@ class GenerateViewBindingTask(
                 // the user must use the newer view binding library (androidx)
                 useLegacyAnnotations = false
             )
-            writer.writeToFile(javaFile)
+            val className = javaFile.packageName + "." + javaFile.typeSpec.name
+            writeIfChanged(toOutputFile(className), javaFile.toString())
+            written[name] = className
+        }
+        logger.debug("Generated ${written.size} view binding classes from ${parsed.size} layouts")
+        return written
+    }
+
+    private fun writeIfChanged(file: File, contents: String) {
+        if (file.isFile && FileUtils.readFileToString(file, StandardCharsets.UTF_8) == contents) {
+            return
         }
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8)
+    }
+
+    private fun toOutputFile(className: String): File {
+        return File(outputDirectory, className.replace('.', File.separatorChar) + ".java")
+    }
+
+    /**
+     * Outputs of a previous session are kept, remove those whose layout no longer exists.
+     */
+    private fun deleteStaleOutputs(classNames: Set<String>) {
+        val outputFiles = classNames.mapTo(HashSet()) { toOutputFile(it) }
+        outputDirectory.walkTopDown().filter {
+            it.isFile && it.name.endsWith(".java") && it !in outputFiles
+        }.forEach { FileUtils.deleteQuietly(it) }
     }
 
     private fun addToClasspath() {
@@ -138,10 +297,30 @@ class GenerateViewBindingTask(
         }
     }
 
+    /**
+     * @param fingerprint hash of the contents of the layout file
+     * @param bundle the parsed layout before validation, or null if it does not generate a
+     * binding class
+     * @param includes the names of the layouts included by the layout
+     * @param className the binding class generated for the layout
+     */
+    data class ParsedLayout(
+        val fingerprint: String,
+        val bundle: LayoutFileBundle?,
+        val includes: Set<String>,
+        val className: String?,
+    )
+
     companion object {
         const val TAG = "GenerateViewBindingTask"
         const val VIEW_BINDING_GEN_DIR = "view_binding"
 
+        /**
+         * Layouts parsed by this task, keyed by the output directory they were generated to
+         */
+        @JvmField
+        val CACHE_KEY = CacheHolder.CacheKey<String, ParsedLayout>("viewBindingCache")
+
         private fun getUpToDateFileContent(module: AndroidModule, file: File): String? {
             try {
                 val fileManager = module.fileManager
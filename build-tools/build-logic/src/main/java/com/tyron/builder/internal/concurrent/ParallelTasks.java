@@ -0,0 +1,106 @@
+package com.tyron.builder.internal.concurrent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent units of work of a build step, such as reading or extracting each
+ * input, on a thread pool shared by the build steps of the process. The pool has one thread
+ * per processor, its threads are stopped when they have been idle for a while.
+ */
+public final class ParallelTasks {
+
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Runs the given tasks on the shared pool and waits for all of them. Tasks submitted from a
+     * thread of the pool run on the calling thread instead, waiting for the pool from one of its
+     * own threads could never return.
+     *
+     * @return the results of the tasks, in the order of the tasks
+     * @throws IOException the failure of the first failed task, checked exceptions other than
+     *                     {@link IOException} are wrapped
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (tasks.size() == 1 || Thread.currentThread() instanceof WorkerThread) {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw rethrow(e);
+                }
+            }
+            return results;
+        }
+
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : Pool.EXECUTOR.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException();
+            exception.initCause(e);
+            throw exception;
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static IOException rethrow(Throwable failure) {
+        if (failure instanceof IOException) {
+            return (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new IOException(failure);
+    }
+
+    private static final class Pool {
+
+        static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new WorkerThread(runnable,
+                            "parallel-tasks-" + count.incrementAndGet()));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private static final class WorkerThread extends Thread {
+
+        WorkerThread(Runnable target, String name) {
+            super(target, name);
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.tyron.builder.internal.hash;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The hashes of files keyed by their path, a file is only hashed again when its length or its
+ * last modified time has changed.
+ *
+ * <p>An index with an index file keeps the hashes across builds, it is read when the index is
+ * created and written by {@link #save()} if any hash has changed. The index can be used from
+ * multiple threads.
+ */
+public class FileHashIndex {
+
+    private static final String TAG = "FileHashIndex";
+
+    /**
+     * File systems with a coarse timestamp resolution may report the same modification time
+     * for a file that is written to while it is being hashed, hashes of files modified within
+     * this window are not indexed.
+     */
+    private static final long TIMESTAMP_RESOLUTION_MILLIS = 2000;
+
+    /**
+     * Computes the hash of a file that is not in the index or that has changed.
+     */
+    public interface Hasher {
+
+        /**
+         * @return the hash of the file, or null if the file cannot be used
+         */
+        @Nullable
+        String hash(@NonNull File file) throws IOException;
+    }
+
+    /**
+     * Returns a hasher of the contents of a file, as a lowercase hex string.
+     */
+    public static Hasher of(HashFunction function) {
+        return file -> Files.asByteSource(file).hash(function).toString();
+    }
+
+    @Nullable
+    private final File mIndexFile;
+    private final Hasher mHasher;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private volatile boolean mChanged;
+
+    /**
+     * Creates an index which is only kept in memory.
+     */
+    public FileHashIndex(Hasher hasher) {
+        this(null, hasher);
+    }
+
+    public FileHashIndex(@Nullable File indexFile, Hasher hasher) {
+        mIndexFile = indexFile;
+        mHasher = hasher;
+        if (indexFile != null) {
+            mEntries.putAll(read(indexFile));
+        }
+    }
+
+    /**
+     * Returns the hash of the file, the file is only hashed if it is not in the index or if it
+     * has changed since it has been indexed. The hash of a file modified just before it was
+     * hashed is not indexed, as a later change may keep the same modification time.
+     */
+    @Nullable
+    public String getHash(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Entry entry = mEntries.get(path);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+            return entry.hash;
+        }
+
+        long startTime = System.currentTimeMillis();
+        String hash = mHasher.hash(file);
+        if (lastModified >= startTime - TIMESTAMP_RESOLUTION_MILLIS) {
+            if (mEntries.remove(path) != null) {
+                mChanged = true;
+            }
+            return hash;
+        }
+        mEntries.put(path, new Entry(length, lastModified, hash));
+        mChanged = true;
+        return hash;
+    }
+
+    /**
+     * Removes the files which are not in the given collection from the index.
+     */
+    public void retainAll(Collection<File> files) {
+        Set<String> paths = new HashSet<>(files.size());
+        for (File file : files) {
+            paths.add(file.getAbsolutePath());
+        }
+        if (mEntries.keySet().retainAll(paths)) {
+            mChanged = true;
+        }
+    }
+
+    /**
+     * Writes the index to its index file if it has changed since it has been read.
+     */
+    public void save() {
+        if (mIndexFile == null || !mChanged) {
+            return;
+        }
+        mChanged = false;
+        try {
+            File tempFile = new File(mIndexFile.getParentFile(), mIndexFile.getName() + ".tmp");
+            FileUtils.writeStringToFile(tempFile, new Gson().toJson(mEntries),
+                    StandardCharsets.UTF_8);
+            if (!tempFile.renameTo(mIndexFile)) {
+                FileUtils.forceDelete(tempFile);
+                throw new IOException("Unable to move " + tempFile + " to " + mIndexFile);
+            }
+        } catch (IOException e) {
+            mChanged = true;
+            Log.d(TAG, "Unable to write " + mIndexFile, e);
+        }
+    }
+
+    private static Map<String, Entry> read(File indexFile) {
+        if (!indexFile.exists()) {
+            return Collections.emptyMap();
+        }
+        try {
+            String contents = FileUtils.readFileToString(indexFile, StandardCharsets.UTF_8);
+            Map<String, Entry> entries = new Gson().fromJson(contents,
+                    new TypeToken<Map<String, Entry>>() {}.getType());
+            if (entries != null) {
+                return entries;
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Unable to read " + indexFile, e);
+        }
+        return Collections.emptyMap();
+    }
+
+    private static class Entry {
+
+        @SerializedName("length")
+        private final long length;
+
+        @SerializedName("lastModified")
+        private final long lastModified;
+
+        @SerializedName("hash")
+        private final String hash;
+
+        Entry(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.internal.hash.CachingFileHasher;
+
 import java.text.MessageFormat;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -14,18 +16,31 @@ public interface FileHasherStatistics {
      */
     long getHashedContentLength();
 
-    class Collector {
+    /**
+     * Number of hashes answered from the in-memory cache without reading the file.
+     */
+    long getCacheHitCount();
+
+    class Collector implements CachingFileHasher.StatisticsListener {
         private final AtomicLong hashedFileCount = new AtomicLong();
         private final AtomicLong hashedContentLength = new AtomicLong();
+        private final AtomicLong cacheHitCount = new AtomicLong();
 
+        @Override
         public void reportFileHashed(long length) {
             hashedFileCount.incrementAndGet();
             hashedContentLength.addAndGet(length);
         }
 
+        @Override
+        public void reportCacheHit() {
+            cacheHitCount.incrementAndGet();
+        }
+
         public FileHasherStatistics collect() {
             long hashedFileCount = this.hashedFileCount.getAndSet(0);
             long hashedContentLength = this.hashedContentLength.getAndSet(0);
+            long cacheHitCount = this.cacheHitCount.getAndSet(0);
             return new FileHasherStatistics() {
                 @Override
                 public long getHashedFileCount() {
@@ -37,10 +52,15 @@ public interface FileHasherStatistics {
                     return hashedContentLength;
                 }
 
+                @Override
+                public long getCacheHitCount() {
+                    return cacheHitCount;
+                }
+
                 @Override
                 public String toString() {
-                    return MessageFormat.format("Hashed {0,number,integer} files ({1,number,integer} bytes)",
-                        hashedFileCount, hashedContentLength
+                    return MessageFormat.format("Hashed {0,number,integer} files ({1,number,integer} bytes), {2,number,integer} cache hits",
+                        hashedFileCount, hashedContentLength, cacheHitCount
                     );
                 }
             };
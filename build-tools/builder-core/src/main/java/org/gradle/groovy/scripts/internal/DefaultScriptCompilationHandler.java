@@ -373,7 +373,7 @@ public class DefaultScriptCompilationHandler implements ScriptCompilationHandler
 
         AndroidScriptClassLoader(ScriptSource scriptSource, ClassLoader parent, ClassPath classPath, HashCode implementationHash) {
             super("groovy-script-" + scriptSource.getFileName() + "-loader", parent, classPath);
-            classPath.getAsFiles().forEach(file -> compileJar(file.getAbsolutePath()));
+            warmUp(classPath.getAsFiles());
             this.classPath = classPath;
             this.scriptSource = scriptSource;
             this.implementationHash = implementationHash;
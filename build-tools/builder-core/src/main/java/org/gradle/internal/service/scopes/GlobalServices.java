@@ -13,6 +13,7 @@ import org.gradle.api.internal.classpath.ModuleRegistry;
 import org.gradle.api.internal.classpath.PluginModuleRegistry;
 import org.gradle.api.internal.collections.DefaultDomainObjectCollectionFactory;
 import org.gradle.api.internal.collections.DomainObjectCollectionFactory;
+import org.gradle.api.internal.changedetection.state.FileHasherStatistics;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
 import org.gradle.api.internal.model.NamedObjectInstantiator;
 import org.gradle.api.internal.tasks.properties.annotations.AbstractOutputPropertyAnnotationHandler;
@@ -41,6 +42,7 @@ import org.gradle.internal.execution.history.impl.DefaultOverlappingOutputDetect
 import org.gradle.internal.execution.WorkInputListeners;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.api.internal.file.FilePropertyFactory;
+import org.gradle.internal.hash.CachingFileHasher;
 import org.gradle.internal.hash.DefaultFileHasher;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.StreamHasher;
@@ -211,10 +213,15 @@ public class GlobalServices extends WorkerSharedGlobalScopeServices {
         return DefaultModelSchemaExtractor.withDefaultStrategies(strategies, aspectExtractor);
     }
 
+    FileHasherStatistics.Collector createFileHasherStatisticsCollector() {
+        return new FileHasherStatistics.Collector();
+    }
+
     FileHasher createFileHasher(
-            StreamHasher streamHasher
+            StreamHasher streamHasher,
+            FileHasherStatistics.Collector statisticsCollector
     ) {
-        return new DefaultFileHasher(streamHasher);
+        return new CachingFileHasher(new DefaultFileHasher(streamHasher), CachingFileHasher.DEFAULT_MAXIMUM_SIZE, statisticsCollector);
     }
 
     FileChangeListeners createFileChangeListeners(ListenerManager listenerManager) {
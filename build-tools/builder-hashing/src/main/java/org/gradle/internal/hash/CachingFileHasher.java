@@ -0,0 +1,232 @@
+package org.gradle.internal.hash;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FileHasher} which remembers the hashes of the files it has seen, keyed by the
+ * absolute path, length and last modified time of the file. A file is only read again when its
+ * metadata changes, or when it has been replaced by a different file with the same metadata.
+ *
+ * <p>The cache is bounded, and concurrent requests for the same file wait for a single hash to
+ * be calculated instead of each reading the file.
+ */
+public class CachingFileHasher implements FileHasher {
+    public static final long DEFAULT_MAXIMUM_SIZE = 400_000;
+
+    /**
+     * File systems with a coarse timestamp resolution may report the same modification time
+     * for a file that is written to while it is being hashed, hashes of files modified within
+     * this window are not cached.
+     */
+    private static final long TIMESTAMP_RESOLUTION_MILLIS = 2000;
+
+    private final FileHasher delegate;
+    private final Cache<FileMetadata, CachedHash> cache;
+    private final StatisticsListener statisticsListener;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong hashedContentLength = new AtomicLong();
+
+    public CachingFileHasher(FileHasher delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, StatisticsListener.NONE);
+    }
+
+    public CachingFileHasher(FileHasher delegate, long maximumSize, StatisticsListener statisticsListener) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .build();
+        this.statisticsListener = statisticsListener;
+    }
+
+    @Override
+    public HashCode hash(File file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            // let the delegate report the missing file
+            return delegate.hash(file);
+        }
+        return hash(file, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+    }
+
+    /**
+     * Uses the given metadata without querying the file system again. The identity of the file
+     * is not checked, the caller has just read the metadata of the file it passes in.
+     */
+    @Override
+    public HashCode hash(File file, long length, long lastModified) {
+        return hash(file, length, lastModified, null);
+    }
+
+    private HashCode hash(File file, long length, long lastModified, Object fileKey) {
+        FileMetadata key = new FileMetadata(file.getAbsolutePath(), length, lastModified);
+
+        CachedHash cached = cache.getIfPresent(key);
+        if (cached != null && cached.matches(fileKey)) {
+            hitCount.incrementAndGet();
+            statisticsListener.reportCacheHit();
+            return cached.hash;
+        }
+        if (cached != null) {
+            // same path and metadata but a different file, e.g. replaced by a rename
+            cache.asMap().remove(key, cached);
+        }
+
+        boolean[] loaded = new boolean[1];
+        long startTime = System.currentTimeMillis();
+        try {
+            cached = cache.get(key, () -> {
+                loaded[0] = true;
+                HashCode hash = delegate.hash(file);
+                hashedContentLength.addAndGet(length);
+                statisticsListener.reportFileHashed(length);
+                return new CachedHash(hash, fileKey);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw (UncheckedIOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        }
+
+        if (loaded[0]) {
+            missCount.incrementAndGet();
+            if (lastModified >= startTime - TIMESTAMP_RESOLUTION_MILLIS) {
+                cache.asMap().remove(key, cached);
+            }
+        } else {
+            hitCount.incrementAndGet();
+            statisticsListener.reportCacheHit();
+        }
+        return cached.hash;
+    }
+
+    /**
+     * Drops every cached hash, e.g. when the file system may have changed without the
+     * modification times being updated.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Fraction of the requests that were answered without reading the file, or 1.0 if no hashes
+     * were requested yet.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long requests = hits + missCount.get();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Number of bytes read to calculate the hashes which were not found in the cache.
+     */
+    public long getHashedContentLength() {
+        return hashedContentLength.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d bytes hashed",
+            getHitCount(), getMissCount(), getHitRate() * 100, getHashedContentLength());
+    }
+
+    /**
+     * Receives the outcome of each hash request.
+     */
+    public interface StatisticsListener {
+        StatisticsListener NONE = new StatisticsListener() {
+            @Override
+            public void reportFileHashed(long length) {
+            }
+
+            @Override
+            public void reportCacheHit() {
+            }
+        };
+
+        void reportFileHashed(long length);
+
+        void reportCacheHit();
+    }
+
+    private static class FileMetadata {
+        private final String absolutePath;
+        private final long length;
+        private final long lastModified;
+
+        FileMetadata(String absolutePath, long length, long lastModified) {
+            this.absolutePath = absolutePath;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileMetadata that = (FileMetadata) o;
+            return length == that.length
+                && lastModified == that.lastModified
+                && absolutePath.equals(that.absolutePath);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(absolutePath, length, lastModified);
+        }
+    }
+
+    private static class CachedHash {
+        private final HashCode hash;
+        /**
+         * The identity of the hashed file (the inode on most file systems), or null when it is
+         * not known or not supported by the file system.
+         */
+        private final Object fileKey;
+
+        CachedHash(HashCode hash, Object fileKey) {
+            this.hash = hash;
+            this.fileKey = fileKey;
+        }
+
+        boolean matches(Object fileKey) {
+            return this.fileKey == null || fileKey == null || this.fileKey.equals(fileKey);
+        }
+    }
+}
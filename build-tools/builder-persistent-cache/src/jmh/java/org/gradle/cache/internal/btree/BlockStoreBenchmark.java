@@ -0,0 +1,78 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares random gets and puts of a {@link BTreePersistentIndexedCache} backed by a
+ * {@link FileBackedBlockStore} and a {@link MappedFileBlockStore}.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BlockStoreBenchmark {
+    private static final int ENTRY_COUNT = 10000;
+
+    @Param({"file", "mapped"})
+    String store;
+
+    private File tempDir;
+    private BTreePersistentIndexedCache<String, byte[]> cache;
+    private String[] keys;
+    private byte[] value;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("block-store-benchmark").toFile();
+        File cacheFile = new File(tempDir, "cache.bin");
+        BlockStore blockStore = "mapped".equals(store) ? new MappedFileBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        cache = new BTreePersistentIndexedCache<>(cacheFile, blockStore, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.BYTE_ARRAY_SERIALIZER);
+
+        random = new Random(42);
+        value = new byte[256];
+        random.nextBytes(value);
+        keys = new String[ENTRY_COUNT];
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            keys[i] = "key-" + i;
+            cache.put(keys[i], value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.close();
+        File[] files = tempDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public byte[] randomGet() {
+        return cache.get(keys[random.nextInt(ENTRY_COUNT)]);
+    }
+
+    @Benchmark
+    public void randomPut() {
+        cache.put(keys[random.nextInt(ENTRY_COUNT)], value);
+    }
+}
@@ -0,0 +1,496 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A {@link BlockStore} which reads and writes blocks through memory mapped regions of the cache
+ * file instead of seeking and reading through a {@link java.io.RandomAccessFile}.
+ *
+ * <p>The file is mapped in fixed size regions. Only regions lying entirely within the file are
+ * mapped, so a mapping never extends the file and the file never has to be truncated while it
+ * is mapped. The end of the file which does not fill a whole region yet is read and written
+ * through the file channel, the region is mapped once the file has grown past it. Block
+ * payloads inside a region are read straight from the mapped pages. Dirty regions are only
+ * forced to the device when the store is closed, so the frequent flushes of the B-tree do not
+ * cost a sync each.
+ *
+ * <p>The size of the file is checked before each block is read or written, so blocks appended
+ * by another process are seen and the regions are released if the file has been truncated.
+ *
+ * <p>Uses the same on-disk block format as {@link FileBackedBlockStore}, so the two stores can
+ * be used interchangeably on the same file.
+ */
+public class MappedFileBlockStore implements BlockStore {
+    static final int DEFAULT_REGION_SIZE = 1 << 20;
+
+    private final File cacheFile;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final BitSet dirtyRegions = new BitSet();
+    private final BlockOutputStream writeBuffer = new BlockOutputStream();
+    private FileChannel channel;
+    private boolean readOnly;
+    private long nextBlock;
+    private Factory factory;
+    private long currentFileSize;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_REGION_SIZE);
+    }
+
+    public MappedFileBlockStore(File cacheFile, int regionSize) {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size must be positive");
+        }
+        this.cacheFile = cacheFile;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            channel = openChannel();
+            currentFileSize = channel.size();
+            nextBlock = currentFileSize;
+            mapRegions();
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        try {
+            readOnly = false;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            readOnly = true;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            forceDirtyRegions();
+            releaseRegions();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        dirtyRegions.clear();
+        // the regions are released before the file is truncated under them
+        releaseRegions();
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        currentFileSize = 0;
+        nextBlock = 0;
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+        // writes to the mapped regions are already visible to other readers of the file
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    /**
+     * Picks up the changes made to the size of the file by another process since the last
+     * access.
+     */
+    private void syncFileSize() throws IOException {
+        long size = channel.size();
+        if (size == currentFileSize) {
+            return;
+        }
+        if (size < getMappedSize()) {
+            // the pages past the end of the file must not be accessed anymore
+            dirtyRegions.clear();
+            releaseRegions();
+        }
+        nextBlock = size < currentFileSize ? size : Math.max(nextBlock, size);
+        currentFileSize = size;
+        mapRegions();
+    }
+
+    /**
+     * Maps the regions that lie entirely within the file and are not mapped yet.
+     */
+    private void mapRegions() throws IOException {
+        FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        while (getMappedSize() + regionSize <= currentFileSize) {
+            regions.add(channel.map(mode, getMappedSize(), regionSize));
+        }
+    }
+
+    private long getMappedSize() {
+        return (long) regions.size() * regionSize;
+    }
+
+    private void forceDirtyRegions() {
+        for (int i = dirtyRegions.nextSetBit(0); i >= 0; i = dirtyRegions.nextSetBit(i + 1)) {
+            if (i < regions.size()) {
+                regions.get(i).force();
+            }
+        }
+        dirtyRegions.clear();
+    }
+
+    private void releaseRegions() {
+        for (MappedByteBuffer region : regions) {
+            Unmapper.unmap(region);
+        }
+        regions.clear();
+    }
+
+    /**
+     * Returns the given range of the file. The range is a view of the mapped pages when it lies
+     * within a single region, otherwise it is copied from the regions and the channel.
+     */
+    private ByteBuffer slice(long pos, int length) throws IOException {
+        int regionIndex = (int) (pos / regionSize);
+        int offsetInRegion = (int) (pos % regionSize);
+        if (regionIndex < regions.size() && offsetInRegion + length <= regionSize) {
+            ByteBuffer region = regions.get(regionIndex).duplicate();
+            region.position(offsetInRegion);
+            region.limit(offsetInRegion + length);
+            return region.slice();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            long current = pos + buffer.position();
+            if (current < getMappedSize()) {
+                ByteBuffer region = regions.get((int) (current / regionSize)).duplicate();
+                region.position((int) (current % regionSize));
+                int count = Math.min(region.remaining(), buffer.remaining());
+                region.limit(region.position() + count);
+                buffer.put(region);
+            } else if (channel.read(buffer, current) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer at the given position of the file, through the
+     * mapped regions where the file is mapped and through the channel past them.
+     */
+    private void writeBytes(long pos, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (pos < getMappedSize()) {
+                int regionIndex = (int) (pos / regionSize);
+                ByteBuffer region = regions.get(regionIndex).duplicate();
+                region.position((int) (pos % regionSize));
+                int count = Math.min(region.remaining(), buffer.remaining());
+                ByteBuffer source = buffer.duplicate();
+                source.limit(source.position() + count);
+                region.put(source);
+                buffer.position(buffer.position() + count);
+                dirtyRegions.set(regionIndex);
+                pos += count;
+            } else {
+                pos += channel.write(buffer, pos);
+            }
+        }
+    }
+
+    /**
+     * Reads a buffer and counts the bytes read.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long getBytesRead() {
+            return buffer.position();
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    /**
+     * Serializes a block before it is written, reused for every block of the store.
+     */
+    private static class BlockOutputStream extends ByteArrayOutputStream {
+        void pad(int size) {
+            while (count < size) {
+                write(0);
+            }
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * Releases mappings without waiting for the buffers to be garbage collected, where the
+     * runtime allows it. A released buffer must not be accessed anymore.
+     */
+    private static class Unmapper {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not available on this runtime, the mappings are released by the garbage collector
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void unmap(MappedByteBuffer buffer) {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // left to the garbage collector
+            }
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            syncFileSize();
+            long pos = getPos().getPos();
+            int finalSize = HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            writeBuffer.reset();
+            DataOutputStream outputStream = new DataOutputStream(writeBuffer);
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            outputStream.writeInt(writeBuffer.size());
+
+            // the whole block is written so the file length matches the blocks allocated in it
+            writeBuffer.pad(finalSize);
+            writeBytes(pos, writeBuffer.toByteBuffer());
+
+            if (currentFileSize < pos + finalSize) {
+                currentFileSize = pos + finalSize;
+                mapRegions();
+            }
+        }
+
+        public void read() throws Exception {
+            syncFileSize();
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= currentFileSize) {
+                throw blockCorruptedException();
+            }
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            ByteBuffer header = slice(pos, HEADER_SIZE);
+            byte type = header.get();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = header.getInt();
+            if (payloadSize < 0 || pos + HEADER_SIZE + TAIL_SIZE + payloadSize > currentFileSize) {
+                throw blockCorruptedException();
+            }
+            ByteBufferInputStream bodyInput = new ByteBufferInputStream(slice(pos + HEADER_SIZE, payloadSize + TAIL_SIZE));
+            DataInputStream inputStream = new DataInputStream(bodyInput);
+            try {
+                payload.read(inputStream);
+
+                // Read and verify count
+                long actualCount = HEADER_SIZE + bodyInput.getBytesRead();
+                long count = inputStream.readInt();
+                if (actualCount != count) {
+                    throw blockCorruptedException();
+                }
+            } catch (EOFException e) {
+                throw blockCorruptedException();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.gradle.cache.internal.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class MappedFileBlockStoreTest {
+
+    private static final int REGION_SIZE = 1024;
+    private static final int ENTRY_COUNT = 500;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private BTreePersistentIndexedCache<String, String> mappedCache(File cacheFile) {
+        return new BTreePersistentIndexedCache<>(cacheFile, new MappedFileBlockStore(cacheFile, REGION_SIZE),
+                BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+    }
+
+    private BTreePersistentIndexedCache<String, String> fileBackedCache(File cacheFile) {
+        return new BTreePersistentIndexedCache<>(cacheFile, new FileBackedBlockStore(cacheFile),
+                BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+    }
+
+    private static void putEntries(BTreePersistentIndexedCache<String, String> cache, String prefix) {
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            cache.put("key-" + i, prefix + i);
+        }
+    }
+
+    private static void assertEntries(BTreePersistentIndexedCache<String, String> cache, String prefix) {
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            assertEquals(prefix + i, cache.get("key-" + i));
+        }
+    }
+
+    @Test
+    public void testEntriesAreReadAfterReopen() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "value-");
+        cache.close();
+
+        cache = mappedCache(cacheFile);
+        assertEntries(cache, "value-");
+        cache.verify();
+        cache.close();
+    }
+
+    @Test
+    public void testFileGrowsAcrossRegions() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "value-");
+        assertTrue(cacheFile.length() > 10 * REGION_SIZE);
+
+        // rewrites blocks that now lie in mapped regions
+        putEntries(cache, "other-");
+        assertEntries(cache, "other-");
+        cache.close();
+
+        cache = mappedCache(cacheFile);
+        assertEntries(cache, "other-");
+        cache.close();
+    }
+
+    @Test
+    public void testFileIsNotPaddedOnClose() throws IOException {
+        File mappedFile = new File(temporaryFolder.getRoot(), "mapped.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(mappedFile);
+        putEntries(cache, "value-");
+        long lengthBeforeClose = mappedFile.length();
+        cache.close();
+
+        File fileBackedFile = new File(temporaryFolder.getRoot(), "file.bin");
+        cache = fileBackedCache(fileBackedFile);
+        putEntries(cache, "value-");
+        cache.close();
+
+        assertEquals(lengthBeforeClose, mappedFile.length());
+        assertEquals(fileBackedFile.length(), mappedFile.length());
+    }
+
+    @Test
+    public void testSharesFormatWithFileBackedStore() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "mapped-");
+        cache.close();
+
+        cache = fileBackedCache(cacheFile);
+        assertEntries(cache, "mapped-");
+        putEntries(cache, "file-");
+        cache.close();
+
+        cache = mappedCache(cacheFile);
+        assertEntries(cache, "file-");
+        cache.close();
+    }
+
+    @Test
+    public void testClearTruncatesFile() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "value-");
+        cache.clear();
+        assertNull(cache.get("key-0"));
+
+        cache.put("key-0", "new");
+        cache.close();
+
+        cache = mappedCache(cacheFile);
+        assertEquals("new", cache.get("key-0"));
+        assertNull(cache.get("key-1"));
+        cache.close();
+    }
+
+    @Test
+    public void testFileTruncatedByAnotherProcessIsDiscarded() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "value-");
+
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(0);
+        }
+
+        assertNull(cache.get("key-" + (ENTRY_COUNT - 1)));
+        cache.put("key-0", "new");
+        assertEquals("new", cache.get("key-0"));
+        cache.close();
+
+        cache = mappedCache(cacheFile);
+        assertEquals("new", cache.get("key-0"));
+        cache.close();
+    }
+
+    @Test
+    public void testEntriesAppendedByAnotherStoreAreRead() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        BTreePersistentIndexedCache<String, String> cache = mappedCache(cacheFile);
+        putEntries(cache, "value-");
+        cache.close();
+
+        BTreePersistentIndexedCache<String, String> reader = mappedCache(cacheFile);
+        assertEntries(reader, "value-");
+
+        BTreePersistentIndexedCache<String, String> writer = fileBackedCache(cacheFile);
+        writer.put("appended", "value");
+        writer.close();
+
+        // the index blocks are cached, the reader sees the new entry once reset like after
+        // acquiring the cache lock again
+        reader.reset();
+        assertEquals("value", reader.get("appended"));
+        assertEntries(reader, "value-");
+        reader.close();
+    }
+}
@@ -0,0 +1,112 @@
+package com.tyron.builder.dexing
+
+import com.android.SdkConstants
+import com.google.common.hash.Hashing
+import com.tyron.builder.packaging.DexFileNameSupplier
+import java.io.File
+import java.nio.charset.StandardCharsets
+
+/**
+ * Stores the dex files merged from a list of dex archive entries, keyed by the hash of the
+ * contents of the entries and of the merging parameters.
+ *
+ * Merging the same entries with the same parameters gives the same dex files, so when the inputs
+ * of a merge did not change since a previous run (e.g. the dex files of external libraries when
+ * only the project changed, or when switching back to a previous set of dependencies), the
+ * cached dex files are copied instead of invoking D8 again.
+ */
+class MergedDexCache(private val cacheDir: File) {
+
+    /** Returns the key of the dex files merged from [entries] with the given [parameters]. */
+    fun getKey(entries: List<DexArchiveEntry>, parameters: List<Any>): String {
+        val hasher = Hashing.sha256().newHasher()
+        hasher.putInt(VERSION)
+        for (parameter in parameters) {
+            hasher.putString(parameter.toString(), StandardCharsets.UTF_8)
+            hasher.putByte(0)
+        }
+        hasher.putInt(entries.size)
+        for (entry in entries) {
+            hasher.putString(entry.relativePathInArchive, StandardCharsets.UTF_8)
+            val content = entry.dexFileContent
+            hasher.putInt(content.size)
+            hasher.putBytes(content)
+        }
+        return hasher.hash().toString()
+    }
+
+    /**
+     * Returns the dex files cached for [key], merging them with [merge] into the cache first if
+     * they are not cached yet. The returned dex files are in the order D8 produced them.
+     */
+    fun getOrMerge(key: String, merge: (outputDir: File) -> Unit): List<File> {
+        val entryDir = File(cacheDir, key)
+        if (entryDir.isDirectory) {
+            // used to find the least recently used entries in prune()
+            entryDir.setLastModified(System.currentTimeMillis())
+            return getSortedDexFiles(entryDir)
+        }
+
+        val tempDir = File(cacheDir, "$key$TEMP_SUFFIX")
+        tempDir.deleteRecursively()
+        tempDir.mkdirs()
+        try {
+            merge(tempDir)
+            if (!tempDir.renameTo(entryDir)) {
+                // another worker merged the same entries in the meantime
+                check(entryDir.isDirectory) { "Unable to move $tempDir to $entryDir" }
+            }
+        } finally {
+            tempDir.deleteRecursively()
+        }
+        return getSortedDexFiles(entryDir)
+    }
+
+    /**
+     * Deletes the least recently used entries so that at most [maxEntries] are left, along with
+     * the leftovers of interrupted merges.
+     */
+    fun prune(maxEntries: Int) {
+        val files = cacheDir.listFiles() ?: return
+        files.filter { it.name.endsWith(TEMP_SUFFIX) }.forEach { it.deleteRecursively() }
+        files.filter { it.isDirectory && !it.name.endsWith(TEMP_SUFFIX) }
+            .sortedByDescending { it.lastModified() }
+            .drop(maxEntries)
+            .forEach { it.deleteRecursively() }
+    }
+
+    companion object {
+
+        /** Change this when the merged dex files of the same inputs may differ. */
+        private const val VERSION = 1
+
+        private const val TEMP_SUFFIX = ".tmp"
+
+        private fun getSortedDexFiles(dir: File): List<File> {
+            val dexFiles = dir.listFiles { file ->
+                file.isFile && file.name.endsWith(SdkConstants.DOT_DEX, ignoreCase = true)
+            } ?: return emptyList()
+            // classes.dex, classes2.dex, ..., classes10.dex
+            return dexFiles.sortedWith(
+                compareBy({ getDexIndex(it.name) }, { it.name })
+            )
+        }
+
+        private fun getDexIndex(name: String): Int {
+            val index = name.removePrefix("classes").removeSuffix(SdkConstants.DOT_DEX)
+            return if (index.isEmpty()) 1 else index.toIntOrNull() ?: Int.MAX_VALUE
+        }
+
+        /**
+         * Copies the given dex files to [outputDir], naming them in order with [names] so that
+         * the dex files of several cache entries can be written to the same directory.
+         */
+        @JvmStatic
+        fun copyDexFiles(dexFiles: List<File>, outputDir: File, names: DexFileNameSupplier) {
+            outputDir.mkdirs()
+            for (dexFile in dexFiles) {
+                dexFile.copyTo(File(outputDir, names.get()), overwrite = true)
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.tyron.builder.gradle.internal.tasks
 
 import com.android.SdkConstants.DOT_JAR
-import com.android.zipflinger.BytesSource
+import com.android.zipflinger.Sources
 import com.android.zipflinger.ZipArchive
 import com.google.common.annotations.VisibleForTesting
 import com.tyron.builder.api.artifact.SingleArtifact
@@ -16,7 +16,6 @@ import com.tyron.builder.packaging.PackagingUtils
 import com.tyron.builder.tasks.IncrementalTask
 import org.gradle.api.file.DirectoryProperty
 import org.gradle.api.file.FileType
-import org.gradle.api.file.RegularFileProperty
 import org.gradle.api.provider.ListProperty
 import org.gradle.api.provider.Property
 import org.gradle.api.tasks.*
@@ -28,7 +27,9 @@ import org.gradle.workers.WorkAction
 import org.gradle.workers.WorkParameters
 import org.gradle.workers.WorkQueue
 import java.io.File
+import java.io.Serializable
 import java.nio.file.Files
+import java.nio.file.Path
 import java.util.function.Predicate
 import java.util.zip.Deflater
 import java.util.zip.Deflater.BEST_SPEED
@@ -115,6 +116,10 @@ abstract class CompressAssetsTask: IncrementalTask() {
 
 /**
  * Delegate to compress assets
+ *
+ * Removed assets are deleted right away, the other changed assets are compressed by workers.
+ * Small assets are grouped so that a worker compresses several of them, large assets get a
+ * worker of their own so they are spread evenly across the workers.
  */
 @VisibleForTesting
 class CompressAssetsDelegate(
@@ -126,52 +131,178 @@ class CompressAssetsDelegate(
 ) {
 
     fun run() {
+        val batch = mutableListOf<CompressAssetRequest>()
+        var batchSize = 0L
         for (change in changes) {
             if (change.fileType == FileType.DIRECTORY) {
                 continue
             }
             val entryPath = "assets/${change.normalizedPath}"
             val targetFile = File(outputDir, entryPath + DOT_JAR)
+            if (change.changeType == ChangeType.REMOVED) {
+                Files.deleteIfExists(targetFile.toPath())
+                continue
+            }
             val entryCompressionLevel = if (noCompressPredicate.test(entryPath)) {
                 Deflater.NO_COMPRESSION
             } else {
                 compressionLevel
             }
-            workQueue.submit(CompressAssetsWorkAction::class.java) {
-                it.input.set(change.file)
-                it.output.set(targetFile)
-                it.entryPath.set(entryPath)
-                it.entryCompressionLevel.set(entryCompressionLevel)
-                it.changeType.set(change.changeType)
+            val request = CompressAssetRequest(
+                change.file,
+                targetFile,
+                entryPath,
+                entryCompressionLevel,
+                change.changeType
+            )
+
+            val size = change.file.length()
+            if (size >= MAX_BATCH_SIZE) {
+                submit(listOf(request))
+                continue
+            }
+            batch.add(request)
+            batchSize += size
+            if (batchSize >= MAX_BATCH_SIZE || batch.size >= MAX_BATCH_COUNT) {
+                submit(batch.toList())
+                batch.clear()
+                batchSize = 0
             }
         }
+        if (batch.isNotEmpty()) {
+            submit(batch.toList())
+        }
+    }
+
+    private fun submit(requests: List<CompressAssetRequest>) {
+        workQueue.submit(CompressAssetsWorkAction::class.java) {
+            it.requests.set(requests)
+        }
+    }
+
+    companion object {
+        private const val MAX_BATCH_SIZE = 1024L * 1024L
+        private const val MAX_BATCH_COUNT = 64
     }
 }
 
 /**
- * [WorkAction] to compress an asset file into a single-entry jar
+ * An asset to compress into the single-entry jar [output].
+ */
+data class CompressAssetRequest(
+    val input: File,
+    val output: File,
+    val entryPath: String,
+    val entryCompressionLevel: Int,
+    val changeType: ChangeType
+) : Serializable
+
+/**
+ * [WorkAction] to compress asset files into single-entry jars
  */
 abstract class CompressAssetsWorkAction @Inject constructor(
     private val compressAssetsWorkParameters: CompressAssetsWorkParameters
 ): WorkAction<CompressAssetsWorkParameters> {
 
     override fun execute() {
-        val output = compressAssetsWorkParameters.output.get().asFile.toPath()
-        val changeType = compressAssetsWorkParameters.changeType.get()
-        if (changeType != ChangeType.ADDED) {
+        for (request in compressAssetsWorkParameters.requests.get()) {
+            compress(request)
+        }
+    }
+
+    private fun compress(request: CompressAssetRequest) {
+        val output = request.output.toPath()
+        if (request.changeType != ChangeType.ADDED) {
             Files.deleteIfExists(output)
         }
-        if (changeType != ChangeType.REMOVED) {
-            Files.createDirectories(output.parent)
-            ZipArchive(output).use { jar ->
-                jar.add(
-                    BytesSource(
-                        compressAssetsWorkParameters.input.get().asFile.toPath(),
-                        compressAssetsWorkParameters.entryPath.get(),
-                        compressAssetsWorkParameters.entryCompressionLevel.get()
-                    )
-                )
+        val input = request.input.toPath()
+        val compressionLevel =
+            if (request.entryCompressionLevel != Deflater.NO_COMPRESSION
+                && isIncompressible(input)) {
+                Deflater.NO_COMPRESSION
+            } else {
+                request.entryCompressionLevel
+            }
+        Files.createDirectories(output.parent)
+        ZipArchive(output).use { jar ->
+            // large assets are streamed instead of being read in memory at once
+            jar.add(Sources.from(input, request.entryPath, compressionLevel))
+        }
+    }
+
+    companion object {
+
+        private const val SAMPLE_SIZE = 64 * 1024
+
+        /**
+         * Assets whose contents do not shrink by at least this ratio are stored.
+         */
+        private const val MIN_COMPRESSION_RATIO = 0.95
+
+        /**
+         * The signatures of formats which are already compressed, for assets that do not have
+         * one of the known extensions.
+         */
+        private val COMPRESSED_SIGNATURES = listOf(
+            byteArrayOf(0x50, 0x4B, 0x03, 0x04), // zip, jar, apk
+            byteArrayOf(0x1F, 0x8B.toByte()), // gzip
+            byteArrayOf(0x89.toByte(), 0x50, 0x4E, 0x47), // png
+            byteArrayOf(0xFF.toByte(), 0xD8.toByte(), 0xFF.toByte()), // jpeg
+            byteArrayOf(0x47, 0x49, 0x46, 0x38), // gif
+            byteArrayOf(0x4F, 0x67, 0x67, 0x53), // ogg
+            byteArrayOf(0x49, 0x44, 0x33), // mp3
+            byteArrayOf(0x66, 0x4C, 0x61, 0x43), // flac
+            byteArrayOf(0x37, 0x7A, 0xBC.toByte(), 0xAF.toByte()), // 7z
+            byteArrayOf(0xFD.toByte(), 0x37, 0x7A, 0x58), // xz
+            byteArrayOf(0x28, 0xB5.toByte(), 0x2F, 0xFD.toByte()), // zstd
+        )
+
+        /**
+         * Returns true if the contents of the asset are already compressed, either recognized
+         * from its signature or because a sample of it does not shrink when deflated. Small
+         * assets are always deflated as deflating them is cheap.
+         */
+        @VisibleForTesting
+        fun isIncompressible(file: Path): Boolean {
+            if (Files.size(file) < SAMPLE_SIZE) {
+                return false
+            }
+            val sample = ByteArray(SAMPLE_SIZE)
+            val read = Files.newInputStream(file).use { input ->
+                var total = 0
+                while (total < sample.size) {
+                    val count = input.read(sample, total, sample.size - total)
+                    if (count == -1) {
+                        break
+                    }
+                    total += count
+                }
+                total
+            }
+            if (COMPRESSED_SIGNATURES.any { signature -> startsWith(sample, read, signature) }) {
+                return true
+            }
+
+            val deflater = Deflater(Deflater.BEST_SPEED, true)
+            try {
+                deflater.setInput(sample, 0, read)
+                deflater.finish()
+                val buffer = ByteArray(read + 64)
+                var compressed = 0
+                while (!deflater.finished()) {
+                    compressed += deflater.deflate(buffer)
+                }
+                return compressed >= read * MIN_COMPRESSION_RATIO
+            } finally {
+                deflater.end()
+            }
+        }
+
+        private fun startsWith(bytes: ByteArray, length: Int, prefix: ByteArray): Boolean {
+            if (length < prefix.size) {
+                return false
             }
+            return prefix.indices.all { bytes[it] == prefix[it] }
         }
     }
 }
@@ -180,9 +311,5 @@ abstract class CompressAssetsWorkAction @Inject constructor(
  * [WorkParameters] for [CompressAssetsWorkAction]
  */
 abstract class CompressAssetsWorkParameters: WorkParameters {
-    abstract val input: RegularFileProperty
-    abstract val output: RegularFileProperty
-    abstract val entryPath: Property<String>
-    abstract val entryCompressionLevel: Property<Int>
-    abstract val changeType: Property<ChangeType>
+    abstract val requests: ListProperty<CompressAssetRequest>
 }
@@ -23,6 +23,7 @@ import com.tyron.builder.gradle.options.BooleanOption
 import com.tyron.builder.gradle.options.IntegerOption
 import com.tyron.builder.gradle.options.ProjectOptions
 import com.tyron.builder.internal.utils.setDisallowChanges
+import com.tyron.builder.packaging.DexFileNameSupplier
 import com.tyron.builder.plugin.options.SyncOptions
 import com.tyron.builder.tasks.IncrementalTask
 import com.tyron.builder.tasks.toSerializable
@@ -145,6 +146,13 @@ abstract class DexMergingTask : IncrementalTask() {
     @get:OutputFile
     abstract val mainDexListOutput: RegularFileProperty
 
+    /**
+     * Dex files merged in previous runs, reused when the merged inputs are the same. See
+     * [MergedDexCache].
+     */
+    @get:LocalState
+    abstract val mergedDexCacheDir: DirectoryProperty
+
     override fun doTaskAction(inputChanges: InputChanges) {
         // There are two sources of input dex files:
         //   - dexDirs: These directories contain dex files and possibly also jars of dex files
@@ -177,7 +185,8 @@ abstract class DexMergingTask : IncrementalTask() {
             it.initialize(
                 sharedParams, numberOfBuckets.get(), dexDirsOrJars, outputDir, inputChanges.isIncremental,
                 fileChanges?.toSerializable(),
-                mainDexListOutput = mainDexListOutput
+                mainDexListOutput = mainDexListOutput,
+                mergedDexCacheDir = mergedDexCacheDir.get().asFile
             )
         }
     }
@@ -265,6 +274,11 @@ abstract class DexMergingTask : IncrementalTask() {
                     .from(bootClasspath, libraryClasses).disallowChanges()
             }
 
+            task.mergedDexCacheDir.set(
+                creationConfig.paths.getIncrementalDir("${creationConfig.name}-$internalName")
+            )
+            task.mergedDexCacheDir.disallowChanges()
+
             // Input properties
             task.numberOfBuckets.setDisallowChanges(
                 task.project.providers.provider { getNumberOfBuckets(projectOptions) }
@@ -510,6 +524,7 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
 
         abstract val incremental: Property<Boolean>
         abstract val fileChanges: Property<SerializableFileChanges>
+        abstract val mergedDexCacheDir: DirectoryProperty
 
         fun initialize(
             sharedParams: DexMergingTask.SharedParams,
@@ -518,7 +533,8 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
             outputDir: DirectoryProperty,
             incremental: Boolean,
             fileChanges: SerializableFileChanges?,
-            mainDexListOutput: RegularFileProperty?
+            mainDexListOutput: RegularFileProperty?,
+            mergedDexCacheDir: File
         ) {
             this.sharedParams.set(sharedParams)
             this.numberOfBuckets.set(numberOfBuckets)
@@ -527,6 +543,7 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
             this.incremental.set(incremental)
             this.fileChanges.set(fileChanges)
             mainDexListOutput?.let { this.mainDexListOutput.set(it) }
+            this.mergedDexCacheDir.set(mergedDexCacheDir)
         }
     }
 
@@ -567,10 +584,19 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
                         useForkJoinPool = numberOfBuckets.get() == 1,
                         dexEntryBucket = bucket,
                         outputDirForBucket = outputDirForBucket,
-                        mainDexListOutput = mainDexListOutput.asFile.orNull
+                        mainDexListOutput = mainDexListOutput.asFile.orNull,
+                        mergedDexCacheDir = mergedDexCacheDir.get().asFile,
+                        splitByArchive = numberOfBuckets.get() == 1
                     )
                 }
             }
+
+            // Keep the entries of the buckets of the last two runs, e.g. to go back and forth
+            // between two versions of a library.
+            workQueue.await()
+            MergedDexCache(mergedDexCacheDir.get().asFile).prune(
+                2 * (numberOfBuckets.get() + DexMergingWorkAction.ARCHIVE_GROUPS)
+            )
         }
     }
 
@@ -723,19 +749,25 @@ abstract class DexMergingWorkAction : WorkAction<DexMergingWorkAction.Params> {
         abstract val dexEntryBucket: Property<DexEntryBucket>
         abstract val outputDirForBucket: DirectoryProperty
         abstract val mainDexListOutput: RegularFileProperty
+        abstract val mergedDexCacheDir: DirectoryProperty
+        abstract val splitByArchive: Property<Boolean>
 
         fun initialize(
             sharedParams: Property<DexMergingTask.SharedParams>,
             useForkJoinPool: Boolean,
             dexEntryBucket: DexEntryBucket,
             outputDirForBucket: File,
-            mainDexListOutput: File?
+            mainDexListOutput: File?,
+            mergedDexCacheDir: File,
+            splitByArchive: Boolean
         ) {
             this.sharedParams.set(sharedParams)
             this.useForkJoinPool.set(useForkJoinPool)
             this.dexEntryBucket.set(dexEntryBucket)
             this.outputDirForBucket.set(outputDirForBucket)
             this.mainDexListOutput.set(mainDexListOutput)
+            this.mergedDexCacheDir.set(mergedDexCacheDir)
+            this.splitByArchive.set(splitByArchive)
         }
     }
 
@@ -752,13 +784,36 @@ abstract class DexMergingWorkAction : WorkAction<DexMergingWorkAction.Params> {
             null
         }
         try {
-            merge(
-                parameters.sharedParams.get(),
-                forkJoinPool,
-                dexArchiveEntries,
-                parameters.outputDirForBucket.get().asFile,
-                parameters.mainDexListOutput.asFile.orNull?.toPath()
+            val sharedParams = parameters.sharedParams.get()
+            val outputDir = parameters.outputDirForBucket.get().asFile
+            val mainDexListOutput = parameters.mainDexListOutput.asFile.orNull
+            if (mainDexListOutput != null) {
+                // the main dex list is an output of the merge, it cannot be taken from the cache
+                merge(
+                    sharedParams,
+                    forkJoinPool,
+                    dexArchiveEntries,
+                    outputDir,
+                    mainDexListOutput.toPath()
+                )
+                return
+            }
+
+            val cache = MergedDexCache(parameters.mergedDexCacheDir.get().asFile)
+            val cacheParameters = listOf<Any>(
+                getD8MinSdkVersion(sharedParams),
+                sharedParams.debuggable.get(),
+                sharedParams.dexingType.get(),
+                getR8Version()
             )
+            val names = DexFileNameSupplier()
+            for (group in getArchiveGroups(sharedParams, dexArchiveEntries)) {
+                val key = cache.getKey(group, cacheParameters)
+                val dexFiles = cache.getOrMerge(key) { dir ->
+                    merge(sharedParams, forkJoinPool, group, dir, null)
+                }
+                MergedDexCache.copyDexFiles(dexFiles, outputDir, names)
+            }
         } finally {
             forkJoinPool?.shutdown()
             forkJoinPool?.awaitTermination(100, TimeUnit.SECONDS)
@@ -779,20 +834,9 @@ abstract class DexMergingWorkAction : WorkAction<DexMergingWorkAction.Params> {
         )
 
         try {
-            var d8MinSdkVersion: Int = sharedParams.minSdkVersion.get()
-            val dexingType = sharedParams.dexingType.get()
-            if (d8MinSdkVersion < 21 && dexingType === NATIVE_MULTIDEX) {
-                // D8 has baked-in logic that does not allow multiple dex files without
-                // main dex list if min sdk < 21. When we deploy the app to a device with api
-                // level 21+, we will promote legacy multidex to native multidex, but the min
-                // sdk version will be less than 21, which will cause D8 failure as we do not
-                // supply the main dex list. In order to prevent that, it is safe to set min
-                // sdk version to 21.
-                d8MinSdkVersion = 21
-            }
             val merger = DexArchiveMerger.createD8DexMerger(
                 messageReceiver,
-                d8MinSdkVersion,
+                getD8MinSdkVersion(sharedParams),
                 sharedParams.debuggable.get(),
                 forkJoinPool
             )
@@ -822,4 +866,57 @@ abstract class DexMergingWorkAction : WorkAction<DexMergingWorkAction.Params> {
             throw GradleException(e.message?:"")
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Splits the entries of a bucket into groups of dex archives that are merged and cached
+     * separately, so that a change in one archive only re-merges the archives of its group.
+     *
+     * This is only done in debuggable builds, which do not need the smallest number of dex files,
+     * when the bucket is not split further by package (see
+     * [DexMergingTaskDelegate.getBucketNumber]) and when classes of the same package can be in
+     * different dex files, i.e. in native multidex from API 24, as the verifier before N fails
+     * to verify classes of the same package that are split in 2 dex files. The archives of a
+     * library keep the same path as long as it does not change, so they stay in the same group.
+     */
+    private fun getArchiveGroups(
+        sharedParams: DexMergingTask.SharedParams,
+        dexArchiveEntries: List<DexArchiveEntry>
+    ): List<List<DexArchiveEntry>> {
+        if (!parameters.splitByArchive.get()
+            || !sharedParams.debuggable.get()
+            || sharedParams.dexingType.get() !== NATIVE_MULTIDEX
+            || sharedParams.minSdkVersion.get() < 24
+        ) {
+            return listOf(dexArchiveEntries)
+        }
+        // keeps the order of the entries within each group
+        return dexArchiveEntries
+            .groupBy {
+                val path = it.dexArchive.rootPath.toFile().invariantSeparatorsPath
+                kotlin.math.abs(path.hashCode() % ARCHIVE_GROUPS)
+            }
+            .toSortedMap()
+            .values
+            .toList()
+    }
+
+    private fun getD8MinSdkVersion(sharedParams: DexMergingTask.SharedParams): Int {
+        val minSdkVersion = sharedParams.minSdkVersion.get()
+        if (minSdkVersion < 21 && sharedParams.dexingType.get() === NATIVE_MULTIDEX) {
+            // D8 has baked-in logic that does not allow multiple dex files without
+            // main dex list if min sdk < 21. When we deploy the app to a device with api
+            // level 21+, we will promote legacy multidex to native multidex, but the min
+            // sdk version will be less than 21, which will cause D8 failure as we do not
+            // supply the main dex list. In order to prevent that, it is safe to set min
+            // sdk version to 21.
+            return 21
+        }
+        return minSdkVersion
+    }
+
+    companion object {
+
+        /** The number of groups the dex archives of a bucket are split into when possible. */
+        const val ARCHIVE_GROUPS = 4
+    }
+}
@@ -3,19 +3,18 @@ package com.tyron.builder.gradle.internal.tasks
 import com.android.SdkConstants.DOT_JAR
 import com.tyron.builder.gradle.internal.TaskManager
 import com.tyron.builder.gradle.internal.component.ComponentCreationConfig
-import com.tyron.builder.gradle.internal.packaging.JarCreatorFactory
-import com.tyron.builder.gradle.internal.packaging.JarCreatorType
 import com.tyron.builder.gradle.internal.pipeline.TransformManager
 import com.tyron.builder.gradle.internal.scope.InternalArtifactType
 import com.tyron.builder.gradle.internal.tasks.factory.VariantTaskCreationAction
 import com.tyron.builder.dexing.ClassFileInput.CLASS_MATCHER
 import com.tyron.builder.internal.utils.fromDisallowChanges
+import com.tyron.builder.packaging.IncrementalJarMerger
 import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
 import org.gradle.api.file.RegularFileProperty
-import org.gradle.api.provider.Property
 import org.gradle.api.tasks.CacheableTask
 import org.gradle.api.tasks.Classpath
-import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.LocalState
 import org.gradle.api.tasks.OutputFile
 import org.gradle.api.tasks.TaskProvider
 import org.gradle.workers.WorkAction
@@ -39,16 +38,19 @@ abstract class MergeClassesTask : NonIncrementalTask() {
     @get:OutputFile
     abstract val outputFile: RegularFileProperty
 
-    @get:Input
-    lateinit var jarCreatorType: JarCreatorType
-        private set
+    /**
+     * The index of the entries of [outputFile] written by the previous run, see
+     * [IncrementalJarMerger].
+     */
+    @get:LocalState
+    abstract val incrementalFolder: DirectoryProperty
 
     override fun doTaskAction() {
         workerExecutor.noIsolation().submit(MergeClassesWorkAction::class.java) {
 //            it.initializeFromAndroidVariantTask(this)
             it.inputFiles.from(inputFiles)
             it.outputFile.set(outputFile)
-            it.jarCreatorType.set(jarCreatorType)
+            it.incrementalFolder.set(incrementalFolder)
         }
     }
 
@@ -57,14 +59,16 @@ abstract class MergeClassesTask : NonIncrementalTask() {
         abstract class Parameters : WorkParameters {
             abstract val inputFiles: ConfigurableFileCollection
             abstract val outputFile: RegularFileProperty
-            abstract val jarCreatorType: Property<JarCreatorType>
+            abstract val incrementalFolder: DirectoryProperty
         }
 
         override fun execute() {
-            JarCreatorFactory.make(
+            // The jar is only written again when one of its entries changed, unchanged jars
+            // are not read to list their entries.
+            IncrementalJarMerger(
                 parameters.outputFile.asFile.get().toPath(),
-                CLASS_MATCHER,
-                parameters.jarCreatorType.get()
+                parameters.incrementalFolder.asFile.get().toPath(),
+                CLASS_MATCHER
             ).use { out ->
                 // Don't compress because compressing takes extra time, and this jar doesn't go
                 // into any APKs or AARs.
@@ -118,7 +122,7 @@ abstract class MergeClassesTask : NonIncrementalTask() {
         ) {
             super.configure(task)
             task.inputFiles.fromDisallowChanges(inputFiles)
-            task.jarCreatorType = creationConfig.global.jarCreatorType
+            task.incrementalFolder.set(creationConfig.paths.getIncrementalDir(name))
         }
     }
 }
@@ -0,0 +1,383 @@
+package com.tyron.builder.packaging;
+
+import com.android.zipflinger.Sources;
+import com.android.zipflinger.ZipArchive;
+import com.android.zipflinger.ZipMap;
+import com.android.zipflinger.ZipSource;
+import com.google.common.collect.ImmutableSortedMap;
+import com.tyron.builder.internal.concurrent.ParallelTasks;
+
+import org.gradle.util.internal.GFileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Merges jars and directories into a single jar, reusing what is known from the previous run.
+ *
+ * <p>An index of every entry of the merged jar, the input it comes from and its stamp (the crc
+ * and size of a jar entry, the size and last modified time of a file) is saved in a state
+ * directory. The jar is left untouched when no entry and no input changed since the previous
+ * run. Otherwise it is written again in the order of the inputs and of the entries of each
+ * input, so its layout only depends on the inputs and not on the changes made by earlier runs.
+ * Entries that have not changed since the previous run are copied from the previous jar as they
+ * are stored, only the changed entries are read from their inputs. Entries of jars are copied
+ * without being inflated and deflated again, and jars that have not changed since the previous
+ * run are not read to list their entries.
+ *
+ * <p>The inputs are read concurrently but their entries are added in the order the inputs were
+ * given, so the merged jar does not depend on the order they are read in.
+ */
+public class IncrementalJarMerger implements Closeable {
+
+    private static final String INDEX_FILE_NAME = "merged-jar.index";
+    private static final String INDEX_VERSION = "1";
+
+    private static final String JAR_LINE = "J";
+    private static final String INPUT_LINE = "I";
+    private static final String ENTRY_LINE = "E";
+
+    @NotNull private final Path jarFile;
+    @NotNull private final Path indexFile;
+    @Nullable private final Predicate<String> filter;
+
+    private final List<Path> inputs = new ArrayList<>();
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * @param stateDirectory the directory the index is kept in between runs, owned by the
+     *                       merger of this jar
+     */
+    public IncrementalJarMerger(@NotNull Path jarFile,
+                                @NotNull Path stateDirectory,
+                                @Nullable Predicate<String> filter) {
+        this.jarFile = jarFile;
+        this.indexFile = stateDirectory.resolve(INDEX_FILE_NAME);
+        this.filter = filter;
+    }
+
+    public void addJar(@NotNull Path file) {
+        inputs.add(file);
+    }
+
+    public void addDirectory(@NotNull Path directory) {
+        inputs.add(directory);
+    }
+
+    /**
+     * Change the compression level of the files added from directories, entries of jars keep
+     * their compression.
+     *
+     * @param level the compression level (0-9)
+     */
+    public void setCompressionLevel(int level) {
+        compressionLevel = level;
+    }
+
+    /** Writes the merged jar if it has changed. */
+    @Override
+    public void close() throws IOException {
+        Index previous = readIndex();
+        // the index is only valid once the jar has been fully written
+        Files.deleteIfExists(indexFile);
+        if (previous == null || !previous.jarStamp.equals(stamp(jarFile))) {
+            previous = new Index("");
+        }
+
+        Index index = new Index("");
+        List<List<IndexEntry>> inputEntries = readInputs(previous);
+        for (int i = 0; i < inputs.size(); i++) {
+            String input = inputs.get(i).toString();
+            index.inputs.put(input, stamp(inputs.get(i)));
+            for (IndexEntry entry : inputEntries.get(i)) {
+                IndexEntry duplicate = index.entries.put(entry.name, entry);
+                if (duplicate != null) {
+                    throw new IllegalStateException(
+                            "Entry " + entry.name + " is present in both "
+                                    + duplicate.input + " and " + input);
+                }
+            }
+        }
+
+        // the order of the entries is part of the layout of the jar
+        if (Files.isRegularFile(jarFile)
+                && new ArrayList<>(index.entries.values())
+                        .equals(new ArrayList<>(previous.entries.values()))) {
+            Files.createDirectories(indexFile.getParent());
+            writeIndex(new Index(previous.jarStamp, index));
+            return;
+        }
+
+        Files.createDirectories(jarFile.getParent());
+        Path tempFile = jarFile.resolveSibling(jarFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tempFile);
+        // unchanged entries are copied from the previous jar, so only changed inputs are read
+        ZipMap previousJar = previous.entries.isEmpty() || !Files.isRegularFile(jarFile)
+                ? null
+                : ZipMap.from(jarFile, false);
+        try (ZipArchive archive = new ZipArchive(tempFile)) {
+            Map<Path, ZipMap> inputJars = new HashMap<>();
+            ZipMap runJar = null;
+            ZipSource run = null;
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                for (IndexEntry entry : inputEntries.get(i)) {
+                    ZipMap sourceJar;
+                    if (previousJar != null && entry.equals(previous.entries.get(entry.name))) {
+                        sourceJar = previousJar;
+                    } else if (Files.isDirectory(input)) {
+                        sourceJar = null;
+                    } else {
+                        sourceJar = inputJars.get(input);
+                        if (sourceJar == null) {
+                            sourceJar = ZipMap.from(input, false);
+                            inputJars.put(input, sourceJar);
+                        }
+                    }
+
+                    // consecutive entries of the same jar are copied together, in order
+                    if (run != null && sourceJar != runJar) {
+                        archive.add(run);
+                        run = null;
+                    }
+                    if (sourceJar == null) {
+                        archive.add(Sources.from(input.resolve(entry.name), entry.name,
+                                compressionLevel));
+                        continue;
+                    }
+                    if (run == null) {
+                        run = new ZipSource(sourceJar);
+                        runJar = sourceJar;
+                    }
+                    run.select(entry.name, entry.name);
+                }
+            }
+            if (run != null) {
+                archive.add(run);
+            }
+        }
+        Files.move(tempFile, jarFile, StandardCopyOption.REPLACE_EXISTING);
+
+        Files.createDirectories(indexFile.getParent());
+        writeIndex(new Index(stamp(jarFile), index));
+    }
+
+    /**
+     * Lists the entries of every input concurrently, returned in the order of the inputs. The
+     * entries of a jar that has not changed are taken from the previous index.
+     */
+    @NotNull
+    private List<List<IndexEntry>> readInputs(@NotNull Index previous) throws IOException {
+        Map<String, List<IndexEntry>> previousEntries = new HashMap<>();
+        for (IndexEntry entry : previous.entries.values()) {
+            previousEntries.computeIfAbsent(entry.input, it -> new ArrayList<>()).add(entry);
+        }
+
+        List<Callable<List<IndexEntry>>> tasks = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            tasks.add(() -> {
+                if (Files.isDirectory(input)) {
+                    return readDirectory(input);
+                }
+                String stamp = previous.inputs.get(input.toString());
+                if (stamp != null && stamp.equals(stamp(input))) {
+                    return previousEntries.getOrDefault(input.toString(),
+                            Collections.emptyList());
+                }
+                return readJar(input);
+            });
+        }
+        return ParallelTasks.invokeAll(tasks);
+    }
+
+    @NotNull
+    private List<IndexEntry> readJar(@NotNull Path jar) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        String input = jar.toString();
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if (filter != null && !filter.test(name)) {
+                    continue;
+                }
+                if (name.contains("../")) {
+                    throw new InvalidPathException(name, "Entry name contains invalid characters");
+                }
+                entries.add(new IndexEntry(name, input, entry.getCrc() + ":" + entry.getSize()));
+            }
+        }
+        return entries;
+    }
+
+    @NotNull
+    private List<IndexEntry> readDirectory(@NotNull Path directory) throws IOException {
+        ImmutableSortedMap.Builder<String, String> candidateFiles =
+                ImmutableSortedMap.naturalOrder();
+        Files.walkFileTree(
+                directory,
+                EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        String entryPath =
+                                GFileUtils.toSystemIndependentPath(directory.relativize(file).toString());
+                        if (filter != null && !filter.test(entryPath)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        candidateFiles.put(entryPath,
+                                attrs.size() + ":" + attrs.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+
+        List<IndexEntry> entries = new ArrayList<>();
+        String input = directory.toString();
+        candidateFiles.build().forEach((name, stamp) ->
+                entries.add(new IndexEntry(name, input, stamp)));
+        return entries;
+    }
+
+    @NotNull
+    private static String stamp(@NotNull Path file) {
+        if (!Files.isRegularFile(file)) {
+            return "";
+        }
+        try {
+            return Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Nullable
+    private Index readIndex() {
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            if (!INDEX_VERSION.equals(reader.readLine())) {
+                return null;
+            }
+            Index index = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                switch (parts[0]) {
+                    case JAR_LINE:
+                        index = new Index(parts[1]);
+                        break;
+                    case INPUT_LINE:
+                        Objects.requireNonNull(index).inputs.put(parts[1], parts[2]);
+                        break;
+                    case ENTRY_LINE:
+                        IndexEntry entry = new IndexEntry(parts[1], parts[2], parts[3]);
+                        Objects.requireNonNull(index).entries.put(entry.name, entry);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return index;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void writeIndex(@NotNull Index index) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+            writer.write(INDEX_VERSION);
+            writer.newLine();
+            writer.write(JAR_LINE + "\t" + index.jarStamp);
+            writer.newLine();
+            for (Map.Entry<String, String> input : index.inputs.entrySet()) {
+                writer.write(INPUT_LINE + "\t" + input.getKey() + "\t" + input.getValue());
+                writer.newLine();
+            }
+            for (IndexEntry entry : index.entries.values()) {
+                writer.write(ENTRY_LINE + "\t" + entry.name + "\t" + entry.input + "\t"
+                        + entry.stamp);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static final class Index {
+        @NotNull private final String jarStamp;
+        private final Map<String, String> inputs = new LinkedHashMap<>();
+        private final Map<String, IndexEntry> entries = new LinkedHashMap<>();
+
+        Index(@NotNull String jarStamp) {
+            this.jarStamp = jarStamp;
+        }
+
+        Index(@NotNull String jarStamp, @NotNull Index other) {
+            this(jarStamp);
+            inputs.putAll(other.inputs);
+            entries.putAll(other.entries);
+        }
+    }
+
+    private static final class IndexEntry {
+        @NotNull private final String name;
+        @NotNull private final String input;
+        @NotNull private final String stamp;
+
+        IndexEntry(@NotNull String name, @NotNull String input, @NotNull String stamp) {
+            this.name = name;
+            this.input = input;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IndexEntry)) {
+                return false;
+            }
+            IndexEntry that = (IndexEntry) o;
+            return name.equals(that.name) && input.equals(that.input) && stamp.equals(that.stamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, input, stamp);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.tyron.builder.gradle.internal.tasks
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.Random
+
+class CompressAssetsWorkActionTest {
+    @get:Rule val temporaryFolder = TemporaryFolder()
+
+    private fun asset(name: String, contents: ByteArray) =
+        temporaryFolder.newFile(name).toPath().also { it.toFile().writeBytes(contents) }
+
+    private fun text(size: Int): ByteArray {
+        val line = "The quick brown fox jumps over the lazy dog.\n".toByteArray()
+        return ByteArray(size) { line[it % line.size] }
+    }
+
+    private fun random(size: Int) = ByteArray(size).also {
+        Random(42).nextBytes(it)
+        // no known signature, only the sample can tell it is compressed
+        it[0] = 0
+    }
+
+    @Test fun textAssetIsCompressible() {
+        assertThat(CompressAssetsWorkAction.isIncompressible(asset("text.txt", text(256 * 1024))))
+            .isFalse()
+    }
+
+    @Test fun knownSignatureIsIncompressible() {
+        val contents = text(256 * 1024)
+        byteArrayOf(0x50, 0x4B, 0x03, 0x04).copyInto(contents)
+        assertThat(CompressAssetsWorkAction.isIncompressible(asset("archive.bin", contents)))
+            .isTrue()
+    }
+
+    @Test fun contentsThatDoNotShrinkAreIncompressible() {
+        assertThat(CompressAssetsWorkAction.isIncompressible(asset("data.bin", random(256 * 1024))))
+            .isTrue()
+    }
+
+    @Test fun smallAssetsAreAlwaysCompressed() {
+        val contents = random(1024)
+        byteArrayOf(0x1F, 0x8B.toByte()).copyInto(contents)
+        assertThat(CompressAssetsWorkAction.isIncompressible(asset("small.gz", contents)))
+            .isFalse()
+    }
+}
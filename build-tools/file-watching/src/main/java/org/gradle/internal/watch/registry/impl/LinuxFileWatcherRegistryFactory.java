@@ -1,9 +1,7 @@
 package org.gradle.internal.watch.registry.impl;
 
-import static net.rubygrapefruit.platform.internal.jni.LinuxFileEventFunctions.*;
+import static org.gradle.internal.watch.registry.impl.HierarchicalFileWatcherUpdater.FileSystemLocationToWatchValidator.NO_VALIDATION;
 
-import org.gradle.internal.file.FileType;
-import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.watch.registry.FileWatcherProbeRegistry;
 import org.gradle.internal.watch.registry.FileWatcherUpdater;
 
@@ -13,96 +11,325 @@ import net.rubygrapefruit.platform.file.FileWatcher;
 import net.rubygrapefruit.platform.internal.jni.AbstractFileEventFunctions;
 import net.rubygrapefruit.platform.internal.jni.InsufficientResourcesForWatchingException;
 
-import org.apache.commons.vfs2.FileChangeEvent;
-import org.apache.commons.vfs2.FileListener;
-import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.impl.DefaultFileMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
+/**
+ * Watches the file system on Linux and Android through {@link WatchService}, which is backed by
+ * inotify, instead of periodically polling the watched hierarchies.
+ */
 public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistryFactory<LinuxFileWatcherRegistryFactory.LinuxFileEventFunctions, LinuxFileWatcherRegistryFactory.LinuxFileWatcher> {
 
-    private final BlockingQueue<FileWatchEvent> queue = new ArrayBlockingQueue<>(10);
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinuxFileWatcherRegistryFactory.class);
+
+    /**
+     * Events arriving within this window are coalesced before they are reported
+     */
+    private static final long COALESCING_WINDOW_MILLIS = 20;
+
+    /**
+     * Receives the events of a {@link LinuxFileWatcher}, bridging to the callback of the event functions.
+     */
+    protected interface FileEventCallback {
+        void reportChangeEvent(FileWatchEvent.ChangeType type, String absolutePath);
 
+        void reportOverflow(String absolutePath);
+
+        void reportFailure(Throwable failure);
+
+        void reportTermination();
+    }
+
+    /**
+     * Watches hierarchies recursively: every directory below a watched root is registered with
+     * the {@link WatchService}, and directories created later are registered as they appear.
+     */
     protected static class LinuxFileWatcher implements FileWatcher {
 
-        private final FileSystemManager manager;
-        private DefaultFileMonitor fileMonitor;
-        private final FileListener fileListener;
+        private final WatchService watchService;
+        private final FileEventCallback callback;
+        private final Thread eventThread;
 
-        public LinuxFileWatcher(FileListener fileListener) {
-            try {
-                manager = VFS.getManager();
-            } catch (FileSystemException e) {
-                throw new RuntimeException(e);
-            }
-            this.fileListener = fileListener;
+        private final Set<Path> roots = new HashSet<>();
+        private final Map<WatchKey, Path> directoriesByKey = new HashMap<>();
+        private final Map<Path, WatchKey> keysByDirectory = new HashMap<>();
+
+        public LinuxFileWatcher(FileEventCallback callback) throws IOException {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.callback = callback;
+            this.eventThread = new Thread(this::processEvents, "File watcher server");
+            this.eventThread.setDaemon(true);
+            this.eventThread.start();
         }
 
         @Override
         public void startWatching(Collection<File> collection) throws InsufficientResourcesForWatchingException {
-            if (fileMonitor != null) {
-                return;
+            List<IOException> failures = new ArrayList<>();
+            synchronized (this) {
+                for (File file : collection) {
+                    Path root = file.toPath().toAbsolutePath().normalize();
+                    if (roots.add(root)) {
+                        try {
+                            registerAll(root, null);
+                        } catch (IOException e) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }
+            // the callback is never called while holding the lock, it may call back into the watcher
+            for (IOException failure : failures) {
+                callback.reportFailure(failure);
             }
-
-            List<FileObject> files = resolveFileObjects(collection);
-            fileMonitor = new DefaultFileMonitor(fileListener);
-            fileMonitor.setRecursive(true);
-            files.forEach(fileMonitor::addFile);
-            fileMonitor.start();
         }
 
         @Override
         public boolean stopWatching(Collection<File> collection) {
-            if (fileMonitor == null) {
-                return false;
+            boolean allRemoved = true;
+            synchronized (this) {
+                for (File file : collection) {
+                    Path root = file.toPath().toAbsolutePath().normalize();
+                    allRemoved &= roots.remove(root);
+                    unregisterAll(root);
+                }
             }
-            List<FileObject> fileObjects = resolveFileObjects(collection);
-            fileObjects.forEach(fileMonitor::removeFile);
-            return true;
+            return allRemoved;
         }
 
-        private List<FileObject> resolveFileObjects(Collection<File> collection) {
-            return collection.stream()
-                    .map(File::toString)
-                    .map(path -> {
-                        try {
-                            return manager.resolveFile(path);
-                        } catch (FileSystemException e) {
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+        /**
+         * Stops watching the roots whose directory is gone or has been replaced without an
+         * event reaching the watcher.
+         */
+        public Collection<File> stopWatchingMovedPaths() {
+            List<File> moved = new ArrayList<>();
+            synchronized (this) {
+                Iterator<Path> iterator = roots.iterator();
+                while (iterator.hasNext()) {
+                    Path root = iterator.next();
+                    WatchKey key = keysByDirectory.get(root);
+                    if (key == null || !key.isValid() || !Files.isDirectory(root)) {
+                        iterator.remove();
+                        unregisterAll(root);
+                        moved.add(root.toFile());
+                    }
+                }
+            }
+            return moved;
         }
 
         @Override
         public void shutdown() {
-            if (fileMonitor != null) {
-                fileMonitor.stop();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close the watch service", e);
             }
         }
 
         @Override
-        public boolean awaitTermination(long l, TimeUnit timeUnit) throws InterruptedException {
-            shutdown();
-            return true;
+        public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException {
+            eventThread.join(timeUnit.toMillis(timeout));
+            return !eventThread.isAlive();
+        }
+
+        /**
+         * Registers the directory and all the directories below it, reporting failures to the
+         * callback. Must not be called while holding the lock.
+         *
+         * @param created receives the files found as created, used for directories that
+         *                appeared after their parent was registered, may be null
+         */
+        private void register(Path start, @Nullable Map<Path, FileWatchEvent.ChangeType> created) {
+            try {
+                registerAll(start, created);
+            } catch (IOException e) {
+                callback.reportFailure(e);
+            }
+        }
+
+        /**
+         * Registers the directory and all the directories below it. Only collects the files
+         * found, they are reported by the caller once the lock is released.
+         */
+        private synchronized void registerAll(Path start, @Nullable Map<Path, FileWatchEvent.ChangeType> created) throws IOException {
+            if (!Files.isDirectory(start)) {
+                return;
+            }
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (!keysByDirectory.containsKey(dir)) {
+                            WatchKey key = dir.register(watchService,
+                                    StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_DELETE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY);
+                            directoriesByKey.put(key, dir);
+                            keysByDirectory.put(dir, key);
+                        }
+                        if (created != null && !dir.equals(start)) {
+                            coalesce(created, dir, FileWatchEvent.ChangeType.CREATED);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (created != null) {
+                            coalesce(created, file, FileWatchEvent.ChangeType.CREATED);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // removed while walking, its deletion is reported by the parent
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (ClosedWatchServiceException e) {
+                // shutting down
+            }
+        }
+
+        private synchronized void unregisterAll(Path start) {
+            Iterator<Map.Entry<Path, WatchKey>> iterator = keysByDirectory.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, WatchKey> entry = iterator.next();
+                if (!entry.getKey().startsWith(start) || isUnderOtherRoot(entry.getKey(), start)) {
+                    continue;
+                }
+                entry.getValue().cancel();
+                directoriesByKey.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        private boolean isUnderOtherRoot(Path directory, Path removedRoot) {
+            for (Path root : roots) {
+                if (!root.equals(removedRoot) && directory.startsWith(root)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void processEvents() {
+            Map<Path, FileWatchEvent.ChangeType> pending = new LinkedHashMap<>();
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    // gather everything that arrives within the window so that bursts of events
+                    // for the same path, e.g. a create followed by several modifications, are
+                    // reported once
+                    while (key != null) {
+                        processKey(key, pending);
+                        key = watchService.poll(COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    for (Map.Entry<Path, FileWatchEvent.ChangeType> entry : pending.entrySet()) {
+                        report(entry.getValue(), entry.getKey());
+                    }
+                    pending.clear();
+                }
+            } catch (ClosedWatchServiceException e) {
+                // shut down
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                callback.reportFailure(e);
+            }
+            callback.reportTermination();
+        }
+
+        private void processKey(WatchKey key, Map<Path, FileWatchEvent.ChangeType> pending) {
+            Path directory;
+            synchronized (this) {
+                directory = directoriesByKey.get(key);
+            }
+            if (directory == null) {
+                key.cancel();
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    handleOverflow(directory);
+                    continue;
+                }
+
+                Path path = directory.resolve((Path) event.context());
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    coalesce(pending, path, FileWatchEvent.ChangeType.CREATED);
+                    if (Files.isDirectory(path)) {
+                        register(path, pending);
+                    }
+                } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    coalesce(pending, path, FileWatchEvent.ChangeType.REMOVED);
+                } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+                    coalesce(pending, path, FileWatchEvent.ChangeType.MODIFIED);
+                }
+            }
+
+            if (!key.reset()) {
+                // the directory is gone, its removal has been reported by its parent
+                synchronized (this) {
+                    directoriesByKey.remove(key);
+                    keysByDirectory.remove(directory);
+                }
+            }
+        }
+
+        /**
+         * Events for the directory have been lost. The directory is invalidated so the VFS
+         * snapshots it again, and its subdirectories are rescanned so that directories created
+         * in the meantime are watched as well.
+         */
+        private void handleOverflow(Path directory) {
+            LOGGER.debug("Overflow while watching {}, rescanning", directory);
+            callback.reportOverflow(directory.toString());
+            register(directory, null);
+        }
+
+        private static void coalesce(Map<Path, FileWatchEvent.ChangeType> pending, Path path, FileWatchEvent.ChangeType type) {
+            FileWatchEvent.ChangeType previous = pending.get(path);
+            if (previous == FileWatchEvent.ChangeType.CREATED && type == FileWatchEvent.ChangeType.MODIFIED) {
+                // still a new file as far as the listeners are concerned
+                return;
+            }
+            pending.put(path, type);
         }
 
-        public Collection<File> stopWatchingMovedPaths(Collection<File> directoriesToCheck) {
-            return Collections.emptyList();
+        private void report(FileWatchEvent.ChangeType type, Path path) {
+            callback.reportChangeEvent(type, path.toString());
         }
     }
 
@@ -126,83 +353,50 @@ public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistry
                                                          long l,
                                                          TimeUnit timeUnit,
                                                          NativeFileWatcherCallback nativeFileWatcherCallback) throws InterruptedException {
-                    return new LinuxFileWatcher(new FileListener() {
-                        @Override
-                        public void fileCreated(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(FileWatchEvent.ChangeType.CREATED.ordinal(), fileObject.getPath().toString());
-                        }
-
-                        @Override
-                        public void fileDeleted(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.REMOVED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-
-                        @Override
-                        public void fileChanged(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.MODIFIED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-                    });
+                    try {
+                        return new LinuxFileWatcher(new FileEventCallback() {
+                            @Override
+                            public void reportChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
+                                nativeFileWatcherCallback.reportChangeEvent(type.ordinal(), absolutePath);
+                            }
+
+                            @Override
+                            public void reportOverflow(String absolutePath) {
+                                nativeFileWatcherCallback.reportOverflow(absolutePath);
+                            }
+
+                            @Override
+                            public void reportFailure(Throwable failure) {
+                                nativeFileWatcherCallback.reportFailure(failure);
+                            }
+
+                            @Override
+                            public void reportTermination() {
+                                nativeFileWatcherCallback.reportTermination();
+                            }
+                        });
+                    } catch (IOException e) {
+                        throw new NativeIntegrationUnavailableException("Unable to create a watch service: " + e.getMessage());
+                    }
                 }
             };
         }
     }
 
-    private int getChangeTypeIndex(FileWatchEvent.ChangeType event) {
-        return event.ordinal();
-    }
-
     public LinuxFileWatcherRegistryFactory(Predicate<String> watchFilter) throws NativeIntegrationUnavailableException {
         super(new LinuxFileEventFunctions(), watchFilter);
     }
 
     @Override
     protected LinuxFileWatcher createFileWatcher(BlockingQueue<FileWatchEvent> fileEvents) throws InterruptedException {
-        AbstractWatcherBuilder<LinuxFileWatcher> linuxFileWatcherAbstractWatcherBuilder =
+        AbstractFileEventFunctions.AbstractWatcherBuilder<LinuxFileWatcher> linuxFileWatcherAbstractWatcherBuilder =
                 this.fileEventFunctions.newWatcher(fileEvents);
         return linuxFileWatcherAbstractWatcherBuilder.start();
     }
 
     @Override
     protected FileWatcherUpdater createFileWatcherUpdater(LinuxFileWatcher watcher, FileWatcherProbeRegistry probeRegistry, WatchableHierarchies watchableHierarchies) {
-        return new NonHierarchicalFileWatcherUpdater(watcher, probeRegistry, watchableHierarchies, new LinuxMovedDirectoryHandler(watcher, watchableHierarchies));
-    }
-
-    private static class LinuxMovedDirectoryHandler implements AbstractFileWatcherUpdater.MovedDirectoryHandler {
-        private final LinuxFileWatcher watcher;
-        private final WatchableHierarchies watchableHierarchies;
-
-        public LinuxMovedDirectoryHandler(LinuxFileWatcher watcher, WatchableHierarchies watchableHierarchies) {
-            this.watcher = watcher;
-            this.watchableHierarchies = watchableHierarchies;
-        }
-
-        @Override
-        public Collection<File> stopWatchingMovedDirectories(SnapshotHierarchy vfsRoot) {
-            Collection<File> directoriesToCheck = vfsRoot.rootSnapshots()
-                    .filter(snapshot -> snapshot.getType() != FileType.Missing)
-                    .filter(watchableHierarchies::shouldWatch)
-                    .map(snapshot -> {
-                        switch (snapshot.getType()) {
-                            case RegularFile:
-                                return new File(snapshot.getAbsolutePath()).getParentFile();
-                            case Directory:
-                                return new File(snapshot.getAbsolutePath());
-                            default:
-                                throw new IllegalArgumentException("Unexpected file type:" + snapshot.getType());
-                        }
-                    })
-                    .collect(Collectors.toList());
-            return watcher.stopWatchingMovedPaths(directoriesToCheck);
-        }
+        // the watcher registers whole hierarchies, so only the roots have to be tracked
+        return new HierarchicalFileWatcherUpdater(watcher, NO_VALIDATION, probeRegistry, watchableHierarchies, root -> watcher.stopWatchingMovedPaths());
     }
 }
-
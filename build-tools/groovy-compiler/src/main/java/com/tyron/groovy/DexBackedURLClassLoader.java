@@ -10,10 +10,6 @@ import com.google.common.hash.HashCode;
 import org.gradle.api.GradleException;
 import org.gradle.internal.classloader.AppDataDirGuesser;
 import org.gradle.internal.classpath.ClassPath;
-import org.gradle.internal.hash.DefaultFileHasher;
-import org.gradle.internal.hash.DefaultStreamHasher;
-import org.gradle.internal.hash.FileHasher;
-
 import org.gradle.internal.hash.Hashes;
 import org.gradle.util.internal.GFileUtils;
 import org.jetbrains.annotations.Nullable;
@@ -28,8 +24,11 @@ import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dalvik.system.BaseDexClassLoader;
 import dalvik.system.DexClassLoader;
@@ -61,10 +60,15 @@ public class DexBackedURLClassLoader extends DexClassLoader {
 
     }
     private final URLClassLoader fakeClassLoader;
-    private final FileHasher hasher = new DefaultFileHasher(new DefaultStreamHasher());
 
     private final Set<URL> loadedUrls = new HashSet<>();
 
+    /**
+     * Class name to dex file of the jars of this class loader that have been dexed
+     */
+    private final Map<String, File> classIndex = new ConcurrentHashMap<>();
+    private final Set<File> addedDexFiles = ConcurrentHashMap.newKeySet();
+
     public DexBackedURLClassLoader(ClassLoader parent) {
         this("", parent, ClassPath.EMPTY);
     }
@@ -92,6 +96,12 @@ public class DexBackedURLClassLoader extends DexClassLoader {
         try {
             return super.findClass(name);
         } catch (ClassNotFoundException e) {
+            File dexFile = classIndex.get(name);
+            if (dexFile != null && addedDexFiles.add(dexFile)) {
+                addDexPathPublic(dexFile.getAbsolutePath());
+                return super.findClass(name);
+            }
+
             // compile the file
             String resourcePath = name.replace('.', '/') + ".class";
             URL resource = fakeClassLoader.getResource(resourcePath);
@@ -148,24 +158,38 @@ public class DexBackedURLClassLoader extends DexClassLoader {
 
 
     protected void compileJar(String path) {
-        File dexCache = new File(new AppDataDirGuesser().guess(), "dexCache");
         File file = new File(URI.create(path).getPath());
 
-        HashCode hashCode = hasher.hash(file);
-        File jarDir = new File(dexCache, hashCode.toString());
-        if (!jarDir.exists()) {
-            GFileUtils.mkdirs(jarDir);
-            ScriptFactory.dexJar(file, jarDir);
-        }
+        DexCache.Entry entry = DexCache.getInstance().getEntry(file);
+        index(entry);
 
-        File[] dexFiles = jarDir.listFiles(c -> c.getName().endsWith(".dex"));
+        File[] dexFiles = entry.getDirectory().listFiles(c -> c.getName().endsWith(".dex"));
         if (dexFiles != null) {
             for (File dexFile : dexFiles) {
-                addDexPathPublic(dexFile.getAbsolutePath());
+                if (addedDexFiles.add(dexFile)) {
+                    addDexPathPublic(dexFile.getAbsolutePath());
+                }
             }
         }
     }
 
+    /**
+     * Dexes the given jars in parallel and indexes their classes. The dex files are only added
+     * to this class loader once a class from them is requested.
+     */
+    protected void warmUp(Collection<File> jars) {
+        for (DexCache.Entry entry : DexCache.getInstance().warmUp(jars)) {
+            index(entry);
+        }
+    }
+
+    private void index(DexCache.Entry entry) {
+        // earlier jars in the classpath take precedence
+        for (Map.Entry<String, File> indexEntry : entry.getClassIndex().entrySet()) {
+            classIndex.putIfAbsent(indexEntry.getKey(), indexEntry.getValue());
+        }
+    }
+
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
         return super.loadClass(name);
@@ -0,0 +1,360 @@
+package com.tyron.groovy;
+
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.DexIndexedConsumer;
+import com.android.tools.r8.DiagnosticsHandler;
+
+import org.gradle.internal.classloader.AppDataDirGuesser;
+import org.gradle.internal.hash.CachingFileHasher;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.util.internal.GFileUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of dexed jars, shared by every {@link DexBackedURLClassLoader} in the
+ * process.
+ *
+ * <p>Each jar is dexed once into {@code dexCache/<content hash>} and an index of
+ * class name to dex file is written next to the dex files, so a class loader only needs a map
+ * lookup and {@code addDexPath} to load a class instead of searching the jars and
+ * running D8 on the first miss. {@link #warmUp(Collection)} dexes a whole classpath in
+ * parallel up front.
+ */
+public class DexCache {
+
+    private static final String INDEX_FILE_NAME = "classes.idx";
+    private static final String RECENT_CLASSPATH_FILE_NAME = "recent-classpath.txt";
+    /**
+     * The number of jars remembered for the warm up of the next session, the least recently
+     * used jars are forgotten first
+     */
+    private static final int MAX_RECENT_JARS = 256;
+
+    private static DexCache sInstance;
+
+    public static synchronized DexCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new DexCache(new File(new AppDataDirGuesser().guess(), "dexCache"));
+        }
+        return sInstance;
+    }
+
+    private final File cacheDir;
+    /**
+     * Remembers the content hashes of the jars seen by this process so that unchanged jars
+     * are not hashed again
+     */
+    private final FileHasher hasher = new CachingFileHasher(new DefaultFileHasher(new DefaultStreamHasher()));
+    private final ExecutorService executor;
+
+    /**
+     * Dexed entries by content hash of the jar
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * The jars used by this session in access order, guarded by itself
+     */
+    private final Map<File, Boolean> recentClasspath =
+            new LinkedHashMap<File, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<File, Boolean> eldest) {
+                    return size() > MAX_RECENT_JARS;
+                }
+            };
+
+    public DexCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        int poolSize = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "dex-cache-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Dexes every jar in the given classpath that is not yet in the cache, in parallel.
+     *
+     * @return the entries of the given jars, in classpath order
+     */
+    public List<Entry> warmUp(Collection<File> classPath) {
+        List<Future<Entry>> futures = new ArrayList<>(classPath.size());
+        for (File file : classPath) {
+            if (file.isFile()) {
+                futures.add(executor.submit(() -> getEntry(file, false)));
+            }
+        }
+
+        List<Entry> result = new ArrayList<>(futures.size());
+        for (Future<Entry> future : futures) {
+            try {
+                result.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScriptCompilationException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ScriptCompilationException(e.getCause());
+            }
+        }
+
+        // the whole classpath is recorded at once instead of once per jar
+        if (addRecentJars(classPath)) {
+            writeRecentClasspath();
+        }
+        return result;
+    }
+
+    /**
+     * Warms up the jars that were used by the build scripts of the previous session in the
+     * background. Jars that are still in the cache only have their index loaded.
+     */
+    public void warmUpRecentClasspathAsync() {
+        executor.execute(() -> {
+            File recentFile = new File(cacheDir, RECENT_CLASSPATH_FILE_NAME);
+            if (!recentFile.isFile()) {
+                return;
+            }
+            List<File> jars = new ArrayList<>();
+            try {
+                for (String line : Files.readAllLines(recentFile.toPath(),
+                        StandardCharsets.UTF_8)) {
+                    if (!line.isEmpty()) {
+                        jars.add(new File(line));
+                    }
+                }
+            } catch (IOException e) {
+                return;
+            }
+            for (File jar : jars) {
+                if (jar.isFile()) {
+                    executor.execute(() -> getEntry(jar));
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the dexed entry of the given jar, running D8 if the jar is not in the cache.
+     */
+    public Entry getEntry(File jar) {
+        return getEntry(jar, true);
+    }
+
+    private Entry getEntry(File jar, boolean recordRecent) {
+        String hash = getJarHash(jar);
+
+        Entry entry = entries.get(hash);
+        if (entry != null) {
+            return entry;
+        }
+
+        synchronized (locks.computeIfAbsent(hash, k -> new Object())) {
+            entry = entries.get(hash);
+            if (entry == null) {
+                File jarDir = new File(cacheDir, hash);
+                entry = readEntry(jarDir);
+                if (entry == null) {
+                    entry = dexJar(jar, jarDir);
+                }
+                entries.put(hash, entry);
+            }
+        }
+
+        if (recordRecent && addRecentJars(Collections.singleton(jar))) {
+            writeRecentClasspath();
+        }
+        return entry;
+    }
+
+    /**
+     * @return whether a jar that was not used by this session yet has been added
+     */
+    private boolean addRecentJars(Collection<File> jars) {
+        boolean added = false;
+        synchronized (recentClasspath) {
+            for (File jar : jars) {
+                if (jar.isFile()) {
+                    added |= recentClasspath.put(jar, Boolean.TRUE) == null;
+                }
+            }
+        }
+        return added;
+    }
+
+    private String getJarHash(File jar) {
+        return hasher.hash(jar).toString();
+    }
+
+    private Entry dexJar(File jar, File jarDir) {
+        // a directory without an index is the leftover of an interrupted dex, start over
+        GFileUtils.deleteQuietly(jarDir);
+        GFileUtils.mkdirs(jarDir);
+
+        IndexingDexConsumer consumer = new IndexingDexConsumer(jarDir);
+        ScriptFactory.dexJar(jar, consumer);
+        if (consumer.failure != null) {
+            GFileUtils.deleteQuietly(jarDir);
+            throw consumer.failure;
+        }
+
+        Map<String, File> index = consumer.index;
+        writeIndex(jarDir, index);
+        return new Entry(jarDir, index);
+    }
+
+    @Nullable
+    private Entry readEntry(File jarDir) {
+        File indexFile = new File(jarDir, INDEX_FILE_NAME);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        Map<String, File> index = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator == -1) {
+                    continue;
+                }
+                File dexFile = new File(jarDir, line.substring(separator + 1));
+                index.put(line.substring(0, separator), dexFile);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return new Entry(jarDir, index);
+    }
+
+    private static void writeIndex(File jarDir, Map<String, File> index) {
+        File tempFile = new File(jarDir, INDEX_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, File> entry : index.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue().getName());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // the index is written last and atomically, its presence marks a complete entry
+        if (!tempFile.renameTo(new File(jarDir, INDEX_FILE_NAME))) {
+            throw new UncheckedIOException(new IOException("Unable to write dex index of " + jarDir));
+        }
+    }
+
+    private synchronized void writeRecentClasspath() {
+        File recentFile = new File(cacheDir, RECENT_CLASSPATH_FILE_NAME);
+        List<String> paths = new ArrayList<>();
+        synchronized (recentClasspath) {
+            // jars deleted since they have been used are not worth warming up
+            recentClasspath.keySet().removeIf(file -> !file.isFile());
+            for (File file : recentClasspath.keySet()) {
+                paths.add(file.getAbsolutePath());
+            }
+        }
+        try {
+            GFileUtils.mkdirs(cacheDir);
+            Files.write(recentFile.toPath(), paths, StandardCharsets.UTF_8);
+        } catch (IOException ignored) {
+            // only used as a hint for the next warm up
+        }
+    }
+
+    /**
+     * The dex files of a single jar and the index of the classes it contains.
+     */
+    public static class Entry {
+        private final File directory;
+        private final Map<String, File> classIndex;
+
+        Entry(File directory, Map<String, File> classIndex) {
+            this.directory = directory;
+            this.classIndex = classIndex;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public Map<String, File> getClassIndex() {
+            return classIndex;
+        }
+    }
+
+    /**
+     * Writes the dex files produced by D8 and records which classes went into which file.
+     */
+    private static class IndexingDexConsumer implements DexIndexedConsumer {
+
+        private final File outputDir;
+        private final Map<String, File> index = new ConcurrentHashMap<>();
+        private volatile RuntimeException failure;
+
+        IndexingDexConsumer(File outputDir) {
+            this.outputDir = outputDir;
+        }
+
+        @Override
+        public void accept(int fileIndex,
+                           ByteDataView data,
+                           Set<String> descriptors,
+                           DiagnosticsHandler handler) {
+            String name = fileIndex == 0 ? "classes.dex" : "classes" + (fileIndex + 1) + ".dex";
+            File dexFile = new File(outputDir, name);
+            try {
+                Files.write(dexFile.toPath(), data.copyByteData());
+            } catch (IOException e) {
+                failure = new UncheckedIOException(e);
+                return;
+            }
+            for (String descriptor : descriptors) {
+                index.put(descriptorToClassName(descriptor), dexFile);
+            }
+        }
+
+        @Override
+        public void finished(DiagnosticsHandler handler) {
+
+        }
+
+        private static String descriptorToClassName(String descriptor) {
+            // Lcom/example/Foo$Bar; -> com.example.Foo$Bar
+            return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        }
+    }
+}
@@ -220,12 +220,7 @@ public class ScriptFactory {
     }
 
     public static File dexJar(File inputJar, File outputDir) {
-        D8Command.Builder builder = D8Command.builder();
-        builder.setMode(CompilationMode.DEBUG);
-        builder.setMinApiLevel(26);
-        builder.addProgramFiles(inputJar.toPath());
-        builder.addLibraryFiles(Paths.get("/data/data/com.tyron.code/files/core-lambda-stubs.jar"));
-        builder.addLibraryFiles(Paths.get("/data/data/com.tyron.code/files/rt.jar"));
+        D8Command.Builder builder = createJarDexBuilder(inputJar);
         builder.setOutput(outputDir.toPath(), OutputMode.DexIndexed);
         try {
             D8.run(builder.build());
@@ -235,6 +230,30 @@ public class ScriptFactory {
         return new File(outputDir, "classes.dex");
     }
 
+    /**
+     * Dexes the given jar, passing each produced dex file along with the descriptors of the
+     * classes it contains to the given consumer.
+     */
+    public static void dexJar(File inputJar, DexIndexedConsumer consumer) {
+        D8Command.Builder builder = createJarDexBuilder(inputJar);
+        builder.setProgramConsumer(consumer);
+        try {
+            D8.run(builder.build());
+        } catch (CompilationFailedException e) {
+            throw new ScriptCompilationException(e);
+        }
+    }
+
+    private static D8Command.Builder createJarDexBuilder(File inputJar) {
+        D8Command.Builder builder = D8Command.builder();
+        builder.setMode(CompilationMode.DEBUG);
+        builder.setMinApiLevel(26);
+        builder.addProgramFiles(inputJar.toPath());
+        builder.addLibraryFiles(Paths.get("/data/data/com.tyron.code/files/core-lambda-stubs.jar"));
+        builder.addLibraryFiles(Paths.get("/data/data/com.tyron.code/files/rt.jar"));
+        return builder;
+    }
+
     public static Class<?> loadClass(List<File> classPath, ClassLoader parent, String name) throws ClassNotFoundException {
         String join = Joiner.on(File.pathSeparator).join(classPath);
         PathClassLoader classLoader = new PathClassLoader(join, parent);
@@ -35,15 +35,30 @@ object ServiceLoaderLite {
         }
 
         if (isDalvik() == true) {
-            val classpath = classLoader.urLs.joinToString(separator = File.pathSeparator) {
-                it.path
-            }
-            val loader = DexClassLoader(classpath, "", "", this::class.java.classLoader)
-            return loadImplementations(service, files, loader)
+            return loadImplementations(service, files, dexClassLoaderFactory.create(files))
         }
         return loadImplementations(service, files, classLoader);
     }
 
+    /**
+     * Creates the class loader of the roots of a [URLClassLoader] on Dalvik, which cannot load
+     * classes through a [URLClassLoader].
+     */
+    fun interface DexClassLoaderFactory {
+        fun create(files: List<File>): ClassLoader
+    }
+
+    /**
+     * Creates a new [DexClassLoader] for every lookup by default, it can be replaced to reuse
+     * the class loaders of the same roots.
+     */
+    @Volatile
+    @JvmStatic
+    var dexClassLoaderFactory = DexClassLoaderFactory { files ->
+        val classpath = files.joinToString(separator = File.pathSeparator) { it.path }
+        DexClassLoader(classpath, "", "", ServiceLoaderLite::class.java.classLoader)
+    }
+
     fun <Service> loadImplementations(service: Class<out Service>, files: List<File>, classLoader: ClassLoader): MutableList<Service> {
         val implementations = mutableListOf<Service>()
 
@@ -12,18 +12,20 @@ import com.tyron.lint.api.Detector.JavaScanner;
 import com.tyron.lint.api.JavaContext;
 import com.tyron.lint.api.JavaVoidVisitor;
 
-import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.IdentifierTree;
 import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodInvocationTree;
-import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.tree.VariableTree;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JavaVisitor {
 
@@ -64,28 +66,76 @@ public class JavaVisitor {
     }
 
     public void visitFile(JavaContext context) {
+        visitFiles(Collections.singletonList(context));
+    }
+
+    /**
+     * Compiles the given files in a single batch and runs every detector over each file in one
+     * traversal of its tree.
+     *
+     * @return the contexts of the files that were analyzed
+     */
+    public List<JavaContext> visitFiles(List<JavaContext> contexts) {
+        List<JavaContext> analyzed = new ArrayList<>(contexts.size());
+        if (contexts.isEmpty()) {
+            return analyzed;
+        }
+        Path[] paths = new Path[contexts.size()];
+        for (int i = 0; i < contexts.size(); i++) {
+            paths[i] = contexts.get(i).file.toPath();
+        }
         try {
-            CompilerContainer container = mCompiler.compile(context.file.toPath());
+            CompilerContainer container = mCompiler.compile(paths);
             container.run(task -> {
-                Tree compilationUnit = task.root();
-                context.setCompileTask(task);
+                for (JavaContext context : contexts) {
+                    CompilationUnitTree compilationUnit = task.root(context.file);
+                    if (compilationUnit == null) {
+                        continue;
+                    }
+                    context.setCompileTask(task);
+                    context.setCompilationUnit(compilationUnit);
 
-                for (VisitingDetector v : mAllDetectors) {
-                    v.setContext(context);
-                }
+                    for (VisitingDetector v : mAllDetectors) {
+                        v.setContext(context);
+                    }
 
-                if (!mMethodDetectors.isEmpty()) {
-                    JavaVoidVisitor visitor = new DelegatingJavaVisitor(context);
-                    compilationUnit.accept(visitor, null);
-                } else if (!mTreeTypeDetectors.isEmpty()) {
-                    JavaVoidVisitor visitor = new DispatchVisitor();
-                    compilationUnit.accept(visitor, null);
+                    if (!mMethodDetectors.isEmpty()) {
+                        JavaVoidVisitor visitor = new DelegatingJavaVisitor(context);
+                        visitor.scan(compilationUnit, null);
+                    } else if (!mTreeTypeDetectors.isEmpty()) {
+                        JavaVoidVisitor visitor = new DispatchVisitor();
+                        visitor.scan(compilationUnit, null);
+                    }
+                    analyzed.add(context);
                 }
             });
         } catch (Throwable e) {
             Log.e("Lint", "Failed to analyze file", e);
             ((JavaCompilerService) mCompiler).destroy();
+            analyzed.clear();
+        }
+        return analyzed;
+    }
+
+    @NonNull
+    public List<Detector> getDetectors() {
+        List<Detector> detectors = new ArrayList<>(mAllDetectors.size());
+        for (VisitingDetector v : mAllDetectors) {
+            detectors.add(v.getDetector());
         }
+        return detectors;
+    }
+
+    /**
+     * Returns the time spent in each detector since this visitor was created, in nanoseconds
+     */
+    @NonNull
+    public Map<Detector, Long> getDetectorTimes() {
+        Map<Detector, Long> times = new LinkedHashMap<>();
+        for (VisitingDetector v : mAllDetectors) {
+            times.put(v.getDetector(), v.mTime.get());
+        }
+        return times;
     }
 
     private static class VisitingDetector {
@@ -93,6 +143,7 @@ public class JavaVisitor {
         private JavaContext mContext;
         public final Detector mDetector;
         public final JavaScanner mScanner;
+        private final AtomicLong mTime = new AtomicLong();
 
         public VisitingDetector(@NonNull Detector detector, JavaScanner scanner) {
             mDetector = detector;
@@ -126,61 +177,26 @@ public class JavaVisitor {
         }
     }
 
+    /**
+     * Dispatches each node of the tree to the detectors registered for its kind, so that all
+     * the detectors share a single traversal.
+     */
     private class DispatchVisitor extends JavaVoidVisitor {
 
         @Override
-        public Void visitAnnotation(AnnotationTree annotationTree, Void unused) {
-            List<VisitingDetector> list = mTreeTypeDetectors.get(AnnotationTree.class);
-            if (list != null) {
-                for (VisitingDetector v : list) {
-                    v.getVisitor().visitAnnotation(annotationTree, unused);
-                }
+        public Void scan(Tree tree, Void unused) {
+            if (tree == null) {
+                return null;
             }
-            return null;
-        }
-
-        @Override
-        public Void visitVariable(VariableTree variableTree, Void unused) {
-            List<VisitingDetector> list = mTreeTypeDetectors.get(VariableTree.class);
-            if (list != null) {
-                for (VisitingDetector v : list) {
-                    v.getVisitor().visitVariable(variableTree, unused);
-                }
-            }
-            return null;
-        }
-
-        @Override
-        public Void visitMethodInvocation(MethodInvocationTree methodInvocationTree, Void unused) {
-            List<VisitingDetector> list = mTreeTypeDetectors.get(MethodInvocationTree.class);
-            if (list != null) {
-                for (VisitingDetector v : list) {
-                    v.getVisitor().visitMethodInvocation(methodInvocationTree, unused);
-                }
-            }
-            return super.visitMethodInvocation(methodInvocationTree, unused);
-        }
-
-        @Override
-        public Void visitMethod(MethodTree methodTree, Void unused) {
-            List<VisitingDetector> list = mTreeTypeDetectors.get(MethodTree.class);
-            if (list != null) {
-                for (VisitingDetector v : list) {
-                    v.getVisitor().visitMethod(methodTree, unused);
-                }
-            }
-            return super.visitMethod(methodTree, unused);
-        }
-
-        @Override
-        public Void visitIdentifier(IdentifierTree identifierTree, Void unused) {
-            List<VisitingDetector> list = mTreeTypeDetectors.get(IdentifierTree.class);
+            List<VisitingDetector> list = mTreeTypeDetectors.get(tree.getKind().asInterface());
             if (list != null) {
                 for (VisitingDetector v : list) {
-                    v.getVisitor().visitIdentifier(identifierTree, unused);
+                    long start = System.nanoTime();
+                    tree.accept(v.getVisitor(), unused);
+                    v.mTime.addAndGet(System.nanoTime() - start);
                 }
             }
-            return super.visitIdentifier(identifierTree, unused);
+            return super.scan(tree, unused);
         }
     }
 
@@ -222,7 +238,9 @@ public class JavaVisitor {
                 List<VisitingDetector> list = mMethodDetectors.get(methodName);
                 if (list != null) {
                     for (VisitingDetector v : list) {
+                        long start = System.nanoTime();
                         v.getJavaScanner().visitMethod(mContext, v.getVisitor(), node);
+                        v.mTime.addAndGet(System.nanoTime() - start);
                     }
                 }
             }
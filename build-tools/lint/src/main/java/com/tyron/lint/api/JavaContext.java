@@ -32,6 +32,7 @@ import java.io.File;
 public class JavaContext extends Context {
     static final String SUPPRESS_COMMENT_PREFIX = "//noinspection ";
     private CompileTask mCompileTask;
+    private CompilationUnitTree mCompilationUnit;
 
     public JavaContext(LintDriver driver, JavaModule project, File file, Configuration config) {
         super(driver, project, file, config);
@@ -45,7 +46,17 @@ public class JavaContext extends Context {
         return mCompileTask;
     }
 
+    /**
+     * Sets the tree of this file when it was compiled together with other files
+     */
+    public void setCompilationUnit(CompilationUnitTree compilationUnit) {
+        mCompilationUnit = compilationUnit;
+    }
+
     public CompilationUnitTree getCompilationUnit() {
+        if (mCompilationUnit != null) {
+            return mCompilationUnit;
+        }
         return mCompileTask.root();
     }
 
@@ -16,12 +16,15 @@ import com.tyron.lint.client.Configuration;
 import com.tyron.lint.client.IssueRegistry;
 import com.tyron.lint.client.LintClient;
 import com.tyron.lint.client.LintDriver;
+import com.tyron.lint.client.LintResultCache;
 
 import java.io.File;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class Lint {
@@ -29,6 +32,7 @@ public class Lint {
     private final JavaCompilerService mCompiler;
     private final List<Detector> mDetectors;
     private final LintClient mClient;
+    private final LintResultCache mResultCache = new LintResultCache();
 
     public Lint(JavaCompilerService compiler, JavaModule project, LintClient client) {
         mCompiler = compiler;
@@ -42,6 +46,14 @@ public class Lint {
     }
 
     public void scanFile(File file) {
+        scanFiles(Collections.singletonList(file));
+    }
+
+    /**
+     * Scans the given files, files which have not changed since the last scan are not
+     * analyzed again.
+     */
+    public void scanFiles(Collection<File> files) {
         Instant start = Instant.now();
         LintDriver driver = new LintDriver(new IssueRegistry() {
             @NonNull
@@ -55,7 +67,7 @@ public class Lint {
                 );
             }
         }, mClient);
-        JavaContext context = new JavaContext(driver, mProject, file, new Configuration() {
+        Configuration configuration = new Configuration() {
             @Override
             public void ignore(@NonNull Context context, @NonNull Issue issue, @Nullable Location location, @NonNull String message) {
 
@@ -65,9 +77,13 @@ public class Lint {
             public void setSeverity(@NonNull Issue issue, @Nullable Severity severity) {
 
             }
-        });
+        };
+        List<JavaContext> contexts = new ArrayList<>(files.size());
+        for (File file : files) {
+            contexts.add(new JavaContext(driver, mProject, file, configuration));
+        }
         JavaVisitor visitor = new JavaVisitor(mCompiler, mDetectors);
-        visitor.visitFile(context);
+        driver.analyze(visitor, contexts, mResultCache);
 
         Log.d("Lint", "Scanning took " + Duration.between(start, Instant.now()).toMillis() + " ms");
     }
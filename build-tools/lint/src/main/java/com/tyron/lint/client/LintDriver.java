@@ -3,7 +3,9 @@ package com.tyron.lint.client;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.common.hash.Hashing;
 import com.tyron.builder.model.Project;
+import com.tyron.lint.JavaVisitor;
 import com.tyron.lint.api.Context;
 import com.tyron.lint.api.Detector;
 import com.tyron.lint.api.Issue;
@@ -22,14 +24,25 @@ import com.sun.source.tree.ModifiersTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class LintDriver {
 
     private static final String STUDIO_ID_PREFIX = "AndroidLint";
-    private final LintClient mClient;
+    private static final String TAG = "Lint";
+    private final LintClientWrapper mClient;
     //private LintRequest mRequest;
     private IssueRegistry mRegistry;
     private volatile boolean mCanceled;
@@ -45,6 +58,7 @@ public class LintDriver {
     private boolean mAbbreviating = true;
     private boolean mParserErrors;
     private Map<Object,Object> mProperties;
+    private final Map<Detector, Long> mDetectorTimes = new ConcurrentHashMap<>();
 
 
     /**
@@ -62,6 +76,125 @@ public class LintDriver {
         return mClient;
     }
 
+    /**
+     * Analyzes the given files with the detectors of the visitor. The contents of the files are
+     * hashed on a worker pool, files whose contents and detectors match an entry of the cache
+     * have their previous issues reported again, the remaining files are compiled together and
+     * traversed once each.
+     */
+    public void analyze(@NonNull JavaVisitor visitor,
+                        @NonNull List<JavaContext> contexts,
+                        @NonNull LintResultCache cache) {
+        String detectorKey = getDetectorKey(visitor.getDetectors());
+
+        List<Future<String>> hashes = new ArrayList<>(contexts.size());
+        int threadCount = Math.max(1, Math.min(contexts.size(),
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (JavaContext context : contexts) {
+                hashes.add(executor.submit(() -> hash(context)));
+            }
+
+            List<JavaContext> changed = new ArrayList<>();
+            List<String> changedHashes = new ArrayList<>();
+            for (int i = 0; i < contexts.size(); i++) {
+                if (mCanceled) {
+                    return;
+                }
+                JavaContext context = contexts.get(i);
+                String hash = getUninterruptibly(hashes.get(i));
+                List<LintResultCache.Report> reports = hash == null
+                        ? null
+                        : cache.get(context.file, hash, detectorKey);
+                if (reports != null) {
+                    for (LintResultCache.Report report : reports) {
+                        mClient.report(context, report.issue, report.severity, report.location,
+                                report.message, report.format);
+                    }
+                } else {
+                    changed.add(context);
+                    changedHashes.add(hash);
+                }
+            }
+
+            if (changed.isEmpty()) {
+                return;
+            }
+
+            Map<Detector, Long> timesBefore = visitor.getDetectorTimes();
+            Map<File, List<LintResultCache.Report>> recorded = mClient.startRecording();
+            List<JavaContext> analyzed;
+            try {
+                analyzed = visitor.visitFiles(changed);
+            } finally {
+                mClient.stopRecording();
+                for (Map.Entry<Detector, Long> entry : visitor.getDetectorTimes().entrySet()) {
+                    Long before = timesBefore.get(entry.getKey());
+                    long elapsed = entry.getValue() - (before != null ? before : 0L);
+                    mDetectorTimes.merge(entry.getKey(), elapsed, Long::sum);
+                }
+            }
+
+            for (int i = 0; i < changed.size(); i++) {
+                JavaContext context = changed.get(i);
+                String hash = changedHashes.get(i);
+                if (hash != null && analyzed.contains(context)) {
+                    List<LintResultCache.Report> reports = recorded.get(context.file);
+                    cache.put(context.file, hash, detectorKey,
+                            reports != null ? reports : Collections.emptyList());
+                } else {
+                    cache.remove(context.file);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the time spent in each detector by the analyses of this driver, in nanoseconds.
+     * Files whose issues were reported from the cache do not add to the times.
+     */
+    @NonNull
+    public Map<Detector, Long> getDetectorTimes() {
+        return Collections.unmodifiableMap(mDetectorTimes);
+    }
+
+    public void cancel() {
+        mCanceled = true;
+    }
+
+    @Nullable
+    private static String hash(@NonNull JavaContext context) {
+        String contents = context.getContents();
+        if (contents == null) {
+            return null;
+        }
+        return Hashing.murmur3_128().hashString(contents, StandardCharsets.UTF_8).toString();
+    }
+
+    @Nullable
+    private static String getUninterruptibly(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static String getDetectorKey(@NonNull List<Detector> detectors) {
+        TreeSet<String> names = new TreeSet<>();
+        for (Detector detector : detectors) {
+            names.add(detector.getClass().getName());
+        }
+        return String.join(",", names);
+    }
+
     public boolean isSuppressed(@Nullable JavaContext context, @NonNull Issue issue,
                                 @Nullable Tree scope) {
         boolean checkComments = mClient.checkForSuppressComments() &&
@@ -144,11 +277,25 @@ public class LintDriver {
 
     private static class LintClientWrapper extends LintClient {
         private LintClient mDelegate;
+        private volatile Map<File, List<LintResultCache.Report>> mRecorded;
 
         public LintClientWrapper(LintClient client) {
             mDelegate = client;
         }
 
+        /**
+         * Starts collecting the reported issues by file
+         */
+        Map<File, List<LintResultCache.Report>> startRecording() {
+            Map<File, List<LintResultCache.Report>> recorded = new ConcurrentHashMap<>();
+            mRecorded = recorded;
+            return recorded;
+        }
+
+        void stopRecording() {
+            mRecorded = null;
+        }
+
         @NonNull
         @Override
         public Class<? extends Detector> replaceDetector(@NonNull Class<? extends Detector> detectorClass) {
@@ -162,6 +309,11 @@ public class LintDriver {
 
         @Override
         public void report(@NonNull Context context, @NonNull Issue issue, @NonNull Severity severity, @Nullable Location location, @NonNull String message, @NonNull TextFormat format) {
+            Map<File, List<LintResultCache.Report>> recorded = mRecorded;
+            if (recorded != null) {
+                recorded.computeIfAbsent(context.file, k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(new LintResultCache.Report(issue, severity, location, message, format));
+            }
             mDelegate.report(context, issue, severity, location, message, format);
         }
 
@@ -0,0 +1,89 @@
+package com.tyron.lint.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.lint.api.Issue;
+import com.tyron.lint.api.Location;
+import com.tyron.lint.api.Severity;
+import com.tyron.lint.api.TextFormat;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the issues reported for each file, so that files whose contents did not change
+ * are not analyzed again as long as the same set of detectors is used.
+ */
+public class LintResultCache {
+
+    private final Map<File, Entry> mEntries = new ConcurrentHashMap<>();
+
+    /**
+     * @param contentHash hash of the current contents of the file
+     * @param detectorKey identifies the detectors that analyzed the file
+     * @return the issues reported for the file, or null if the file has to be analyzed
+     */
+    @Nullable
+    public List<Report> get(@NonNull File file, @NonNull String contentHash,
+                            @NonNull String detectorKey) {
+        Entry entry = mEntries.get(file);
+        if (entry == null
+                || !entry.contentHash.equals(contentHash)
+                || !entry.detectorKey.equals(detectorKey)) {
+            return null;
+        }
+        return entry.reports;
+    }
+
+    public void put(@NonNull File file, @NonNull String contentHash,
+                    @NonNull String detectorKey, @NonNull List<Report> reports) {
+        mEntries.put(file, new Entry(contentHash, detectorKey, reports));
+    }
+
+    public void remove(@NonNull File file) {
+        mEntries.remove(file);
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    private static class Entry {
+        private final String contentHash;
+        private final String detectorKey;
+        private final List<Report> reports;
+
+        Entry(String contentHash, String detectorKey, List<Report> reports) {
+            this.contentHash = contentHash;
+            this.detectorKey = detectorKey;
+            this.reports = Collections.unmodifiableList(reports);
+        }
+    }
+
+    /**
+     * An issue reported through {@link LintClient#report}
+     */
+    public static class Report {
+        public final Issue issue;
+        public final Severity severity;
+        public final Location location;
+        public final String message;
+        public final TextFormat format;
+
+        public Report(@NonNull Issue issue,
+                      @NonNull Severity severity,
+                      @Nullable Location location,
+                      @NonNull String message,
+                      @NonNull TextFormat format) {
+            this.issue = issue;
+            this.severity = severity;
+            this.location = location;
+            this.message = message;
+            this.format = format;
+        }
+    }
+}
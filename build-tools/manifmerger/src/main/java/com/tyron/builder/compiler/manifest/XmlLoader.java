@@ -1,17 +1,19 @@
 package com.tyron.builder.compiler.manifest;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.tyron.builder.compiler.manifest.blame.SourceFile;
 import com.tyron.builder.util.PositionXmlParser;
 
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 import org.openjdk.javax.xml.parsers.ParserConfigurationException;
 
@@ -20,10 +22,20 @@ import org.openjdk.javax.xml.parsers.ParserConfigurationException;
  */
 public final class XmlLoader {
 
+    /**
+     * The parsed documents keyed by the hash of their contents, library manifests are
+     * usually the same from one merge to the next so they only need to be parsed once.
+     * The cached documents are never modified, callers receive a copy of them.
+     */
+    private static final Cache<HashCode, Document> sParsedDocuments = CacheBuilder.newBuilder()
+            .softValues()
+            .build();
+
     private XmlLoader() {}
 
     /**
-     * Loads an xml file without doing xml validation and return a {@link XmlDocument}
+     * Loads an xml file without doing xml validation and return a {@link XmlDocument}.
+     * The file is only parsed if a file with the same contents has not been loaded before.
      *
      * @param displayName the xml file display name.
      * @param xmlFile the xml file.
@@ -37,9 +49,7 @@ public final class XmlLoader {
             XmlDocument.Type type,
             Optional<String> mainManifestPackageName)
             throws IOException, SAXException, ParserConfigurationException {
-        InputStream inputStream = new BufferedInputStream(new FileInputStream(xmlFile));
-
-        Document domDocument = PositionXmlParser.parse(inputStream);
+        Document domDocument = parse(xmlFile);
         return domDocument != null ? new XmlDocument(
                 new SourceFile(xmlFile, displayName),
                 selectors,
@@ -80,4 +90,20 @@ public final class XmlLoader {
                 mainManifestPackageName)
                 : null;
     }
+
+    private static Document parse(File xmlFile)
+            throws IOException, SAXException, ParserConfigurationException {
+        byte[] data = Files.toByteArray(xmlFile);
+        HashCode hash = Hashing.sha1().hashBytes(data);
+
+        Document cached = sParsedDocuments.getIfPresent(hash);
+        if (cached == null) {
+            cached = PositionXmlParser.parse(data);
+            sParsedDocuments.put(hash, cached);
+        }
+        synchronized (cached) {
+            // DOM implementations are not thread safe, even for reads
+            return PositionXmlParser.copy(cached);
+        }
+    }
 }
@@ -253,6 +253,46 @@ public class PositionXmlParser {
         parser.parse(createSource(xml), handler);
     }
 
+    /**
+     * Creates a deep copy of a document returned by one of the parse methods, along with the
+     * position information of its nodes. Copying is much cheaper than parsing the same contents
+     * again, so parsed documents can be cached and handed out to callers that modify them.
+     *
+     * @param document the parsed document
+     * @return a new document with the same contents and positions
+     * @throws ParserConfigurationException if a document builder is not available
+     */
+    @NotNull
+    public static Document copy(@NotNull Document document) throws ParserConfigurationException {
+        DocumentBuilder docBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        Document copy = docBuilder.newDocument();
+        copy.setUserData(CONTENT_KEY, document.getUserData(CONTENT_KEY), null);
+
+        NodeList children = document.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.DOCUMENT_TYPE_NODE) {
+                continue;
+            }
+            Node imported = copy.importNode(child, true);
+            copy.appendChild(imported);
+            copyPositions(child, imported);
+        }
+        return copy;
+    }
+
+    private static void copyPositions(@NotNull Node from, @NotNull Node to) {
+        Object position = from.getUserData(POS_KEY);
+        if (position != null) {
+            to.setUserData(POS_KEY, position, null);
+        }
+        NodeList fromChildren = from.getChildNodes();
+        NodeList toChildren = to.getChildNodes();
+        for (int i = 0; i < fromChildren.getLength(); i++) {
+            copyPositions(fromChildren.item(i), toChildren.item(i));
+        }
+    }
+
     /**
      * Reads all bytes from the given stream and closes it.
      *
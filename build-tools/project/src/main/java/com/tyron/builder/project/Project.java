@@ -40,7 +40,7 @@ public class Project {
 
     private final Module EMPTY = new MockAndroidModule(null, null);
 
-    private final Map<String, Module> mModules;
+    private volatile Map<String, Module> mModules;
     private final File mRoot;
 
     private final ProjectSettings mSettings;
@@ -68,6 +68,19 @@ public class Project {
         mModules.put(module.getName(), module);
     }
 
+    /**
+     * Replaces all the modules of this project at once, the modules must already belong to
+     * this project. Callers iterating the previous modules are not affected by the change.
+     */
+    public void setModules(Collection<Module> modules) {
+        Map<String, Module> map = new LinkedHashMap<>();
+        for (Module module : modules) {
+            assert module.getProject() == this;
+            map.put(module.getName(), module);
+        }
+        mModules = map;
+    }
+
     public boolean isCompiling() {
         return mCompiling;
     }
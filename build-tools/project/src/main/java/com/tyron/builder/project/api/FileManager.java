@@ -51,6 +51,38 @@ public interface FileManager {
         setSnapshotContent(file, content, true);
     }
 
+    /**
+     * Replaces the characters from {@code start} to {@code end} of the stored contents of this
+     * file with the given text, without copying the rest of the contents. Does nothing if the
+     * file has not been opened.
+     *
+     * @param listener The listener to ignore
+     * @return The version of the contents after the edit, or -1 if the file is not opened
+     */
+    default long applySnapshotEdit(@NonNull File file,
+                                   int start,
+                                   int end,
+                                   @NonNull CharSequence text,
+                                   @Nullable FileListener listener) {
+        Optional<CharSequence> content = getFileContent(file);
+        if (!content.isPresent()) {
+            return -1;
+        }
+        CharSequence current = content.get();
+        String newContent = current.subSequence(0, start).toString() + text +
+                            current.subSequence(end, current.length());
+        setSnapshotContent(file, newContent, listener);
+        return getSnapshotVersion(file);
+    }
+
+    /**
+     * @return The version of the stored contents of this file, which increases every time
+     * the contents change, or -1 if the file is not opened
+     */
+    default long getSnapshotVersion(@NonNull File file) {
+        return -1;
+    }
+
     /**
      * Mark the file as closed and save its stored snapshot to disk
      * @param file the file to be saved
@@ -0,0 +1,58 @@
+package com.tyron.builder.project.api;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Describes a single edit made to the in-memory contents of a file, the characters from
+ * {@link #getStart()} to {@link #getEnd()} of the version {@link #getBaseVersion()} were
+ * replaced with {@link #getText()}.
+ */
+public final class SnapshotDelta {
+
+    private final long mBaseVersion;
+    private final int mStart;
+    private final int mEnd;
+    private final CharSequence mText;
+
+    public SnapshotDelta(long baseVersion, int start, int end, @NonNull CharSequence text) {
+        mBaseVersion = baseVersion;
+        mStart = start;
+        mEnd = end;
+        mText = text;
+    }
+
+    /**
+     * @return the version of the contents this edit was made to, a listener can only apply
+     * the edit if its copy of the contents is at this version
+     */
+    public long getBaseVersion() {
+        return mBaseVersion;
+    }
+
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return the end offset of the replaced characters in the previous version
+     */
+    public int getEnd() {
+        return mEnd;
+    }
+
+    @NonNull
+    public CharSequence getText() {
+        return mText;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SnapshotDelta{" +
+               "baseVersion=" + mBaseVersion +
+               ", start=" + mStart +
+               ", end=" + mEnd +
+               ", text.length=" + mText.length() +
+               '}';
+    }
+}
@@ -227,6 +227,8 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
         try {
             Class<?> clazz = Class.forName("com.tyron.builder.compiler.symbol.MergeSymbolsTask");
             removeCache(ReflectionUtil.getStaticFieldValue(clazz, CacheKey.class, "CACHE_KEY"));
+            removeCache(ReflectionUtil.getStaticFieldValue(clazz, CacheKey.class,
+                    "PACKAGE_CACHE_KEY"));
         } catch (Throwable e) {
             throw new Error(e);
         }
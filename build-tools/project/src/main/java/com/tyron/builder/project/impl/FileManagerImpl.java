@@ -6,6 +6,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.api.SnapshotDelta;
 import com.tyron.builder.project.listener.FileListener;
 import com.tyron.common.util.ThreadUtil;
 
@@ -20,24 +21,26 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileManagerImpl implements FileManager {
 
     private static class FileState {
 
-        private String mContents;
+        private PieceTable mContents;
         private Instant mModified;
+        private long mVersion;
 
-        public FileState(String contents, Instant modified) {
+        public FileState(PieceTable contents, Instant modified, long version) {
             mContents = contents;
             mModified = modified;
+            mVersion = version;
         }
 
-        public String getContents() {
+        public PieceTable getContents() {
             return mContents;
         }
 
@@ -45,8 +48,13 @@ public class FileManagerImpl implements FileManager {
             return mModified;
         }
 
-        public void setContents(String content) {
+        public long getVersion() {
+            return mVersion;
+        }
+
+        public void setContents(PieceTable content, long version) {
             mContents = content;
+            mVersion = version;
         }
 
         public void setModified(Instant now) {
@@ -61,6 +69,7 @@ public class FileManagerImpl implements FileManager {
     private final Map<File, FileState> mSnapshots;
 
     private final List<FileListener> mListeners = new ArrayList<>();
+    private final AtomicLong mVersion = new AtomicLong();
 
     public FileManagerImpl(File root) {
         mRoot = root;
@@ -91,59 +100,105 @@ public class FileManagerImpl implements FileManager {
         }
         state.setModified(instant);
 
-        for (FileListener listener : mListeners) {
-            listener.onSnapshotChanged(file, state.getContents());
-        }
+        notifyListeners(file, state.getContents(), state.getVersion(), null, null);
     }
 
     @Override
     public void openFileForSnapshot(@NonNull File file, String content) {
         long lastModified = file.lastModified();
-        FileState state = new FileState(content, Instant.ofEpochMilli(lastModified));
+        FileState state = new FileState(new PieceTable(content),
+                Instant.ofEpochMilli(lastModified), mVersion.incrementAndGet());
         mSnapshots.put(file, state);
     }
 
     @Override
     public void setSnapshotContent(@NonNull File file, String content, FileListener listener) {
-        if (!mSnapshots.containsKey(file)) {
+        FileState state = replaceContents(file, content);
+        if (state == null) {
             return;
         }
+        notifyListeners(file, state.getContents(), state.getVersion(), null, listener);
+    }
 
-        mSnapshots.computeIfPresent(file, (f, state) -> {
-            boolean equals = Objects.equals(content, state.getContents());
-            state.setContents(content);
-            if (!equals) {
+    @Override
+    public void setSnapshotContent(@NonNull File file, String content, boolean notify) {
+        FileState state = replaceContents(file, content);
+        if (state == null) {
+            return;
+        }
+        if (notify) {
+            notifyListeners(file, state.getContents(), state.getVersion(), null, null);
+        }
+    }
+
+    /**
+     * Replaces the whole contents of the file, the version is only changed if the contents
+     * are different.
+     */
+    @Nullable
+    private FileState replaceContents(@NonNull File file, String content) {
+        synchronized (mSnapshots) {
+            FileState state = mSnapshots.get(file);
+            if (state == null) {
+                return null;
+            }
+            if (!state.getContents().contentEquals(content)) {
+                state.setContents(new PieceTable(content), mVersion.incrementAndGet());
                 state.setModified(Instant.now());
             }
             return state;
-        });
+        }
+    }
 
-        for (FileListener l : mListeners) {
-            if (l.equals(listener)) {
-                continue;
+    @Override
+    public long applySnapshotEdit(@NonNull File file,
+                                  int start,
+                                  int end,
+                                  @NonNull CharSequence text,
+                                  @Nullable FileListener listener) {
+        PieceTable contents;
+        long baseVersion;
+        long version;
+        synchronized (mSnapshots) {
+            FileState state = mSnapshots.get(file);
+            if (state == null) {
+                return -1;
+            }
+            contents = state.getContents().replace(start, end, text);
+            baseVersion = state.getVersion();
+            if (contents == state.getContents()) {
+                return baseVersion;
             }
-            l.onSnapshotChanged(file, content);
+            version = mVersion.incrementAndGet();
+            state.setContents(contents, version);
+            state.setModified(Instant.now());
         }
+
+        // the text may be a mutable buffer owned by the caller
+        SnapshotDelta delta = new SnapshotDelta(baseVersion, start, end, text.toString());
+        notifyListeners(file, contents, version, delta, listener);
+        return version;
     }
 
     @Override
-    public void setSnapshotContent(@NonNull File file, String content, boolean notify) {
-        if (!mSnapshots.containsKey(file)) {
-            return;
+    public long getSnapshotVersion(@NonNull File file) {
+        FileState state = mSnapshots.get(file);
+        if (state == null) {
+            return -1;
         }
+        return state.getVersion();
+    }
 
-        mSnapshots.computeIfPresent(file, (f, state) -> {
-            boolean equals = Objects.equals(content, state.getContents());
-            state.setContents(content);
-            if (!equals) {
-                state.setModified(Instant.now());
-            }
-            return state;
-        });
-        if (notify) {
-            for (FileListener listener : mListeners) {
-                listener.onSnapshotChanged(file, content);
+    private void notifyListeners(File file,
+                                 PieceTable contents,
+                                 long version,
+                                 @Nullable SnapshotDelta delta,
+                                 @Nullable FileListener ignored) {
+        for (FileListener l : mListeners) {
+            if (l.equals(ignored)) {
+                continue;
             }
+            l.onSnapshotChanged(file, contents, version, delta);
         }
     }
 
@@ -154,7 +209,7 @@ public class FileManagerImpl implements FileManager {
                 try {
                     FileState state = mSnapshots.get(file);
                     FileUtils.writeStringToFile(file,
-                            state.getContents(),
+                            state.getContents().toString(),
                             StandardCharsets.UTF_8);
                 } catch (IOException e) {
                     Log.d(TAG, "Failed to save file " + file.getName(), e);
@@ -193,7 +248,7 @@ public class FileManagerImpl implements FileManager {
         mService.execute(() -> mSnapshots.forEach((k, v) -> {
             try {
                 FileUtils.writeStringToFile(k,
-                                            v.getContents(), StandardCharsets.UTF_8);
+                                            v.getContents().toString(), StandardCharsets.UTF_8);
                 Instant instant = Instant.ofEpochMilli(k.lastModified());
                 ThreadUtil.runOnUiThread(() -> setLastModified(k, instant));
             } catch (IOException e) {
@@ -0,0 +1,287 @@
+package com.tyron.builder.project.impl;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable text document backed by a piece table. Each edit returns a new document which
+ * shares the original text and the appended characters with the document it was created from,
+ * so keeping a version of the document does not copy its contents.
+ */
+public final class PieceTable implements CharSequence {
+
+    /**
+     * Documents with more pieces than this are copied into a single piece, this keeps the
+     * lookups fast after long editing sessions.
+     */
+    private static final int COMPACT_THRESHOLD = 2048;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final Piece[] EMPTY = new Piece[0];
+
+    private final AddBuffer mAddBuffer;
+    private final Piece[] mPieces;
+    /**
+     * The offset in the document of each piece
+     */
+    private final int[] mOffsets;
+    private final int mLength;
+
+    private volatile String mString;
+
+    public PieceTable(@NonNull CharSequence text) {
+        this(new AddBuffer(), text.length() == 0
+                ? EMPTY
+                : new Piece[]{new Piece(text.toString(), 0, text.length())});
+        if (text instanceof String) {
+            mString = (String) text;
+        }
+    }
+
+    private PieceTable(AddBuffer addBuffer, Piece[] pieces) {
+        mAddBuffer = addBuffer;
+        mPieces = pieces;
+        mOffsets = new int[pieces.length];
+
+        int offset = 0;
+        for (int i = 0; i < pieces.length; i++) {
+            mOffsets[i] = offset;
+            offset += pieces[i].length;
+        }
+        mLength = offset;
+    }
+
+    /**
+     * Replaces the characters from {@code start} to {@code end} with the given text.
+     *
+     * @return the new document, this document is not modified
+     */
+    @NonNull
+    public PieceTable replace(int start, int end, @NonNull CharSequence text) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", end: " + end + ", length: " + mLength);
+        }
+        if (start == end && text.length() == 0) {
+            return this;
+        }
+
+        List<Piece> pieces = new ArrayList<>(mPieces.length + 2);
+        int index = 0;
+
+        // pieces before the start of the edit, and the part of the piece containing the start
+        for (; index < mPieces.length; index++) {
+            int pieceEnd = mOffsets[index] + mPieces[index].length;
+            if (pieceEnd >= start) {
+                break;
+            }
+            pieces.add(mPieces[index]);
+        }
+        if (index < mPieces.length && mOffsets[index] < start) {
+            pieces.add(mPieces[index].slice(0, start - mOffsets[index]));
+        }
+
+        if (text.length() > 0) {
+            Piece added = mAddBuffer.append(text);
+            Piece last = pieces.isEmpty() ? null : pieces.get(pieces.size() - 1);
+            if (last != null && last.isFollowedBy(added)) {
+                // consecutive typing extends the previous piece
+                pieces.set(pieces.size() - 1, last.extend(added.length));
+            } else {
+                pieces.add(added);
+            }
+        }
+
+        // the part of the piece containing the end, and the pieces after the edit
+        for (; index < mPieces.length; index++) {
+            int pieceStart = mOffsets[index];
+            int pieceEnd = pieceStart + mPieces[index].length;
+            if (pieceEnd <= end) {
+                continue;
+            }
+            if (pieceStart < end) {
+                pieces.add(mPieces[index].slice(end - pieceStart, mPieces[index].length));
+            } else {
+                pieces.add(mPieces[index]);
+            }
+        }
+
+        PieceTable table = new PieceTable(mAddBuffer, pieces.toArray(EMPTY));
+        if (pieces.size() > COMPACT_THRESHOLD) {
+            return new PieceTable(table.toString());
+        }
+        return table;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + mLength);
+        }
+        String string = mString;
+        if (string != null) {
+            return string.charAt(index);
+        }
+        int piece = findPiece(index);
+        return mPieces[piece].charAt(index - mOffsets[piece]);
+    }
+
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "start: " + start + ", end: " + end + ", length: " + mLength);
+        }
+        String string = mString;
+        if (string != null) {
+            return string.substring(start, end);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        if (start == end) {
+            return builder;
+        }
+        for (int i = findPiece(start); i < mPieces.length && mOffsets[i] < end; i++) {
+            Piece piece = mPieces[i];
+            int from = Math.max(start - mOffsets[i], 0);
+            int to = Math.min(end - mOffsets[i], piece.length);
+            piece.appendTo(builder, from, to);
+        }
+        return builder;
+    }
+
+    /**
+     * @return whether this document has the same contents as the given text
+     */
+    public boolean contentEquals(@NonNull CharSequence text) {
+        if (text == this) {
+            return true;
+        }
+        if (text.length() != mLength) {
+            return false;
+        }
+        int index = 0;
+        for (Piece piece : mPieces) {
+            for (int i = 0; i < piece.length; i++) {
+                if (piece.charAt(i) != text.charAt(index++)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The string is created once and shared by every caller.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        String string = mString;
+        if (string == null) {
+            StringBuilder builder = new StringBuilder(mLength);
+            for (Piece piece : mPieces) {
+                piece.appendTo(builder, 0, piece.length);
+            }
+            string = builder.toString();
+            mString = string;
+        }
+        return string;
+    }
+
+    private int findPiece(int offset) {
+        int low = 0;
+        int high = mPieces.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mOffsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static final class Piece {
+        /**
+         * Either a string from the original text, or a chunk of the add buffer
+         */
+        private final String text;
+        private final char[] chars;
+        private final int start;
+        private final int length;
+
+        Piece(String text, int start, int length) {
+            this.text = text;
+            this.chars = null;
+            this.start = start;
+            this.length = length;
+        }
+
+        Piece(char[] chars, int start, int length) {
+            this.text = null;
+            this.chars = chars;
+            this.start = start;
+            this.length = length;
+        }
+
+        char charAt(int index) {
+            return chars != null ? chars[start + index] : text.charAt(start + index);
+        }
+
+        Piece slice(int from, int to) {
+            if (chars != null) {
+                return new Piece(chars, start + from, to - from);
+            }
+            return new Piece(text, start + from, to - from);
+        }
+
+        boolean isFollowedBy(Piece piece) {
+            return chars != null && chars == piece.chars && start + length == piece.start;
+        }
+
+        Piece extend(int count) {
+            return new Piece(chars, start, length + count);
+        }
+
+        void appendTo(StringBuilder builder, int from, int to) {
+            if (chars != null) {
+                builder.append(chars, start + from, to - from);
+            } else {
+                builder.append(text, start + from, start + to);
+            }
+        }
+    }
+
+    /**
+     * Append only storage of the inserted characters, shared by every version of a document.
+     * Characters are never moved once written, so older versions can read them without locking.
+     */
+    private static final class AddBuffer {
+        private char[] mChunk = new char[0];
+        private int mUsed;
+
+        synchronized Piece append(CharSequence text) {
+            int length = text.length();
+            if (mChunk.length - mUsed < length) {
+                mChunk = new char[Math.max(CHUNK_SIZE, length)];
+                mUsed = 0;
+            }
+            for (int i = 0; i < length; i++) {
+                mChunk[mUsed + i] = text.charAt(i);
+            }
+            Piece piece = new Piece(mChunk, mUsed, length);
+            mUsed += length;
+            return piece;
+        }
+    }
+}
@@ -1,8 +1,27 @@
 package com.tyron.builder.project.listener;
 
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.api.SnapshotDelta;
+
 import java.io.File;
 
 public interface FileListener {
 
     void onSnapshotChanged(File file, CharSequence contents);
+
+    /**
+     * Called when the in-memory contents of a file has changed.
+     *
+     * @param contents an immutable view of the new contents
+     * @param version the version of the contents, increases with every change
+     * @param delta the edit that was made to the previous version, or null if the
+     *              whole contents were replaced
+     */
+    default void onSnapshotChanged(File file,
+                                   CharSequence contents,
+                                   long version,
+                                   @Nullable SnapshotDelta delta) {
+        onSnapshotChanged(file, contents);
+    }
 }
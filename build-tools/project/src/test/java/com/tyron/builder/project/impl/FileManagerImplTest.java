@@ -0,0 +1,135 @@
+package com.tyron.builder.project.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.project.api.SnapshotDelta;
+import com.tyron.builder.project.listener.FileListener;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileManagerImplTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private FileManagerImpl mFileManager;
+    private File mFile;
+    private final List<SnapshotDelta> mDeltas = new ArrayList<>();
+    private final List<Long> mVersions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = mTemporaryFolder.newFile("Test.java");
+        mFileManager = new FileManagerImpl(mTemporaryFolder.getRoot());
+        mFileManager.addSnapshotListener(new FileListener() {
+            @Override
+            public void onSnapshotChanged(File file, CharSequence contents) {
+            }
+
+            @Override
+            public void onSnapshotChanged(File file,
+                                          CharSequence contents,
+                                          long version,
+                                          SnapshotDelta delta) {
+                mVersions.add(version);
+                mDeltas.add(delta);
+            }
+        });
+    }
+
+    @Test
+    public void testEditDelta() {
+        mFileManager.openFileForSnapshot(mFile, "class A {}");
+        long base = mFileManager.getSnapshotVersion(mFile);
+
+        long version = mFileManager.applySnapshotEdit(mFile, 9, 9, "int a;", null);
+
+        assertTrue(version > base);
+        assertEquals(version, mFileManager.getSnapshotVersion(mFile));
+        assertEquals("class A {int a;}", mFileManager.getFileContent(mFile).get().toString());
+
+        SnapshotDelta delta = mDeltas.get(0);
+        assertEquals(base, delta.getBaseVersion());
+        assertEquals(9, delta.getStart());
+        assertEquals(9, delta.getEnd());
+        assertEquals("int a;", delta.getText().toString());
+        assertEquals(version, (long) mVersions.get(0));
+    }
+
+    @Test
+    public void testDeltasChainVersions() {
+        mFileManager.openFileForSnapshot(mFile, "Hello World");
+
+        long first = mFileManager.applySnapshotEdit(mFile, 5, 11, "", null);
+        long second = mFileManager.applySnapshotEdit(mFile, 0, 0, "> ", null);
+
+        assertEquals(2, mDeltas.size());
+        // each edit was made to the version of the previous edit
+        assertEquals(first, mDeltas.get(1).getBaseVersion());
+        assertEquals(second, (long) mVersions.get(1));
+        assertEquals("> Hello", mFileManager.getFileContent(mFile).get().toString());
+    }
+
+    @Test
+    public void testEmptyEditKeepsVersion() {
+        mFileManager.openFileForSnapshot(mFile, "Hello");
+        long version = mFileManager.getSnapshotVersion(mFile);
+
+        assertEquals(version, mFileManager.applySnapshotEdit(mFile, 2, 2, "", null));
+        assertTrue(mDeltas.isEmpty());
+    }
+
+    @Test
+    public void testReplacedContentsHaveNoDelta() {
+        mFileManager.openFileForSnapshot(mFile, "Hello");
+        long version = mFileManager.getSnapshotVersion(mFile);
+
+        mFileManager.setSnapshotContent(mFile, "World", true);
+
+        assertEquals(1, mDeltas.size());
+        assertNull(mDeltas.get(0));
+        assertTrue(mVersions.get(0) > version);
+    }
+
+    @Test
+    public void testIgnoredListener() {
+        List<SnapshotDelta> deltas = new ArrayList<>();
+        FileListener listener = new FileListener() {
+            @Override
+            public void onSnapshotChanged(File file, CharSequence contents) {
+            }
+
+            @Override
+            public void onSnapshotChanged(File file,
+                                          CharSequence contents,
+                                          long version,
+                                          SnapshotDelta delta) {
+                deltas.add(delta);
+            }
+        };
+        mFileManager.addSnapshotListener(listener);
+        mFileManager.openFileForSnapshot(mFile, "Hello");
+
+        mFileManager.applySnapshotEdit(mFile, 0, 0, "a", listener);
+        assertTrue(deltas.isEmpty());
+        assertNotNull(mDeltas.get(0));
+    }
+
+    @Test
+    public void testEditOfClosedFile() {
+        assertEquals(-1, mFileManager.applySnapshotEdit(mFile, 0, 0, "a", null));
+        assertEquals(-1, mFileManager.getSnapshotVersion(mFile));
+        assertTrue(mDeltas.isEmpty());
+    }
+}
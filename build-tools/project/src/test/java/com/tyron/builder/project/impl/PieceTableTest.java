@@ -0,0 +1,142 @@
+package com.tyron.builder.project.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PieceTableTest {
+
+    @Test
+    public void testInsert() {
+        PieceTable table = new PieceTable("Hello World");
+
+        assertEquals("Hello, World", table.replace(5, 5, ",").toString());
+        assertEquals(">Hello World", table.replace(0, 0, ">").toString());
+        assertEquals("Hello World!", table.replace(11, 11, "!").toString());
+    }
+
+    @Test
+    public void testInsertIntoEmpty() {
+        PieceTable table = new PieceTable("");
+        assertEquals(0, table.length());
+
+        table = table.replace(0, 0, "text");
+        assertEquals("text", table.toString());
+        assertEquals(4, table.length());
+    }
+
+    @Test
+    public void testDelete() {
+        PieceTable table = new PieceTable("Hello World");
+
+        assertEquals("HelloWorld", table.replace(5, 6, "").toString());
+        assertEquals("World", table.replace(0, 6, "").toString());
+        assertEquals("Hello", table.replace(5, 11, "").toString());
+        assertEquals("", table.replace(0, 11, "").toString());
+    }
+
+    @Test
+    public void testReplace() {
+        PieceTable table = new PieceTable("Hello World");
+        assertEquals("Hello There", table.replace(6, 11, "There").toString());
+    }
+
+    @Test
+    public void testEmptyEditReturnsSameTable() {
+        PieceTable table = new PieceTable("Hello");
+        assertSame(table, table.replace(2, 2, ""));
+    }
+
+    @Test
+    public void testConsecutiveTyping() {
+        PieceTable table = new PieceTable("class A {}");
+        String text = "int a;";
+        for (int i = 0; i < text.length(); i++) {
+            table = table.replace(9 + i, 9 + i, String.valueOf(text.charAt(i)));
+        }
+        assertEquals("class A {int a;}", table.toString());
+    }
+
+    @Test
+    public void testEditsAcrossSplitPieces() {
+        PieceTable table = new PieceTable("0123456789");
+        // split the original text into several pieces
+        table = table.replace(3, 3, "abc");
+        table = table.replace(8, 8, "def");
+        assertEquals("012abc34def56789", table.toString());
+
+        // delete a range spanning the original text and both inserted pieces
+        PieceTable deleted = table.replace(4, 10, "");
+        assertEquals("012af56789", deleted.toString());
+
+        // replace a range ending in the middle of a piece
+        PieceTable replaced = table.replace(1, 5, "XY");
+        assertEquals("0XYc34def56789", replaced.toString());
+
+        assertEquals("12abc34def5", table.subSequence(1, 12).toString());
+        assertEquals('d', table.charAt(8));
+        assertEquals('9', table.charAt(15));
+    }
+
+    @Test
+    public void testSnapshotsAreNotModified() {
+        PieceTable original = new PieceTable("Hello World");
+        PieceTable first = original.replace(5, 5, ",");
+        PieceTable second = first.replace(12, 12, "!");
+        // an edit of an older version appends to the same buffer as the newer versions
+        PieceTable branch = first.replace(0, 0, "> ");
+
+        assertEquals("Hello World", original.toString());
+        assertEquals("Hello, World", first.toString());
+        assertEquals("Hello, World!", second.toString());
+        assertEquals("> Hello, World", branch.toString());
+    }
+
+    @Test
+    public void testContentEquals() {
+        PieceTable table = new PieceTable("Hello").replace(5, 5, " World");
+
+        assertTrue(table.contentEquals("Hello World"));
+        assertTrue(table.contentEquals(new StringBuilder("Hello World")));
+        assertFalse(table.contentEquals("Hello world"));
+        assertFalse(table.contentEquals("Hello"));
+    }
+
+    @Test
+    public void testManyEdits() {
+        PieceTable table = new PieceTable("");
+        StringBuilder expected = new StringBuilder();
+        // more pieces than the compaction threshold
+        for (int i = 0; i < 5000; i++) {
+            String text = Integer.toString(i % 10);
+            int index = (i * 7) % (expected.length() + 1);
+            expected.insert(index, text);
+            table = table.replace(index, index, text);
+        }
+        assertEquals(expected.toString(), table.toString());
+        for (int i = 0; i < expected.length(); i += 97) {
+            assertEquals(expected.charAt(i), table.charAt(i));
+        }
+    }
+
+    @Test
+    public void testOutOfBounds() {
+        PieceTable table = new PieceTable("Hello");
+        try {
+            table.replace(3, 6, "");
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        try {
+            table.charAt(5);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+    }
+}
@@ -35,7 +35,9 @@ import java.util.List;
 public class Scope {
 
     private static ThreadLocal<ScopeEntry> sScopeItems = new ThreadLocal<ScopeEntry>();
-    static List<ScopedException> sDeferredExceptions = new ArrayList<ScopedException>();
+    // layouts may be parsed on several threads at once
+    static List<ScopedException> sDeferredExceptions =
+            Collections.synchronizedList(new ArrayList<ScopedException>());
 
     public static void enter(final Location location) {
         enter(new LocationScopeProvider() {
@@ -95,21 +97,24 @@ public class Scope {
     }
 
     public static void assertNoError() {
-        if (sDeferredExceptions.isEmpty()) {
-            return;
-        }
         StringBuilder sb = new StringBuilder();
-        HashSet<String> seenMessages = new HashSet<String>();
-        for (ScopedException ex : sDeferredExceptions) {
-            final String message = ex.getMessage();
-            if (!seenMessages.contains(message)) {
-                sb.append(message).append("\n");
-                seenMessages.add(message);
+        synchronized (sDeferredExceptions) {
+            if (sDeferredExceptions.isEmpty()) {
+                return;
+            }
+            HashSet<String> seenMessages = new HashSet<String>();
+            for (ScopedException ex : sDeferredExceptions) {
+                final String message = ex.getMessage();
+                if (!seenMessages.contains(message)) {
+                    sb.append(message).append("\n");
+                    seenMessages.add(message);
+                }
             }
+            // Make sure to clear all exceptions once they are reported. This is necessary in
+            // order to avoid persisting the state of this class to the next build (see bug
+            // 151860061).
+            sDeferredExceptions.clear();
         }
-        // Make sure to clear all exceptions once they are reported. This is necessary in order to
-        // avoid persisting the state of this class to the next build (see bug 151860061).
-        sDeferredExceptions.clear();
         throw new LoggedErrorException("Found data binding error(s):\n\n" + sb.toString());
     }
 
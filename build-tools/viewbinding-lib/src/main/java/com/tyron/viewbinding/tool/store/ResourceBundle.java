@@ -620,6 +620,41 @@ public class ResourceBundle implements Serializable {
         public LayoutFileBundle() {
         }
 
+        /**
+         * Returns a copy of this bundle which is not affected by the changes validation makes to
+         * this bundle, see {@link ResourceBundle#validateAndRegisterErrors()}.
+         */
+        public LayoutFileBundle copy() {
+            LayoutFileBundle copy = new LayoutFileBundle();
+            copy.mFileName = mFileName;
+            copy.mModulePackage = mModulePackage;
+            copy.mFilePath = mFilePath;
+            copy.mConfigName = mConfigName;
+            copy.mBindingClass = mBindingClass;
+            copy.mClassNameLocation = mClassNameLocation;
+            copy.mFullBindingClass = mFullBindingClass;
+            copy.mBindingClassName = mBindingClassName;
+            copy.mBindingPackage = mBindingPackage;
+            copy.mDirectory = mDirectory;
+            copy.mHasVariations = mHasVariations;
+            for (VariableDeclaration variable : mVariables) {
+                copy.mVariables.add(new VariableDeclaration(variable.name, variable.type,
+                        variable.location, variable.declared));
+            }
+            for (NameTypeLocation anImport : mImports) {
+                copy.mImports.add(new NameTypeLocation(anImport.name, anImport.type,
+                        anImport.location));
+            }
+            for (BindingTargetBundle target : mBindingTargetBundles) {
+                copy.mBindingTargetBundles.add(target.copy());
+            }
+            copy.mIsMerge = mIsMerge;
+            copy.mIsBindingData = mIsBindingData;
+            copy.mRootNodeViewType = mRootNodeViewType;
+            copy.mRootNodeViewId = mRootNodeViewId;
+            return copy;
+        }
+
         /**
          * Updates configuration fields from the given bundle but does not change variables,
          * binding expressions etc.
@@ -999,6 +1034,21 @@ public class ResourceBundle implements Serializable {
             mLocation = location;
         }
 
+        /**
+         * Returns a copy of this target, the binding expressions are shared as they are not
+         * changed by validation.
+         */
+        public BindingTargetBundle copy() {
+            BindingTargetBundle copy = new BindingTargetBundle(mId, mViewName, mUsed, mTag,
+                    mOriginalTag, mLocation);
+            copy.mFullClassName = mFullClassName;
+            copy.mBindingBundleList = new ArrayList<>(mBindingBundleList);
+            copy.mIncludedLayout = mIncludedLayout;
+            copy.mInterfaceType = mInterfaceType;
+            copy.mModulePackage = mModulePackage;
+            return copy;
+        }
+
         public void addBinding(String name, String expr, boolean isTwoWay, Location location,
                 Location valueLocation) {
             mBindingBundleList.add(
@@ -0,0 +1,44 @@
+package com.tyron.viewbinding.tool.store
+
+import com.google.common.truth.Truth.assertThat
+import com.tyron.viewbinding.tool.util.RelativizableFile
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class LayoutFileBundleCopyTest {
+    @get:Rule val temporaryFolder = TemporaryFolder()
+
+    private fun parse(name: String, content: String): ResourceBundle.LayoutFileBundle {
+        val file = temporaryFolder.newFolder("res", "layout").resolve("$name.xml")
+        file.writeText(content)
+        return LayoutFileParser.parseXml(
+            RelativizableFile.fromAbsoluteFile(file),
+            "com.example",
+            null,
+            true
+        )!!
+    }
+
+    @Test fun validationDoesNotChangeTheOriginalBundle() {
+        val bundle = parse("example", """
+            <LinearLayout xmlns:android="http://schemas.android.com/apk/res/android">
+                <include layout="@layout/missing" />
+                <include android:id="@+id/other" layout="@layout/missing" />
+            </LinearLayout>
+            """.trimIndent())
+
+        val copy = bundle.copy()
+        val resourceBundle = ResourceBundle("com.example", true)
+        resourceBundle.addLayoutBundle(copy, true)
+        resourceBundle.validateAndRegisterErrors()
+
+        // the include without a binding and without an id is dropped from the validated copy
+        assertThat(copy.bindingTargetBundles.filter { it.includedLayout != null }).hasSize(1)
+        assertThat(copy.getBindingTargetById("@+id/other").interfaceType)
+            .isEqualTo("android.view.View")
+
+        assertThat(bundle.bindingTargetBundles.filter { it.includedLayout != null }).hasSize(2)
+        assertThat(bundle.getBindingTargetById("@+id/other").interfaceType).isNull()
+    }
+}
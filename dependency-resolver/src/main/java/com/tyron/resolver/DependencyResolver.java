@@ -1,23 +1,52 @@
 package com.tyron.resolver;
 
-import android.text.TextUtils;
-
+import com.google.common.base.Strings;
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.RepositoryManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DependencyResolver {
 
+    private static final int DEFAULT_MAX_CONCURRENT_FETCHES = 8;
+    private static final int MAX_CACHED_VERSIONS = 1024;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Parsed versions shared across resolutions, the same handful of version strings are
+     * compared over and over again during conflict resolution. The least recently used
+     * versions are evicted first, guarded by itself.
+     */
+    private static final Map<String, ComparableVersion> sVersionCache =
+            new LinkedHashMap<String, ComparableVersion>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ComparableVersion> eldest) {
+                    return size() > MAX_CACHED_VERSIONS;
+                }
+            };
+
     private final RepositoryManager repository;
     private final Map<Pom, String> resolvedPoms;
 
     private ResolveListener mListener;
+    private int mMaxConcurrentFetches = DEFAULT_MAX_CONCURRENT_FETCHES;
+    /**
+     * Fetches the poms, created on the first resolution and reused by the next ones. Idle
+     * threads time out so an unused resolver does not keep them alive.
+     */
+    private ThreadPoolExecutor mExecutor;
 
     public DependencyResolver(RepositoryManager repository) {
         this.repository = repository;
@@ -57,16 +86,70 @@ public class DependencyResolver {
 
     /**
      * Resolve the list of given dependencies, prioritizing the latest versions of
-     * the conflicting libraries
+     * the conflicting libraries.
+     *
+     * <p>The graph is walked breadth first, the poms of each level are fetched concurrently
+     * while the conflict resolution itself happens in declaration order on the calling thread.
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
-        for (Pom pom : declaredDependencies) {
-            resolve(pom);
+        ExecutorService executor = getExecutor();
+        List<Pom> level = new ArrayList<>(declaredDependencies);
+        while (!level.isEmpty()) {
+            List<Dependency> toFetch = new ArrayList<>();
+            List<Pom> dependents = new ArrayList<>();
+            for (Pom pom : level) {
+                if (!visit(pom)) {
+                    continue;
+                }
+                for (Dependency dependency : getIncludedDependencies(pom)) {
+                    toFetch.add(dependency);
+                    dependents.add(pom);
+                }
+            }
+            level = fetch(executor, toFetch, dependents);
         }
         return new ArrayList<>(resolvedPoms.keySet());
     }
 
-    private void resolve(Pom pom) {
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            mExecutor = new ThreadPoolExecutor(mMaxConcurrentFetches, mMaxConcurrentFetches,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "pom-fetcher-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Sets the maximum number of poms that will be fetched at the same time
+     */
+    public synchronized void setMaxConcurrentFetches(int maxConcurrentFetches) {
+        if (maxConcurrentFetches < 1) {
+            throw new IllegalArgumentException("At least one concurrent fetch is required");
+        }
+        mMaxConcurrentFetches = maxConcurrentFetches;
+        if (mExecutor != null) {
+            // the maximum size can never be lower than the core size
+            if (maxConcurrentFetches > mExecutor.getMaximumPoolSize()) {
+                mExecutor.setMaximumPoolSize(maxConcurrentFetches);
+                mExecutor.setCorePoolSize(maxConcurrentFetches);
+            } else {
+                mExecutor.setCorePoolSize(maxConcurrentFetches);
+                mExecutor.setMaximumPoolSize(maxConcurrentFetches);
+            }
+        }
+    }
+
+    /**
+     * @return whether the pom has been added to the resolved poms and its dependencies
+     * should be visited
+     */
+    private boolean visit(Pom pom) {
         if (resolvedPoms.containsKey(pom)) {
             if (pom.isUserDefined()) {
                 resolvedPoms.remove(pom);
@@ -74,74 +157,120 @@ public class DependencyResolver {
                 String resolvedVersion = resolvedPoms.get(pom);
                 String thisVersion = pom.getVersionName();
                 int result = getHigherVersion(resolvedVersion, thisVersion);
-                if (result == 0) {
-                    return;
-                }
-                if (result > 0) {
-                    return;
-                } else {
-                    resolvedPoms.remove(pom);
+                if (result >= 0) {
+                    return false;
                 }
+                resolvedPoms.remove(pom);
             }
         }
 
         if (mListener != null) {
             mListener.onResolve("Resolving " + pom);
         }
+        resolvedPoms.put(pom, pom.getVersionName());
+        return true;
+    }
 
+    private List<Dependency> getIncludedDependencies(Pom pom) {
         List<Dependency> excludes = pom.getExcludes();
-
+        List<Dependency> included = new ArrayList<>();
         for (Dependency dependency : pom.getDependencies()) {
             if ("test".equals(dependency.getScope())) {
                 continue;
             }
+            if (!isExcluded(excludes, dependency)) {
+                included.add(dependency);
+            }
+        }
+        return included;
+    }
 
-            boolean excluded = excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
-                if (ex == null) {
-                    return false;
-                }
-                if (ex.getGroupId() == null) {
-                    return false;
-                }
-                if (!ex.getGroupId().equals(dependency.getGroupId())) {
-                    return false;
-                }
-
-                if (ex.getArtifactId() == null) {
-                    return false;
-                }
+    private boolean isExcluded(List<Dependency> excludes, Dependency dependency) {
+        for (Dependency ex : excludes) {
+            if (ex == null) {
+                continue;
+            }
+            if (ex.getGroupId() == null) {
+                continue;
+            }
+            if (!ex.getGroupId().equals(dependency.getGroupId())) {
+                continue;
+            }
 
-                if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
-                    return false;
-                }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
-                    return true;
-                }
-                return ex.getVersionName().equals(dependency.getVersionName());
-            });
+            if (ex.getArtifactId() == null) {
+                continue;
+            }
 
-            if (excluded) {
+            if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
                 continue;
             }
+            if (Strings.isNullOrEmpty(ex.getVersionName())) {
+                return true;
+            }
+            if (ex.getVersionName().equals(dependency.getVersionName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fetches the poms of the given dependencies concurrently.
+     *
+     * @param dependents the pom which declared the dependency at the same index
+     * @return the fetched poms in the same order as the dependencies
+     */
+    private List<Pom> fetch(ExecutorService executor,
+                            List<Dependency> dependencies,
+                            List<Pom> dependents) {
+        List<Future<Pom>> futures = new ArrayList<>(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            futures.add(executor.submit(() -> repository.getPom(dependency.toString())));
+        }
+
+        List<Pom> fetched = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Dependency dependency = dependencies.get(i);
+            Pom dependent = dependents.get(i);
+
+            Pom resolvedPom;
+            try {
+                resolvedPom = futures.get(i).get();
+            } catch (ExecutionException e) {
+                resolvedPom = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
 
-            Pom resolvedPom = repository.getPom(dependency.toString());
             if (resolvedPom == null) {
                 if (mListener != null) {
                     mListener.onFailure("Failed to resolve " + dependency);
                 }
                 continue;
             }
-            if (!resolvedPom.equals(pom)) {
-                resolvedPom.addExcludes(excludes);
-                resolve(resolvedPom);
+            if (!resolvedPom.equals(dependent)) {
+                resolvedPom.addExcludes(dependent.getExcludes());
+                fetched.add(resolvedPom);
             }
         }
-        resolvedPoms.put(pom, pom.getVersionName());
+        return fetched;
     }
 
     private int getHigherVersion(String firstVersion, String secondVersion) {
-        ComparableVersion firstComparableVersion = new ComparableVersion(firstVersion);
-        ComparableVersion secondComparableVersion = new ComparableVersion(secondVersion);
+        ComparableVersion firstComparableVersion = getComparableVersion(firstVersion);
+        ComparableVersion secondComparableVersion = getComparableVersion(secondVersion);
         return firstComparableVersion.compareTo(secondComparableVersion);
     }
+
+    private static ComparableVersion getComparableVersion(String version) {
+        synchronized (sVersionCache) {
+            ComparableVersion comparableVersion = sVersionCache.get(version);
+            if (comparableVersion == null) {
+                comparableVersion = new ComparableVersion(version);
+                sVersionCache.put(version, comparableVersion);
+            }
+            return comparableVersion;
+        }
+    }
 }
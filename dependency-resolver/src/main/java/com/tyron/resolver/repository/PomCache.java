@@ -0,0 +1,235 @@
+package com.tyron.resolver.repository;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.common.logging.IdeLog;
+import com.tyron.resolver.model.Dependency;
+import com.tyron.resolver.model.Pom;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * In-memory map of parsed poms keyed by {@code groupId:artifactId:version}, backed by an
+ * append-only file so the parsed metadata survives between sessions without re-parsing
+ * every cached pom file.
+ */
+class PomCache {
+
+    private static final Logger sLogger = IdeLog.getCurrentLogger(PomCache.class);
+
+    private static final int VERSION = 1;
+
+    private final Map<String, Pom> poms = new ConcurrentHashMap<>();
+
+    @Nullable
+    private File indexFile;
+
+    public static String getKey(String groupId, String artifactId, String versionName) {
+        return groupId + ":" + artifactId + ":" + versionName;
+    }
+
+    @Nullable
+    public Pom get(String key) {
+        return poms.get(key);
+    }
+
+    public int size() {
+        return poms.size();
+    }
+
+    /**
+     * Adds the pom to the cache and appends it to the index file if one has been loaded.
+     */
+    public synchronized void put(String key, Pom pom) {
+        if (poms.putIfAbsent(key, pom) != null) {
+            return;
+        }
+        if (indexFile == null) {
+            return;
+        }
+
+        boolean writeHeader = !indexFile.exists() || indexFile.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+            if (writeHeader) {
+                out.writeInt(VERSION);
+            }
+            out.writeUTF(key);
+            writePom(out, pom);
+        } catch (IOException e) {
+            sLogger.warning("Unable to save " + key + " to the pom cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the poms saved in the given file, later additions will be appended to it.
+     */
+    public synchronized void load(@NonNull File indexFile) {
+        this.indexFile = indexFile;
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        Map<String, String> parents = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != VERSION) {
+                in.close();
+                reset();
+                return;
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                Pom pom = readPom(in, parents, key);
+                poms.putIfAbsent(key, pom);
+            }
+        } catch (IOException e) {
+            // a partially written record from an interrupted session, start from scratch
+            sLogger.warning("Pom cache is corrupt, discarding it: " + e.getMessage());
+            poms.clear();
+            reset();
+            return;
+        }
+
+        for (Map.Entry<String, String> entry : parents.entrySet()) {
+            Pom pom = poms.get(entry.getKey());
+            Pom parent = poms.get(entry.getValue());
+            if (pom != null && parent != null) {
+                pom.setParent(parent);
+            }
+        }
+    }
+
+    private void reset() {
+        if (indexFile != null && indexFile.exists() && !indexFile.delete()) {
+            sLogger.warning("Unable to delete pom cache " + indexFile);
+        }
+    }
+
+    private static void writePom(DataOutputStream out, Pom pom) throws IOException {
+        writeString(out, pom.getGroupId());
+        writeString(out, pom.getArtifactId());
+        writeString(out, pom.getVersionName());
+        writeString(out, pom.getPackaging());
+
+        Pom parent = pom.getParent();
+        writeString(out, parent != null ? parent.getDeclarationString() : null);
+
+        Map<String, String> properties = pom.getProperties();
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+
+        writeDependencies(out, pom.getDependencies());
+        writeDependencies(out, pom.getManagedDependencies());
+    }
+
+    private static Pom readPom(DataInputStream in,
+                               Map<String, String> parents,
+                               String key) throws IOException {
+        Pom pom = new Pom();
+        pom.setGroupId(readString(in));
+        pom.setArtifactId(readString(in));
+        pom.setVersionName(readString(in));
+        pom.setPackaging(readString(in));
+
+        String parent = readString(in);
+        if (parent != null) {
+            parents.put(key, parent);
+        }
+
+        int propertyCount = in.readInt();
+        for (int i = 0; i < propertyCount; i++) {
+            pom.addProperty(in.readUTF(), readString(in));
+        }
+
+        pom.setDependencies(readDependencies(in));
+        pom.setManagedDependencies(readDependencies(in));
+        return pom;
+    }
+
+    private static void writeDependencies(DataOutputStream out,
+                                          List<Dependency> dependencies) throws IOException {
+        out.writeInt(dependencies.size());
+        for (Dependency dependency : dependencies) {
+            writeDependency(out, dependency);
+
+            List<Dependency> excludes = dependency.getExcludes();
+            out.writeInt(excludes.size());
+            for (Dependency exclude : excludes) {
+                writeDependency(out, exclude);
+            }
+        }
+    }
+
+    private static List<Dependency> readDependencies(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Dependency> dependencies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Dependency dependency = readDependency(in);
+
+            int excludeCount = in.readInt();
+            for (int j = 0; j < excludeCount; j++) {
+                dependency.addExclude(readDependency(in));
+            }
+            dependencies.add(dependency);
+        }
+        return dependencies;
+    }
+
+    private static void writeDependency(DataOutputStream out,
+                                        Dependency dependency) throws IOException {
+        writeString(out, dependency.getGroupId());
+        writeString(out, dependency.getArtifactId());
+        writeString(out, dependency.getVersionName());
+        writeString(out, dependency.getScope());
+        writeString(out, dependency.getType());
+    }
+
+    private static Dependency readDependency(DataInputStream in) throws IOException {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId(readString(in));
+        dependency.setArtifactId(readString(in));
+        dependency.setVersionName(readString(in));
+        dependency.setScope(readString(in));
+        dependency.setType(readString(in));
+        return dependency;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+}
@@ -4,14 +4,13 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import com.tyron.common.logging.IdeLog;
 import com.tyron.common.util.FileUtilsEx;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -22,8 +21,9 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 import java.util.logging.Logger;
 import java.util.zip.ZipFile;
@@ -34,13 +34,22 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
     private static final Logger sLogger = IdeLog.getCurrentLogger(RepositoryManagerImpl.class);
 
+    private static final String POM_CACHE_FILE_NAME = "pom-cache.bin";
+
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+    private final PomCache pomCache;
+
+    /**
+     * Poms that are currently being fetched, so concurrent requests for the same pom
+     * wait for the first one instead of fetching it again
+     */
+    private final Map<String, SettableFuture<Pom>> pendingPoms;
 
     public RepositoryManagerImpl() {
         this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.pomCache = new PomCache();
+        this.pendingPoms = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -50,32 +59,47 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
-            }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
+        String key = PomCache.getKey(pomNames[0], pomNames[1], pomNames[2]);
+        Pom cached = pomCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        SettableFuture<Pom> future = SettableFuture.create();
+        SettableFuture<Pom> pending = pendingPoms.putIfAbsent(key, future);
+        if (pending != null) {
+            return Futures.getUnchecked(pending);
+        }
+
+        try {
+            // another thread may have finished fetching it before this one became pending
+            Pom pom = pomCache.get(key);
+            if (pom == null) {
+                pom = getPomFromUrls(pomNames);
+                if (pom != null) {
+                    pomCache.put(key, pom);
+                }
             }
+            future.set(pom);
             return pom;
+        } catch (RuntimeException e) {
+            future.setException(e);
+            throw e;
+        } finally {
+            pendingPoms.remove(key);
         }
-        return getPomFromUrls(pomNames);
     }
 
     private Pom getPomFromUrls(String[] names) {
         InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
         if (is != null) {
             String contents;
-            try {
+            try (InputStream ignored = is) {
                 contents = CharStreams.toString(new InputStreamReader(is));
                 Pom parsed = new PomParser(this).parse(contents);
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
                 return parsed;
             } catch (IOException | XmlPullParserException | SAXException e) {
                 String message = "Failed to parse input stream.\n" +
@@ -205,28 +229,10 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
-
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser(this);
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException | SAXException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                    sLogger.severe("Unable to parse file " + pom + "\n" +
-                                   "Reason: " + e.getMessage());
-                }
-            }
         }
+
+        // poms parsed in previous sessions, the pom files of the repositories are only parsed
+        // when they are not in this cache
+        pomCache.load(new File(cacheDir, POM_CACHE_FILE_NAME));
     }
 }
@@ -0,0 +1,120 @@
+package com.tyron.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.LocalRepository;
+import com.tyron.resolver.repository.RepositoryManagerImpl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Resolves a small dependency graph from a file based repository so that the resolution
+ * does not depend on the network.
+ */
+public class LocalDependencyResolverTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File cacheDir;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDir = temporaryFolder.newFolder("cache");
+
+        // app -> [core:1.0, fragment:1.0]
+        // fragment:1.0 -> core:2.0
+        // core:1.0, core:2.0 -> annotation:1.0
+        writePom("com.example", "app", "1.0",
+                dependency("com.example", "core", "1.0"),
+                dependency("com.example", "fragment", "1.0"));
+        writePom("com.example", "fragment", "1.0",
+                dependency("com.example", "core", "2.0"));
+        writePom("com.example", "core", "1.0",
+                dependency("com.example", "annotation", "1.0"));
+        writePom("com.example", "core", "2.0",
+                dependency("com.example", "annotation", "1.0"));
+        writePom("com.example", "annotation", "1.0");
+    }
+
+    @Test
+    public void testResolveLatestVersion() {
+        RepositoryManagerImpl repository = createRepositoryManager();
+        Pom app = repository.getPom("com.example:app:1.0");
+        assert app != null;
+
+        DependencyResolver resolver = new DependencyResolver(repository);
+        resolver.setMaxConcurrentFetches(2);
+        List<Pom> resolved = resolver.resolve(ImmutableList.of(app));
+
+        assert resolved.size() == 4;
+        Pom core = resolved.get(resolved.indexOf(Pom.valueOf("com.example:core:0")));
+        assert "2.0".equals(core.getVersionName());
+        assert resolved.contains(Pom.valueOf("com.example:annotation:1.0"));
+    }
+
+    @Test
+    public void testPomCachePersists() throws IOException {
+        RepositoryManagerImpl repository = createRepositoryManager();
+        Pom fragment = repository.getPom("com.example:fragment:1.0");
+        assert fragment != null;
+
+        // the pom files are gone, the next session should still know about the fragment pom
+        FileUtils.deleteDirectory(new File(cacheDir, "local"));
+
+        RepositoryManagerImpl nextSession = createRepositoryManager();
+        Pom cached = nextSession.getPom("com.example:fragment:1.0");
+        assert cached != null;
+        assert cached.getDependencies().size() == 1;
+        assert "com.example:core:2.0".equals(cached.getDependencies().get(0).toString());
+
+        assert nextSession.getPom("com.example:app:1.0") == null;
+    }
+
+    private RepositoryManagerImpl createRepositoryManager() {
+        RepositoryManagerImpl repository = new RepositoryManagerImpl();
+        repository.addRepository(new LocalRepository("local"));
+        repository.setCacheDirectory(cacheDir);
+        repository.initialize();
+        return repository;
+    }
+
+    private static String dependency(String groupId, String artifactId, String version) {
+        return "<dependency>" +
+               "<groupId>" + groupId + "</groupId>" +
+               "<artifactId>" + artifactId + "</artifactId>" +
+               "<version>" + version + "</version>" +
+               "</dependency>";
+    }
+
+    private void writePom(String groupId,
+                          String artifactId,
+                          String version,
+                          String... dependencies) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        contents.append("<project>");
+        contents.append("<groupId>").append(groupId).append("</groupId>");
+        contents.append("<artifactId>").append(artifactId).append("</artifactId>");
+        contents.append("<version>").append(version).append("</version>");
+        contents.append("<dependencies>");
+        for (String dependency : dependencies) {
+            contents.append(dependency);
+        }
+        contents.append("</dependencies>");
+        contents.append("</project>");
+
+        String path = groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/" +
+                      artifactId + "-" + version + ".pom";
+        File file = new File(cacheDir, "local/" + path);
+        FileUtils.writeStringToFile(file, contents.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package com.tyron.eclipse.formatter;
+
+import java.util.List;
+
+/**
+ * A single replacement produced by the formatter, the characters from {@link #getOffset()}
+ * to {@link #getEnd()} of the original source should be replaced with {@link #getText()}.
+ */
+public final class FormatEdit {
+
+    private final int offset;
+    private final int length;
+    private final String text;
+
+    public FormatEdit(int offset, int length, String text) {
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getEnd() {
+        return offset + length;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Applies the given edits to the source.
+     *
+     * @param source The original source
+     * @param edits  Non overlapping edits sorted by their offset
+     * @return The edited source
+     */
+    public static String apply(CharSequence source, List<FormatEdit> edits) {
+        StringBuilder builder = new StringBuilder(source.length());
+        int last = 0;
+        for (FormatEdit edit : edits) {
+            builder.append(source, last, edit.offset);
+            builder.append(edit.text);
+            last = edit.getEnd();
+        }
+        builder.append(source, last, source.length());
+        return builder.toString();
+    }
+
+    /**
+     * Maps an offset in the original source to the offset in the edited source.
+     *
+     * @param offset The offset in the original source
+     * @param edits  Non overlapping edits sorted by their offset
+     */
+    public static int mapOffset(int offset, List<FormatEdit> edits) {
+        int shift = 0;
+        for (FormatEdit edit : edits) {
+            if (edit.offset >= offset) {
+                break;
+            }
+            if (edit.getEnd() > offset) {
+                // the offset is inside the replaced text, move it to the end of the replacement
+                return edit.offset + shift + edit.text.length();
+            }
+            shift += edit.text.length() - edit.length;
+        }
+        return offset + shift;
+    }
+
+    @Override
+    public String toString() {
+        return "FormatEdit{" +
+               "offset=" + offset +
+               ", length=" + length +
+               ", text='" + text + '\'' +
+               '}';
+    }
+}
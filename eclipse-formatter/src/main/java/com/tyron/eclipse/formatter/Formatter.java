@@ -6,14 +6,11 @@ import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.ImportDeclaration;
 import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
 import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
-import org.eclipse.jdt.internal.formatter.DefaultCodeFormatter;
 import org.eclipse.jdt.internal.formatter.DefaultCodeFormatterOptions;
-import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
-import org.eclipse.jface.text.IDocument;
-import org.eclipse.text.edits.TextEdit;
 import org.eclipse.text.edits.TextEditVisitor;
 
+import java.util.List;
+
 /**
  * Formats java source files using the eclipse formatter.
  */
@@ -44,9 +41,8 @@ public class Formatter {
      * @return Formatted java source
      */
     public static String format(String source, int indentLevel, int start, int length) {
-        DefaultCodeFormatterOptions options =
-                DefaultCodeFormatterOptions.getEclipseDefaultSettings();
-        return format(source, indentLevel, start, length, options);
+        return format(source,
+                FormatterService.getInstance().format(source, indentLevel, start, length));
     }
 
     /**
@@ -64,16 +60,14 @@ public class Formatter {
                                 int start,
                                 int length,
                                 DefaultCodeFormatterOptions options) {
-        DefaultCodeFormatter formatter = new DefaultCodeFormatter(options);
-        TextEdit format = formatter
-                .format(DefaultCodeFormatter.K_COMPILATION_UNIT, source, start, length, indentLevel, "\n");
+        return format(source,
+                new FormatterService(options).format(source, indentLevel, start, length));
+    }
 
-        IDocument document = new Document(source);
-        try {
-            format.apply(document);
-        } catch (BadLocationException e) {
+    private static String format(String source, List<FormatEdit> edits) {
+        if (edits.isEmpty()) {
             return source;
         }
-        return document.get();
+        return FormatEdit.apply(source, edits);
     }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package com.tyron.eclipse.formatter;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jdt.internal.formatter.DefaultCodeFormatter;
+import org.eclipse.jdt.internal.formatter.DefaultCodeFormatterOptions;
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditVisitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Formats java sources using cached eclipse formatter instances.
+ * <p>
+ * Instead of formatting the whole compilation unit, {@link #formatRegion(String, int, int)}
+ * only formats the member that encloses the given range, and only the statement within it
+ * if the range is inside one. The result is the list of the edits that actually change the
+ * source, so callers can apply them without replacing the whole text.
+ */
+public class FormatterService {
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    /**
+     * Configured formatters keyed by their options, creating a formatter is expensive since
+     * it has to copy and parse every option.
+     */
+    private static final Map<Map<String, String>, DefaultCodeFormatter> sFormatters =
+            new ConcurrentHashMap<>();
+
+    private static final FormatterService sInstance =
+            new FormatterService(DefaultCodeFormatterOptions.getEclipseDefaultSettings());
+
+    public static FormatterService getInstance() {
+        return sInstance;
+    }
+
+    private final DefaultCodeFormatter mFormatter;
+    private final Map<String, String> mParserOptions;
+
+    public FormatterService(DefaultCodeFormatterOptions options) {
+        mFormatter = sFormatters.computeIfAbsent(options.getMap(),
+                map -> new DefaultCodeFormatter(options));
+
+        mParserOptions = new HashMap<>();
+        JavaCore.setComplianceOptions(JavaCore.VERSION_11, mParserOptions);
+    }
+
+    /**
+     * Formats the whole source at the given range.
+     *
+     * @return The edits sorted by their offset, empty if nothing has changed or if the source
+     * cannot be formatted
+     */
+    public List<FormatEdit> format(String source, int indentLevel, int start, int length) {
+        return format(source, CodeFormatter.K_COMPILATION_UNIT, indentLevel, start, length, 0,
+                source);
+    }
+
+    /**
+     * Formats the given range of the source, only the member or statement that encloses the
+     * range is given to the formatter.
+     *
+     * @param source The java source
+     * @param start  The start index of the range
+     * @param end    The end index of the range
+     * @return The edits sorted by their offset, empty if nothing has changed or if the source
+     * cannot be formatted
+     */
+    public List<FormatEdit> formatRegion(String source, int start, int end) {
+        start = Math.max(0, Math.min(start, source.length()));
+        end = Math.max(start, Math.min(end, source.length()));
+
+        CompilationUnit unit = parse(source, start);
+        ASTNode covering = NodeFinder.perform(unit, start, end - start);
+
+        BodyDeclaration member = getEnclosingMember(covering);
+        if (member == null) {
+            return format(source, 0, start, end - start);
+        }
+
+        int memberStart = getLineStart(source, unit.getExtendedStartPosition(member));
+        int memberEnd = unit.getExtendedStartPosition(member) + unit.getExtendedLength(member);
+
+        int regionStart = memberStart;
+        int regionEnd = memberEnd;
+        Statement statement = getEnclosingStatement(covering, member);
+        if (statement != null) {
+            regionStart = getLineStart(source, unit.getExtendedStartPosition(statement));
+            regionEnd = unit.getExtendedStartPosition(statement) +
+                        unit.getExtendedLength(statement);
+        }
+        regionStart = Math.min(regionStart, getLineStart(source, start));
+        regionEnd = Math.max(regionEnd, end);
+        if (regionStart < memberStart || regionEnd > memberEnd) {
+            return format(source, 0, start, end - start);
+        }
+
+        String snippet = source.substring(memberStart, memberEnd);
+        return format(snippet, CodeFormatter.K_CLASS_BODY_DECLARATIONS, getTypeDepth(member),
+                regionStart - memberStart, regionEnd - regionStart, memberStart, source);
+    }
+
+    /**
+     * @param offset The offset of the given snippet in the whole source
+     */
+    private List<FormatEdit> format(String snippet,
+                                    int kind,
+                                    int indentLevel,
+                                    int start,
+                                    int length,
+                                    int offset,
+                                    String source) {
+        TextEdit edit;
+        synchronized (mFormatter) {
+            edit = mFormatter.format(kind, snippet, start, length, indentLevel,
+                    LINE_SEPARATOR);
+        }
+        if (edit == null) {
+            return Collections.emptyList();
+        }
+
+        List<FormatEdit> edits = new ArrayList<>();
+        edit.accept(new TextEditVisitor() {
+            @Override
+            public boolean visit(ReplaceEdit edit) {
+                add(edit.getOffset(), edit.getLength(), edit.getText());
+                return false;
+            }
+
+            @Override
+            public boolean visit(InsertEdit edit) {
+                add(edit.getOffset(), 0, edit.getText());
+                return false;
+            }
+
+            @Override
+            public boolean visit(DeleteEdit edit) {
+                add(edit.getOffset(), edit.getLength(), "");
+                return false;
+            }
+
+            private void add(int editOffset, int editLength, String text) {
+                FormatEdit minimal = minimize(source, offset + editOffset, editLength, text);
+                if (minimal != null) {
+                    edits.add(minimal);
+                }
+            }
+        });
+        edits.sort(Comparator.comparingInt(FormatEdit::getOffset));
+        return edits;
+    }
+
+    /**
+     * Strips the common prefix and suffix of the replaced and the new text.
+     *
+     * @return null if the edit does not change anything
+     */
+    private static FormatEdit minimize(String source, int offset, int length, String text) {
+        int prefix = 0;
+        int max = Math.min(length, text.length());
+        while (prefix < max && source.charAt(offset + prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        max -= prefix;
+        while (suffix < max && source.charAt(offset + length - suffix - 1) ==
+                               text.charAt(text.length() - suffix - 1)) {
+            suffix++;
+        }
+        if (prefix + suffix == length && length == text.length()) {
+            return null;
+        }
+        return new FormatEdit(offset + prefix, length - prefix - suffix,
+                text.substring(prefix, text.length() - suffix));
+    }
+
+    private CompilationUnit parse(String source, int focalPosition) {
+        ASTParser parser = ASTParser.newParser(AST.JLS11);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(mParserOptions);
+        parser.setSource(source.toCharArray());
+        // the bodies of the methods which do not contain the focal position are skipped
+        parser.setFocalPosition(focalPosition);
+        parser.setResolveBindings(false);
+        parser.setStatementsRecovery(true);
+        return (CompilationUnit) parser.createAST(null);
+    }
+
+    /**
+     * Returns the innermost member that encloses the given node and that is only nested in
+     * type declarations, since its indentation can be computed without formatting its parents.
+     * Top level types are not returned, those are formatted as a compilation unit.
+     */
+    private static BodyDeclaration getEnclosingMember(ASTNode node) {
+        BodyDeclaration member = null;
+        for (ASTNode current = node; current != null; current = current.getParent()) {
+            if (current instanceof BodyDeclaration) {
+                if (member == null) {
+                    member = (BodyDeclaration) current;
+                }
+            } else if (!(current instanceof CompilationUnit)) {
+                // the member is inside a method body or an anonymous class, start over
+                member = null;
+            }
+        }
+        if (member == null || member.getParent() instanceof CompilationUnit) {
+            return null;
+        }
+        return member;
+    }
+
+    private static Statement getEnclosingStatement(ASTNode node, BodyDeclaration member) {
+        for (ASTNode current = node; current != null && current != member;
+             current = current.getParent()) {
+            if (current instanceof Statement) {
+                return (Statement) current;
+            }
+        }
+        return null;
+    }
+
+    private static int getTypeDepth(BodyDeclaration member) {
+        int depth = 0;
+        for (ASTNode current = member.getParent(); current != null;
+             current = current.getParent()) {
+            if (current instanceof AbstractTypeDeclaration) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static int getLineStart(String source, int offset) {
+        int lineStart = offset;
+        while (lineStart > 0) {
+            char c = source.charAt(lineStart - 1);
+            if (c == '\n') {
+                break;
+            }
+            if (!Character.isWhitespace(c)) {
+                // something else is on the same line, keep the original offset
+                return offset;
+            }
+            lineStart--;
+        }
+        return lineStart;
+    }
+}
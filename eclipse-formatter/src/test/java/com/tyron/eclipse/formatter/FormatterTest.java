@@ -1,8 +1,13 @@
 package com.tyron.eclipse.formatter;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+
 public class FormatterTest {
 
     @Test
@@ -11,4 +16,22 @@ public class FormatterTest {
         String formatted = Formatter.format(source, 0, source.length());
         System.out.println(formatted);
     }
+
+    @Test
+    public void testFormatRegionOnlyChangesEnclosingStatement() {
+        String source = "class Test {\n" +
+                        "    void a() {\n" +
+                        "        int x=1;\n" +
+                        "        int y=2;\n" +
+                        "    }\n" +
+                        "    void b() {int z=3;}\n" +
+                        "}\n";
+        int start = source.indexOf("int y");
+        List<FormatEdit> edits = FormatterService.getInstance()
+                .formatRegion(source, start, start);
+        assertFalse(edits.isEmpty());
+
+        String formatted = FormatEdit.apply(source, edits);
+        assertEquals(source.replace("int y=2;", "int y = 2;"), formatted);
+    }
 }
@@ -196,6 +196,14 @@ public class Style extends Value {
         return values;
     }
 
+    /**
+     * @return the name of the parent of this style, if any
+     */
+    @Nullable
+    public String getParent() {
+        return parent;
+    }
+
     public ObjectValue getAllValues(ProteusContext context) {
         ObjectValue values = new ObjectValue();
         Style current = this;
@@ -47,7 +47,7 @@ public class ResourceManager {
 
             File resourcesDir = new File(parent, "res");
             if (resourcesDir.exists()) {
-                parser = new ResourceDrawableParser(mContext, resourcesDir, mFileManager);
+                parser = new ResourceDrawableParser(mContext, resourcesDir, mFileManager, true);
                 defaultDrawables.putAll(parser.getDefaultDrawables());
             }
         }
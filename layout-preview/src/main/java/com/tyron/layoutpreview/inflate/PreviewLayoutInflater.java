@@ -178,7 +178,7 @@ public class PreviewLayoutInflater {
             if (valuesFile.exists()) {
                 File[] children = valuesFile.listFiles(c -> c.getName().endsWith(".xml"));
                 if (children != null) {
-                    mParser.parse(children, "android");
+                    mParser.parsePersistent(children, "android");
                 }
             }
 
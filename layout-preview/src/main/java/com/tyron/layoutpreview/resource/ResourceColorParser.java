@@ -17,10 +17,19 @@ public class ResourceColorParser {
 
     public static Pair<String, Value> parseColor(XmlPullParser parser) throws IOException,
             XmlPullParserException {
+        Pair<String, String> pair = readColor(parser);
+        return Pair.create(pair.first, valueOf(pair.second));
+    }
+
+    /**
+     * Reads the name and the text of a color tag, the text is converted by
+     * {@link #valueOf(String)}.
+     */
+    public static Pair<String, String> readColor(XmlPullParser parser) throws IOException,
+            XmlPullParserException {
         parser.require(XmlPullParser.START_TAG, null, "color");
 
         String name = null;
-        String parent = null;
         for (int i = 0; i < parser.getAttributeCount(); i++) {
             String attributeName = parser.getAttributeName(i);
             String attributeValue = parser.getAttributeValue(i);
@@ -30,14 +39,17 @@ public class ResourceColorParser {
         }
 
         String text = XmlUtils.readText(parser);
+        parser.require(XmlPullParser.END_TAG, null, "color");
+        return Pair.create(name, text);
+    }
 
-        Value value;
+    /**
+     * Returns the color of the text of a color tag, or a reference to the resource it names.
+     */
+    public static Value valueOf(String text) {
         if (Color.isColor(text)) {
-            value = Color.valueOf(text);
-        } else {
-            value = new Resource(text);
+            return Color.valueOf(text);
         }
-        parser.require(XmlPullParser.END_TAG, null, "color");
-        return Pair.create(name, value);
+        return new Resource(text);
     }
 }
@@ -6,6 +6,7 @@ import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.DrawableValue;
 import com.flipkart.android.proteus.value.ObjectValue;
 import com.flipkart.android.proteus.value.Value;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
@@ -21,20 +22,37 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ResourceDrawableParser {
 
+    /**
+     * The xml drawables of each resource directory, keyed by the path of the directory.
+     */
+    private static final Map<String, ResourceFileCache<XmlDrawable>> sCaches =
+            new ConcurrentHashMap<>();
+
+    private static final String CACHE_FILE_NAME = "preview-drawables.json";
+
     private final ProteusContext mContext;
     private final File mResourceDirectory;
     private final FileManager mFileManager;
-    private final Map<String, DrawableValue> drawableValueMap = new HashMap<>();
+    private final boolean mPersistent;
 
     public ResourceDrawableParser(ProteusContext context, File dir, FileManager fileManager) {
+        this(context, dir, fileManager, false);
+    }
+
+    /**
+     * @param persistent Whether the parsed drawables should be saved next to the resource
+     *                   directory, used for the directories of libraries which rarely change
+     */
+    public ResourceDrawableParser(ProteusContext context, File dir, FileManager fileManager,
+                                  boolean persistent) {
         mContext = context;
         mResourceDirectory = dir;
         mFileManager = fileManager;
-        drawableValueMap.putAll(getDefaultDrawables());
+        mPersistent = persistent;
     }
 
     public Map<String, DrawableValue> getDefaultDrawables() {
@@ -45,19 +63,16 @@ public class ResourceDrawableParser {
             return map;
         }
 
+        ResourceFileCache<XmlDrawable> cache = getCache();
         for (File file : xmlFiles) {
             DrawableValue value = null;
 
             if (isImageFile(file)) {
                 value = parseFile(file);
             } else if (file.getName().endsWith(".xml")) {
-                try {
-                    value = parseXml(file);
-                    if (value != null) {
-                        map.put(getName(file), value);
-                    }
-                } catch (IOException | ConvertException | XmlPullParserException ignore) {
-
+                XmlDrawable drawable = cache.get(file, mFileManager, this::parseXml);
+                if (drawable != null) {
+                    value = drawable.toValue(mContext);
                 }
             }
 
@@ -66,9 +81,22 @@ public class ResourceDrawableParser {
             }
         }
 
+        if (mPersistent) {
+            cache.save(getCacheFile());
+        }
         return map;
     }
 
+    private ResourceFileCache<XmlDrawable> getCache() {
+        return sCaches.computeIfAbsent(mResourceDirectory.getAbsolutePath(), path -> mPersistent
+                ? ResourceFileCache.load(getCacheFile(), XmlDrawable.class)
+                : new ResourceFileCache<>());
+    }
+
+    private File getCacheFile() {
+        return new File(mResourceDirectory.getParentFile(), CACHE_FILE_NAME);
+    }
+
     private DrawableValue parseFile(File file) {
         try {
             return DrawableValue.valueOf(file);
@@ -79,27 +107,15 @@ public class ResourceDrawableParser {
     }
 
     @Nullable
-    private DrawableValue parseXml(File file) throws IOException, ConvertException, XmlPullParserException {
-        Optional<CharSequence> contents = mFileManager.getFileContent(file);
-        if (contents.isPresent()) {
-            String contentsString = contents.get().toString();
-            JsonObject converted = new XmlToJsonConverter()
-                    .convert(contentsString);
-            Value value = new ProteusTypeAdapterFactory(mContext)
-                    .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(converted.toString())), true);
-            ObjectValue objectValue = value.getAsObject();
-            if (objectValue != null) {
-                if ("vector".equals(objectValue.getAsString("type"))) {
-                    return new VectorValue(contentsString);
-                }
-                try {
-                    return DrawableValue.valueOf(objectValue, mContext);
-                } catch (Throwable e) {
-                    // TODO LOG
-                }
-            }
+    private XmlDrawable parseXml(File file) throws IOException, ConvertException, XmlPullParserException {
+        String contents = ResourceFileCache.readContents(file, mFileManager);
+        JsonObject converted = new XmlToJsonConverter()
+                .convert(contents);
+        JsonElement type = converted.get("type");
+        if (type != null && "vector".equals(type.getAsString())) {
+            return new XmlDrawable(null, contents);
         }
-        return null;
+        return new XmlDrawable(converted.toString(), null);
     }
 
     private boolean isImageFile(File file) {
@@ -110,4 +126,45 @@ public class ResourceDrawableParser {
     private String getName(File file) {
         return file.getName().substring(0, file.getName().lastIndexOf("."));
     }
+
+    /**
+     * The converted contents of an xml drawable, which do not depend on the context so they
+     * can be kept across preview sessions.
+     */
+    static class XmlDrawable {
+
+        /** The drawable converted to json, null for vector drawables */
+        @Nullable
+        private final String json;
+
+        /** The xml of a vector drawable */
+        @Nullable
+        private final String vector;
+
+        XmlDrawable(@Nullable String json, @Nullable String vector) {
+            this.json = json;
+            this.vector = vector;
+        }
+
+        @Nullable
+        DrawableValue toValue(ProteusContext context) {
+            if (vector != null) {
+                return new VectorValue(vector);
+            }
+            if (json == null) {
+                return null;
+            }
+            try {
+                Value value = new ProteusTypeAdapterFactory(context)
+                        .VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(json)), true);
+                ObjectValue objectValue = value.getAsObject();
+                if (objectValue != null) {
+                    return DrawableValue.valueOf(objectValue, context);
+                }
+            } catch (Throwable e) {
+                // TODO LOG
+            }
+            return null;
+        }
+    }
 }
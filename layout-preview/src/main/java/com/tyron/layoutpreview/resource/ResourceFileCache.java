@@ -0,0 +1,235 @@
+package com.tyron.layoutpreview.resource;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.tyron.builder.project.api.FileManager;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the values parsed from resource files, keyed by the path of the file. An entry is
+ * valid as long as the last modified time and the length of the file are the same, or, for files
+ * opened in the editor, as long as the version of the opened contents is the same. Editing a
+ * file only invalidates the entry of that file.
+ * <p>
+ * The caches are meant to be kept across preview sessions, so the values must not hold
+ * references to a {@link com.flipkart.android.proteus.ProteusContext}.
+ */
+public class ResourceFileCache<V> {
+
+    private static final String TAG = "ResourceFileCache";
+
+    private static final int VERSION = 1;
+
+    public interface Loader<V> {
+        @Nullable
+        V load(@NonNull File file) throws Exception;
+    }
+
+    private final Map<String, Entry<V>> mEntries = new ConcurrentHashMap<>();
+    private volatile boolean mModified;
+
+    /**
+     * Returns the cached value of the file, or loads it if the file has changed since it has
+     * been cached. Files that fail to load are cached as {@code null}.
+     *
+     * @param file        The resource file
+     * @param fileManager The file manager that may have the file opened, may be null
+     * @param loader      Loads the value of the file
+     */
+    @Nullable
+    public V get(@NonNull File file, @Nullable FileManager fileManager,
+                 @NonNull Loader<V> loader) {
+        String key = file.getAbsolutePath();
+        Stamp stamp = Stamp.of(file, fileManager);
+
+        Entry<V> entry = mEntries.get(key);
+        if (entry != null && entry.stamp.equals(stamp)) {
+            return entry.value;
+        }
+
+        V value = null;
+        try {
+            value = loader.load(file);
+        } catch (Exception e) {
+            Log.d(TAG, "Unable to load " + file.getName(), e);
+        }
+        mEntries.put(key, new Entry<>(stamp, value));
+        mModified = true;
+        return value;
+    }
+
+    public void invalidate(@NonNull File file) {
+        if (mEntries.remove(file.getAbsolutePath()) != null) {
+            mModified = true;
+        }
+    }
+
+    public void clear() {
+        mEntries.clear();
+        mModified = true;
+    }
+
+    /**
+     * Reads the contents of the file, the contents opened in the editor are preferred over the
+     * contents on disk.
+     */
+    @NonNull
+    public static String readContents(@NonNull File file, @Nullable FileManager fileManager)
+            throws IOException {
+        if (fileManager != null) {
+            Optional<CharSequence> contents = fileManager.getFileContent(file);
+            if (contents.isPresent()) {
+                return contents.get().toString();
+            }
+        }
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the entries stored by {@link #save(File)}. Returns an empty cache if the file does
+     * not exist or cannot be read.
+     *
+     * @param cacheFile  The file the entries have been saved to
+     * @param valueClass The class of the values, must be serializable by {@link Gson}
+     */
+    @NonNull
+    public static <V> ResourceFileCache<V> load(@NonNull File cacheFile,
+                                                @NonNull Class<V> valueClass) {
+        ResourceFileCache<V> cache = new ResourceFileCache<>();
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        try {
+            String contents = FileUtils.readFileToString(cacheFile, StandardCharsets.UTF_8);
+            JsonObject root = JsonParser.parseString(contents).getAsJsonObject();
+            if (root.get("version").getAsInt() != VERSION) {
+                return cache;
+            }
+
+            Gson gson = new Gson();
+            JsonObject entries = root.getAsJsonObject("entries");
+            for (Map.Entry<String, JsonElement> entry : entries.entrySet()) {
+                JsonObject object = entry.getValue().getAsJsonObject();
+                Stamp stamp = new Stamp(false, object.get("lastModified").getAsLong(),
+                        object.get("length").getAsLong());
+                V value = gson.fromJson(object.get("value"), valueClass);
+                cache.mEntries.put(entry.getKey(), new Entry<>(stamp, value));
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Unable to read " + cacheFile, e);
+            cache.mEntries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the entries of the files on disk to the given file if the cache has been modified
+     * since it has been loaded or last saved. Entries of files opened in the editor are not
+     * saved.
+     */
+    public void save(@NonNull File cacheFile) {
+        if (!mModified) {
+            return;
+        }
+        mModified = false;
+
+        Gson gson = new Gson();
+        JsonObject entries = new JsonObject();
+        for (Map.Entry<String, Entry<V>> entry : mEntries.entrySet()) {
+            Stamp stamp = entry.getValue().stamp;
+            if (stamp.mSnapshot) {
+                continue;
+            }
+            JsonObject object = new JsonObject();
+            object.addProperty("lastModified", stamp.mFirst);
+            object.addProperty("length", stamp.mSecond);
+            object.add("value", gson.toJsonTree(entry.getValue().value));
+            entries.add(entry.getKey(), object);
+        }
+        JsonObject root = new JsonObject();
+        root.addProperty("version", VERSION);
+        root.add("entries", entries);
+
+        try {
+            FileUtils.writeStringToFile(cacheFile, root.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to write " + cacheFile, e);
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final Stamp stamp;
+        @Nullable
+        private final V value;
+
+        private Entry(Stamp stamp, @Nullable V value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Identifies a version of a file, either its last modified time and length on disk or the
+     * version of its contents opened in the editor.
+     */
+    private static class Stamp {
+
+        private final boolean mSnapshot;
+        private final long mFirst;
+        private final long mSecond;
+
+        private Stamp(boolean snapshot, long first, long second) {
+            mSnapshot = snapshot;
+            mFirst = first;
+            mSecond = second;
+        }
+
+        static Stamp of(File file, @Nullable FileManager fileManager) {
+            if (fileManager != null) {
+                Optional<CharSequence> contents = fileManager.getFileContent(file);
+                if (contents.isPresent()) {
+                    long version = fileManager.getSnapshotVersion(file);
+                    // without versions, the contents themselves identify the snapshot
+                    long second = version != -1 ? version : contents.get().toString().hashCode();
+                    return new Stamp(true, contents.get().length(), second);
+                }
+            }
+            return new Stamp(false, file.lastModified(), file.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Stamp stamp = (Stamp) o;
+            return mSnapshot == stamp.mSnapshot && mFirst == stamp.mFirst &&
+                   mSecond == stamp.mSecond;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSnapshot, mFirst, mSecond);
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.tyron.layoutpreview.resource;
 
 import android.util.Log;
 
-import androidx.annotation.Nullable;
-
 import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.Layout;
 import com.flipkart.android.proteus.value.Value;
@@ -23,11 +21,16 @@ import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
 public class ResourceLayoutParser {
     private static final String TAG = ResourceLayoutParser.class.getSimpleName();
 
+    /**
+     * The layouts converted to json, the conversion does not depend on the context so it is
+     * kept across preview sessions.
+     */
+    private static final ResourceFileCache<String> sLayoutCache = new ResourceFileCache<>();
+
     private final ProteusContext mContext;
     private final File mResourceDirectory;
     private final FileManager mFileManager;
@@ -56,12 +59,17 @@ public class ResourceLayoutParser {
         Map<String, Layout> map = new HashMap<>();
 
         for (File file : xmlFiles) {
+            String json = sLayoutCache.get(file, mFileManager, this::convertLayout);
+            if (json == null) {
+                continue;
+            }
             try {
-                Value layout = parseLayout(file);
+                Value layout = new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
+                        .read(new JsonReader(new StringReader(json)), false);
                 if (layout != null && layout.isLayout()) {
                     map.put(getName(file), layout.getAsLayout());
                 }
-            } catch (IOException | XmlPullParserException | ConvertException e) {
+            } catch (IOException e) {
                 if (BuildConfig.DEBUG) {
                     Log.d(TAG, "Unable to parse file: " + file.getName(), e);
                 }
@@ -71,17 +79,11 @@ public class ResourceLayoutParser {
         return map;
     }
 
-    @Nullable
-    private Value parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
-        Optional<CharSequence> fileContent = mFileManager.getFileContent(file);
-        if (fileContent.isPresent()) {
-            String contents = fileContent.get().toString();
-            JsonObject jsonObject = new XmlToJsonConverter()
-                    .convert(contents);
-            return new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
-                    .read(new JsonReader(new StringReader(jsonObject.toString())), false);
-        }
-        return null;
+    private String convertLayout(File file) throws ConvertException, XmlPullParserException, IOException {
+        String contents = ResourceFileCache.readContents(file, mFileManager);
+        JsonObject jsonObject = new XmlToJsonConverter()
+                .convert(contents);
+        return jsonObject.toString();
     }
 
     private String getName(File file) {
@@ -18,6 +18,7 @@ import com.flipkart.android.proteus.value.Array;
 import com.flipkart.android.proteus.value.Color;
 import com.flipkart.android.proteus.value.DrawableValue;
 import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Primitive;
 import com.flipkart.android.proteus.value.Style;
 import com.flipkart.android.proteus.value.Value;
 import com.google.gson.JsonObject;
@@ -42,9 +43,11 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ResourceValueParser {
 
@@ -59,6 +62,16 @@ public class ResourceValueParser {
         sSupportedDirs.add("values-night-v8");
     }
 
+    /**
+     * The values of the files of each resource directory, keyed by the path of the directory.
+     * They are shared by every parser so the files of the framework and of the libraries are
+     * only parsed once.
+     */
+    private static final Map<String, ResourceFileCache<ParsedValues>> sCaches =
+            new ConcurrentHashMap<>();
+
+    private static final String CACHE_FILE_NAME = "preview-values.json";
+
     public Map<String, Value> mStrings = new HashMap<>();
     public Map<String, Style> mStyles = new HashMap<>();
     public Map<String, Value> mColors = new HashMap<>();
@@ -115,22 +128,24 @@ public class ResourceValueParser {
 
     public void parse(AndroidModule module) {
         File resourcesDir = module.getAndroidResourcesDirectory();
-        parseResDirectory(resourcesDir, "");
+        parseResDirectory(resourcesDir, "", false);
 
         for (File library : module.getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
                 continue;
             }
-            parseResDirectory(new File(parent, "res"), "");
+            parseResDirectory(new File(parent, "res"), "", true);
         }
     }
 
-    private void parseResDirectory(File resDir, String prefix) {
+    private void parseResDirectory(File resDir, String prefix, boolean persistent) {
         if (resDir == null || !resDir.exists()) {
             return;
         }
 
+        // a persistent cache is loaded before the files of the directory are parsed
+        ResourceFileCache<ParsedValues> cache = getCache(resDir, persistent);
         File[] files = resDir.listFiles(File::isDirectory);
         if (files != null) {
             for (File file : files) {
@@ -148,30 +163,55 @@ public class ResourceValueParser {
                 }
             }
         }
+
+        if (persistent) {
+            cache.save(getCacheFile(resDir));
+        }
     }
 
     public void parse(@NonNull File[] children, String namePrefix) {
         for (File child : children) {
-            try {
-                parse(child, namePrefix);
-            } catch (XmlPullParserException e) {
-                Log.e("ResourceValueParser", "Unable to parse XML", e);
-            } catch (IOException e) {
-                Log.e("ResourceValueParser", "File error", e);
-            }
+            parse(child, namePrefix);
         }
     }
 
+    /**
+     * Adds the values of the files of a resource directory which rarely changes, such as the
+     * framework values. The parsed values are saved next to the resource directory.
+     */
+    public void parsePersistent(@NonNull File[] children, String namePrefix) {
+        if (children.length == 0) {
+            return;
+        }
+        File resDir = getResDirectory(children[0]);
+        ResourceFileCache<ParsedValues> cache = getCache(resDir, true);
+        parse(children, namePrefix);
+        cache.save(getCacheFile(resDir));
+    }
+
     private void parse(@NonNull File[] children) {
         parse(children, "");
     }
 
-    public void parse(File file, String namePrefix) throws IOException, XmlPullParserException {
-        parse(new InputStreamReader(new FileInputStream(file)), namePrefix);
+    /**
+     * Adds the values of the file, the file is only parsed if it has changed since the last
+     * time it has been parsed by any parser.
+     */
+    public void parse(File file, String namePrefix) {
+        ParsedValues values = getCache(getResDirectory(file), false).get(file, null, f -> {
+            ParsedValues parsed = new ParsedValues();
+            try (Reader reader = new InputStreamReader(new FileInputStream(f))) {
+                parse(reader, parsed);
+            }
+            return parsed;
+        });
+        if (values != null) {
+            addValues(values, namePrefix);
+        }
     }
 
-    public void parse(File file) throws IOException, XmlPullParserException {
-        parse(new InputStreamReader(new FileInputStream(file)), "");
+    public void parse(File file) {
+        parse(file, "");
     }
 
     public void parse(String contents) throws IOException, XmlPullParserException {
@@ -179,9 +219,36 @@ public class ResourceValueParser {
     }
 
     public void parse(Reader reader, String namePrefix) throws IOException, XmlPullParserException {
-        if (!namePrefix.isEmpty() && !namePrefix.endsWith(":")) {
-            namePrefix = namePrefix + ":";
-        }
+        ParsedValues values = new ParsedValues();
+        parse(reader, values);
+        addValues(values, namePrefix);
+    }
+
+    /**
+     * Returns the cache of the resource directory. A persistent cache is read from the file it
+     * has been saved to the first time it is used.
+     */
+    private static ResourceFileCache<ParsedValues> getCache(File resDir, boolean persistent) {
+        return sCaches.computeIfAbsent(resDir.getAbsolutePath(), path -> persistent
+                ? ResourceFileCache.load(getCacheFile(resDir), ParsedValues.class)
+                : new ResourceFileCache<>());
+    }
+
+    private static File getCacheFile(File resDir) {
+        return new File(resDir.getParentFile(), CACHE_FILE_NAME);
+    }
+
+    /**
+     * @return the resource directory of a file in one of its sub directories
+     */
+    private static File getResDirectory(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File resDir = directory.getParentFile();
+        return resDir != null ? resDir : directory;
+    }
+
+    private void parse(Reader reader, ParsedValues values) throws IOException,
+            XmlPullParserException {
         XmlPullParser parser;
 
         parser = XmlPullParserFactory.newInstance().newPullParser();
@@ -198,19 +265,19 @@ public class ResourceValueParser {
                 String tag = parser.getName();
                 switch (tag) {
                     case "string":
-                        parseStringTag(parser, namePrefix);
+                        parseStringTag(parser, values);
                         break;
                     case "item":
-                        parseItemTag(parser, namePrefix);
+                        parseItemTag(parser, values);
                         break;
                     case "style":
-                        parseStyleTag(parser, namePrefix);
+                        parseStyleTag(parser, values);
                         break;
                     case "color":
-                        parseColorTag(parser, namePrefix);
+                        parseColorTag(parser, values);
                         break;
                     case "dimen":
-                        parseDimension(parser, namePrefix);
+                        parseDimension(parser, values);
                         break;
                     default:
                         XmlUtils.skip(parser);
@@ -222,26 +289,83 @@ public class ResourceValueParser {
         }
     }
 
+    /**
+     * Adds the values parsed from a file, following the same precedence as if the values had
+     * been parsed in place: the first string, style and color with a name is kept while items
+     * and dimensions replace the previous value. The values are created for the context of
+     * this parser.
+     */
+    private void addValues(ParsedValues values, String namePrefix) {
+        if (!namePrefix.isEmpty() && !namePrefix.endsWith(":")) {
+            namePrefix = namePrefix + ":";
+        }
+        for (Map.Entry<String, String> entry : values.strings.entrySet()) {
+            mStrings.putIfAbsent(namePrefix + entry.getKey(), new Primitive(entry.getValue()));
+        }
+        for (Map.Entry<String, String> entry : values.items.entrySet()) {
+            mStrings.put(namePrefix + entry.getKey(), new Primitive(entry.getValue()));
+        }
+        for (Map.Entry<String, ParsedStyle> entry : values.styles.entrySet()) {
+            String name = namePrefix + entry.getKey();
+            if (!mStyles.containsKey(name)) {
+                mStyles.put(name, entry.getValue().toStyle(entry.getKey()));
+            }
+        }
+        for (Map.Entry<String, String> entry : values.colors.entrySet()) {
+            String name = namePrefix + entry.getKey();
+            if (!mColors.containsKey(name)) {
+                mColors.put(name, ResourceColorParser.valueOf(entry.getValue()));
+            }
+        }
+        for (Map.Entry<String, String> entry : values.colorStateLists.entrySet()) {
+            Value stateList = toColorStateList(entry.getValue());
+            if (stateList != null) {
+                mColors.put(entry.getKey(), stateList);
+            }
+        }
+        for (Map.Entry<String, String> entry : values.dimensions.entrySet()) {
+            mDimensions.put(namePrefix + entry.getKey(), new Primitive(entry.getValue()));
+        }
+    }
+
     private void parseColor(File[] children, String namePrefix) {
         for (File child : children) {
-            try {
-                XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
-                parser.setInput(new InputStreamReader(new FileInputStream(child)));
-                XmlUtils.advanceToRootNode(parser);
-
-                parseColor(parser, child.getName(), namePrefix);
-            } catch (XmlPullParserException | IOException e) {
-                // ignored
+            ParsedValues values = getCache(getResDirectory(child), false).get(child, null, file -> {
+                ParsedValues parsed = new ParsedValues();
+                try (Reader reader = new InputStreamReader(new FileInputStream(file))) {
+                    XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+                    parser.setInput(reader);
+                    XmlUtils.advanceToRootNode(parser);
+
+                    parseColor(parser, file.getName(), parsed);
+                }
+                return parsed;
+            });
+            if (values != null) {
+                addValues(values, namePrefix);
             }
         }
     }
-    private void parseColor(XmlPullParser parser, String fileName, String namePrefix) throws IOException,
+
+    private void parseColor(XmlPullParser parser, String fileName, ParsedValues values) throws IOException,
             XmlPullParserException {
         XmlToJsonConverter converter = new XmlToJsonConverter();
         try {
             JsonObject jsonObjects = converter.convert(parser);
+            values.colorStateLists.put(fileName.replace(".xml", ""), jsonObjects.toString());
+        } catch (ConvertException e) {
+            Log.e("ParseSelectorTag", "Unable to convert to json", e);
+        }
+    }
+
+    /**
+     * Creates the color state list of a selector converted to json.
+     */
+    @Nullable
+    private Value toColorStateList(String json) {
+        try {
             Value read =
-                    new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(jsonObjects.toString())), true);
+                    new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER.read(new JsonReader(new StringReader(json)), true);
             if (read.isObject()) {
                 ObjectValue objectValue = read.getAsObject();
                 Array children = objectValue.getAsArray("children");
@@ -277,49 +401,84 @@ public class ResourceValueParser {
                     states[i] = temp;
                 }
 
-                Color.LazyStateList lazyStateList = Color.LazyStateList.valueOf(states, colors, alphas);
-                mColors.put(fileName.replace(".xml", ""), lazyStateList);
+                return Color.LazyStateList.valueOf(states, colors, alphas);
             }
-        } catch (ConvertException e) {
-            Log.e("ParseSelectorTag", "Unable to convert to json", e);
+        } catch (IOException e) {
+            Log.e("ParseSelectorTag", "Unable to read the color state list", e);
         }
+        return null;
     }
 
-    private void parseDimension(XmlPullParser parser, String namePrefix) throws IOException,
+    private void parseDimension(XmlPullParser parser, ParsedValues values) throws IOException,
             XmlPullParserException {
         Pair<String, Value> pair = ResourceDimensionParser.parseDimension(parser);
-        mDimensions.put(namePrefix + pair.first, pair.second);
+        values.dimensions.put(pair.first, pair.second.getAsString());
     }
 
-    private void parseStyleTag(XmlPullParser parser, String namePrefix) throws IOException,
+    private void parseStyleTag(XmlPullParser parser, ParsedValues values) throws IOException,
             XmlPullParserException {
         Pair<String, Style> pair = ResourceStyleParser.parseStyleTag(parser);
-        if (!mStyles.containsKey(pair.first)) {
-            mStyles.put(namePrefix + pair.first, pair.second);
+        if (!values.styles.containsKey(pair.first)) {
+            values.styles.put(pair.first, new ParsedStyle(pair.second));
         }
     }
 
-    private void parseStringTag(XmlPullParser parser, String namePrefix) throws IOException,
+    private void parseStringTag(XmlPullParser parser, ParsedValues values) throws IOException,
             XmlPullParserException {
         Pair<String, Value> pair = ResourceStringParser.parseStringXmlInternal(parser);
-        if (!mStrings.containsKey(pair.first)) {
-            mStrings.put(namePrefix + pair.first, pair.second);
-        }
+        values.strings.putIfAbsent(pair.first, pair.second.getAsString());
     }
 
-    private void parseColorTag(XmlPullParser parser, String namePrefix) throws IOException,
+    private void parseColorTag(XmlPullParser parser, ParsedValues values) throws IOException,
             XmlPullParserException {
-        Pair<String, Value> pair = ResourceColorParser.parseColor(parser);
-        if (!mColors.containsKey(pair.first)) {
-            mColors.put(namePrefix + pair.first, pair.second);
-        }
+        Pair<String, String> pair = ResourceColorParser.readColor(parser);
+        values.colors.putIfAbsent(pair.first, pair.second);
     }
 
-    private void parseItemTag(XmlPullParser parser, String namePrefix) throws IOException,
+    private void parseItemTag(XmlPullParser parser, ParsedValues values) throws IOException,
             XmlPullParserException {
         Pair<String, Value> pair = ResourceStringParser.parseItemString(parser);
         if (pair != null) {
-            mStrings.put(namePrefix + pair.first, pair.second);
+            values.items.put(pair.first, pair.second.getAsString());
+        }
+    }
+
+    /**
+     * The values declared in a single resource file, without any name prefix. The values are
+     * kept as their text, or as json for color state lists, so they can be saved and kept
+     * across preview sessions; the proteus values are created for each session.
+     */
+    private static class ParsedValues {
+        final Map<String, String> strings = new HashMap<>();
+        final Map<String, String> items = new HashMap<>();
+        final Map<String, ParsedStyle> styles = new HashMap<>();
+        final Map<String, String> colors = new HashMap<>();
+        final Map<String, String> colorStateLists = new HashMap<>();
+        final Map<String, String> dimensions = new HashMap<>();
+    }
+
+    /**
+     * The parent and the items of a style tag.
+     */
+    private static class ParsedStyle {
+
+        @Nullable
+        private final String parent;
+        private final Map<String, String> items = new LinkedHashMap<>();
+
+        ParsedStyle(Style style) {
+            parent = style.getParent();
+            for (Map.Entry<String, Value> entry : style.getValues().entrySet()) {
+                items.put(entry.getKey(), entry.getValue().getAsString());
+            }
+        }
+
+        Style toStyle(String name) {
+            Style style = new Style(name, parent);
+            for (Map.Entry<String, String> entry : items.entrySet()) {
+                style.addValue(entry.getKey(), entry.getValue());
+            }
+            return style;
         }
     }
 }
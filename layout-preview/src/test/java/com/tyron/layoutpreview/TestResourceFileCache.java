@@ -0,0 +1,65 @@
+package com.tyron.layoutpreview;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.tyron.layoutpreview.resource.ResourceFileCache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TestResourceFileCache {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyChangedFilesAreLoadedAgain() throws IOException {
+        File first = mFolder.newFile("first.xml");
+        File second = mFolder.newFile("second.xml");
+        FileUtils.writeStringToFile(first, "first", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(second, "second", StandardCharsets.UTF_8);
+
+        AtomicInteger loads = new AtomicInteger();
+        ResourceFileCache.Loader<String> loader = file -> {
+            loads.incrementAndGet();
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        };
+
+        ResourceFileCache<String> cache = new ResourceFileCache<>();
+        assertThat(cache.get(first, null, loader)).isEqualTo("first");
+        assertThat(cache.get(second, null, loader)).isEqualTo("second");
+        assertThat(cache.get(first, null, loader)).isEqualTo("first");
+        assertThat(loads.get()).isEqualTo(2);
+
+        FileUtils.writeStringToFile(first, "changed", StandardCharsets.UTF_8);
+        assertThat(cache.get(first, null, loader)).isEqualTo("changed");
+        assertThat(cache.get(second, null, loader)).isEqualTo("second");
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testSavedEntriesAreReused() throws IOException {
+        File file = mFolder.newFile("drawable.xml");
+        FileUtils.writeStringToFile(file, "<shape/>", StandardCharsets.UTF_8);
+        File cacheFile = new File(mFolder.getRoot(), "cache.json");
+
+        ResourceFileCache<String> cache = new ResourceFileCache<>();
+        cache.get(file, null, f -> "converted");
+        cache.save(cacheFile);
+
+        ResourceFileCache<String> loaded = ResourceFileCache.load(cacheFile, String.class);
+        assertThat(loaded.get(file, null, f -> "loaded again")).isEqualTo("converted");
+    }
+}
@@ -10,6 +10,9 @@ import java.util.Arrays;
  */
 public final class TerminalBuffer {
 
+    /** The number of transcript rows above the screen which are kept unpacked, see {@link TerminalRow#pack()}. */
+    private static final int PACK_DISTANCE = 16;
+
     TerminalRow[] mLines;
     /** The length of {@link #mLines}. */
     int mTotalRows;
@@ -399,6 +402,13 @@ public final class TerminalBuffer {
         if (mActiveTranscriptRows < mTotalRows - mScreenRows) {
             mActiveTranscriptRows++;
         }
+        // Pack the row that is far enough from the screen to not be modified anymore:
+        if (mActiveTranscriptRows >= PACK_DISTANCE) {
+            TerminalRow packRow = mLines[externalToInternalRow(-PACK_DISTANCE)];
+            if (packRow != null) {
+                packRow.pack();
+            }
+        }
 
         // Blank the newly revealed line above the bottom margin:
         int blankRow = externalToInternalRow(bottomMargin - 1);
@@ -501,7 +511,7 @@ public final class TerminalBuffer {
                 } else {
                     effect &= ~bits;
                 }
-                line.mStyle[x] = TextStyle.encode(foreColor, backColor, effect);
+                line.setStyle(x, TextStyle.encode(foreColor, backColor, effect));
             }
         }
     }
@@ -19,8 +19,10 @@ public final class TerminalRow {
     private short mSpaceUsed;
     /** If this row has been line wrapped due to text output at the end of line. */
     boolean mLineWrap;
-    /** The style bits of each cell in the row. See {@link TextStyle}. */
-    final long[] mStyle;
+    /** The style bits of each cell in the row, or null if the row is packed. See {@link TextStyle}. */
+    private long[] mStyle;
+    /** The style of every cell of a packed row. */
+    private long mPackedStyle;
     /** If this row might contain chars with width != 1, used for deactivating fast path */
     boolean mHasNonOneWidthOrSurrogateChars;
 
@@ -121,15 +123,53 @@ public final class TerminalRow {
         return false;
     }
 
+    /**
+     * Releases the memory this row does not need while it is in the transcript: a style array
+     * holding the same style for every cell, and the spare capacity of the text. The row is
+     * unpacked again when it is modified.
+     */
+    void pack() {
+        if (mStyle != null) {
+            long style = mStyle[0];
+            boolean uniform = true;
+            for (int i = 1; i < mColumns; i++) {
+                if (mStyle[i] != style) {
+                    uniform = false;
+                    break;
+                }
+            }
+            if (uniform) {
+                mPackedStyle = style;
+                mStyle = null;
+            }
+        }
+        int capacity = Math.max(mSpaceUsed, mColumns);
+        if (mText.length > capacity) {
+            mText = Arrays.copyOf(mText, capacity);
+        }
+    }
+
+    private void unpack() {
+        if (mStyle == null) {
+            mStyle = new long[mColumns];
+            Arrays.fill(mStyle, mPackedStyle);
+        }
+    }
+
     public void clear(long style) {
         Arrays.fill(mText, ' ');
-        Arrays.fill(mStyle, style);
+        if (mStyle != null) {
+            Arrays.fill(mStyle, style);
+        } else {
+            mPackedStyle = style;
+        }
         mSpaceUsed = (short) mColumns;
         mHasNonOneWidthOrSurrogateChars = false;
     }
 
     // https://github.com/steven676/Android-Terminal-Emulator/commit/9a47042620bec87617f0b4f5d50568535668fe26
     public void setChar(int columnToSet, int codePoint, long style) {
+        unpack();
         mStyle[columnToSet] = style;
 
         final int newCodePointDisplayWidth = WcWidth.width(codePoint);
@@ -255,7 +295,13 @@ public final class TerminalRow {
     }
 
     public final long getStyle(int column) {
-        return mStyle[column];
+        long[] style = mStyle;
+        return style != null ? style[column] : mPackedStyle;
+    }
+
+    void setStyle(int column, long style) {
+        unpack();
+        mStyle[column] = style;
     }
 
 }
\ No newline at end of file
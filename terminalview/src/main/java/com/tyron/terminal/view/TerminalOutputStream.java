@@ -0,0 +1,186 @@
+package com.tyron.terminal.view;
+
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.terminal.TerminalEmulator;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link OutputStream} which feeds the emulator of a {@link TerminalView} from any thread.
+ * <p>
+ * Writers claim a range of a fixed size ring buffer with a compare-and-set, copy their bytes
+ * into it and publish them in the order of their claims. The main thread is the single
+ * consumer, it appends everything that was published to the emulator at most once per frame.
+ * Writers never wait for the view: when they get more than the size of the buffer ahead of it,
+ * the oldest bytes are overwritten and a notice is printed instead of them.
+ * <p>
+ * Once the stream is closed, the bytes written to it are discarded.
+ */
+public final class TerminalOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final TerminalView mView;
+    private final byte[] mBuffer;
+    /** Bytes copied out of the ring buffer on the main thread, the emulator reads from 0. */
+    private final byte[] mFrameBuffer;
+
+    /** The total number of bytes claimed by the writers. */
+    private final AtomicLong mClaimed = new AtomicLong();
+    /** The total number of bytes published, the bytes below it are in the buffer. */
+    private volatile long mPublished;
+    /** The total number of bytes consumed, only changed on the main thread. */
+    private long mReadIndex;
+
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private volatile boolean mClosed;
+
+    private final Choreographer.FrameCallback mFlushCallback = frameTimeNanos -> onFrame();
+
+    public TerminalOutputStream(@NonNull TerminalView view) {
+        this(view, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TerminalOutputStream(@NonNull TerminalView view, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        }
+        mView = view;
+        mBuffer = new byte[bufferSize];
+        mFrameBuffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) {
+        if (mClosed) {
+            return;
+        }
+        long start = mClaimed.getAndIncrement();
+        mBuffer[(int) (start % mBuffer.length)] = (byte) b;
+        publish(start, start + 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) {
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException(
+                    "off: " + off + ", len: " + len + ", length: " + b.length);
+        }
+        if (len == 0 || mClosed) {
+            return;
+        }
+        long start = mClaimed.getAndAdd(len);
+        long end = start + len;
+        if (len > mBuffer.length) {
+            // only the tail fits, the skipped head is reported as dropped by the reader
+            off += len - mBuffer.length;
+            len = mBuffer.length;
+        }
+        long first = end - len;
+        int position = (int) (first % mBuffer.length);
+        int count = Math.min(len, mBuffer.length - position);
+        System.arraycopy(b, off, mBuffer, position, count);
+        System.arraycopy(b, off + count, mBuffer, 0, len - count);
+        publish(start, end);
+    }
+
+    /**
+     * Makes the claimed range visible to the main thread once the writers that claimed the
+     * preceding ranges have published theirs. Only writers wait for each other here, for as
+     * long as it takes them to copy their bytes.
+     */
+    private void publish(long start, long end) {
+        while (mPublished != start) {
+            Thread.yield();
+        }
+        mPublished = end;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!mClosed && mScheduled.compareAndSet(false, true)) {
+            mView.post(() -> Choreographer.getInstance().postFrameCallback(mFlushCallback));
+        }
+    }
+
+    /**
+     * Discards the bytes that have not been shown yet. Must be called on the main thread.
+     */
+    public void clear() {
+        mReadIndex = mPublished;
+    }
+
+    /**
+     * Detaches the stream from its view, the bytes that are written afterwards are discarded.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        Choreographer.getInstance().removeFrameCallback(mFlushCallback);
+    }
+
+    private void onFrame() {
+        if (mClosed) {
+            return;
+        }
+        TerminalEmulator emulator = mView.mEmulator;
+        if (emulator == null) {
+            // the emulator is created once the view is laid out, try again on the next frame
+            if (mView.isAttachedToWindow()) {
+                Choreographer.getInstance().postFrameCallback(mFlushCallback);
+            } else {
+                mScheduled.set(false);
+            }
+            return;
+        }
+
+        mScheduled.set(false);
+        if (drain(emulator)) {
+            mView.onScreenUpdated();
+        }
+    }
+
+    /**
+     * Appends the published bytes to the emulator, preceded by a notice if some of them have
+     * been overwritten before they could be read.
+     *
+     * @return whether anything was appended
+     */
+    private boolean drain(TerminalEmulator emulator) {
+        long published = mPublished;
+        long read = Math.max(mReadIndex, published - mBuffer.length);
+        long dropped = read - mReadIndex;
+        int count = (int) (published - read);
+
+        int position = (int) (read % mBuffer.length);
+        int first = Math.min(count, mBuffer.length - position);
+        System.arraycopy(mBuffer, position, mFrameBuffer, 0, first);
+        System.arraycopy(mBuffer, 0, mFrameBuffer, first, count - first);
+
+        // writers may have claimed ranges which overwrote the start of the copy meanwhile
+        long overwritten = mClaimed.get() - mBuffer.length - read;
+        if (overwritten > 0) {
+            int skipped = (int) Math.min(overwritten, count);
+            System.arraycopy(mFrameBuffer, skipped, mFrameBuffer, 0, count - skipped);
+            count -= skipped;
+            dropped += skipped;
+        }
+        mReadIndex = published;
+
+        if (dropped > 0) {
+            byte[] notice = ("\r\n[" + dropped + " bytes of output skipped]\r\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            emulator.append(notice, notice.length);
+        }
+        if (count > 0) {
+            emulator.append(mFrameBuffer, count);
+        }
+        return dropped > 0 || count > 0;
+    }
+}
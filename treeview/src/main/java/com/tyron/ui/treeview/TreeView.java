@@ -65,11 +65,11 @@ public class TreeView<D> implements SelectableTreeAction<D> {
 
     @Nullable
     public TreeNode<D> getRoot() {
-        List<TreeNode<D>> allNodes = getAllNodes();
-        if (allNodes.isEmpty()) {
+        List<TreeNode<D>> children = root.getChildren();
+        if (children.isEmpty()) {
             return null;
         }
-        return allNodes.get(0);
+        return children.get(0);
     }
 
     @NonNull
@@ -160,6 +160,21 @@ public class TreeView<D> implements SelectableTreeAction<D> {
         }
     }
 
+    /**
+     * Replace the children of the node, only the rows of the node are updated if it is
+     * expanded.
+     */
+    public void replaceChildren(TreeNode<D> treeNode, List<TreeNode<D>> children) {
+        boolean expanded = treeNode.isExpanded();
+        if (expanded) {
+            adapter.collapseNode(treeNode);
+        }
+        treeNode.setChildren(children);
+        if (expanded) {
+            adapter.expandNode(treeNode);
+        }
+    }
+
     @Override
     public void deleteNode(TreeNode<D> node) {
         adapter.deleteNode(node);
@@ -228,8 +228,10 @@ public class TreeViewAdapter<D> extends RecyclerView.Adapter<RecyclerView.ViewHo
         if (index < 0 || index > expandedNodeList.size() - 1 || removedNodes == null) {
             return;
         }
-        expandedNodeList.removeAll(removedNodes);
-        notifyItemRangeRemoved(index + 1, removedNodes.size());
+        // the visible children of a node are always the rows right after it
+        int end = Math.min(index + 1 + removedNodes.size(), expandedNodeList.size());
+        expandedNodeList.subList(index + 1, end).clear();
+        notifyItemRangeRemoved(index + 1, end - index - 1);
     }
 
     /**